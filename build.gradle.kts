@@ -27,6 +27,20 @@ tasks.getByName<Test>("test") {
     useJUnitPlatform()
 }
 
+val bench: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+    runtimeClasspath += sourceSets.main.get().output + sourceSets.main.get().compileClasspath
+}
+
+tasks.register<JavaExec>("bench") {
+    description = "Runs the benchmarks, optionally selected by name via --args."
+    group = "verification"
+    classpath = bench.runtimeClasspath
+    mainClass.set("org.trendafilov.confucius.bench.Benchmarks")
+    jvmArgs("-Xmx4g")
+    systemProperties(System.getProperties().filterKeys { (it as String).startsWith("bench.") }.mapKeys { it.key as String })
+}
+
 publishing {
     publications.create<MavenPublication>("maven") {
         from(components["java"])
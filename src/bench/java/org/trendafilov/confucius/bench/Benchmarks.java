@@ -0,0 +1,56 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.bench;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Runs the benchmarks named on the command line, or all of them.
+ * <p/>
+ * <p>
+ * Invoked through the <code>bench</code> Gradle task, for example
+ * <code>./gradlew bench --args="density"</code>. The results are plain
+ * wall-clock and heap measurements, which are meant for comparing storage
+ * strategies on the same machine rather than as absolute figures.
+ * </p>
+ */
+public final class Benchmarks {
+	private final static Map<String, Runnable> BENCHMARKS = new LinkedHashMap<>();
+
+	static {
+		BENCHMARKS.put("density", new DensityBenchmark());
+		BENCHMARKS.put("update", new UpdateBenchmark());
+		BENCHMARKS.put("offheap", new OffHeapBenchmark());
+	}
+
+	private Benchmarks() {
+	}
+
+	public static void main(String[] args) {
+		if (args.length == 0)
+			args = BENCHMARKS.keySet().toArray(new String[0]);
+		for (String name : args) {
+			Runnable benchmark = BENCHMARKS.get(name);
+			if (benchmark == null)
+				throw new IllegalArgumentException(String.format("Unknown benchmark [%s], expected one of %s", name, BENCHMARKS.keySet()));
+			System.out.printf("== %s%n", name);
+			benchmark.run();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.bench;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ThreadLocalRandom;
+import org.trendafilov.confucius.Configurable;
+import org.trendafilov.confucius.InjectableConfiguration;
+
+/**
+ * Measures the heap retained per tenant and the read throughput of many
+ * isolated configurations held in one JVM.
+ */
+final class DensityBenchmark implements Runnable {
+	private final int tenants = Measure.getInteger("tenants", 10_000);
+	private final int keys = Measure.getInteger("keys", 50);
+
+	public void run() {
+		long before = Measure.usedHeap();
+		InjectableConfiguration[] configurations = new InjectableConfiguration[tenants];
+		for (int t = 0; t < tenants; t++)
+			configurations[t] = InjectableConfiguration.isolated(new ByteArrayInputStream(tenant(t)), null);
+		long retained = Measure.usedHeap() - before;
+		System.out.printf("tenants=%d keys=%d heap=%d KiB (%d bytes per tenant)%n", tenants, keys, retained / 1024, retained / tenants);
+		System.out.printf("estimate per tenant: %s%n", configurations[0].getMemoryReport());
+
+		String[] names = new String[keys];
+		for (int k = 0; k < keys; k++)
+			names[k] = "tenant.key" + k;
+		int threads = Runtime.getRuntime().availableProcessors();
+		double reads = Measure.throughput(threads, i -> {
+			ThreadLocalRandom random = ThreadLocalRandom.current();
+			Configurable configuration = configurations[random.nextInt(tenants)];
+			if (configuration.getStringValue(names[random.nextInt(keys)], null) == null)
+				throw new IllegalStateException("Missing key");
+		});
+		System.out.printf("threads=%d reads=%.0f ops/s%n", threads, reads);
+	}
+
+	private byte[] tenant(int t) {
+		StringBuilder conf = new StringBuilder();
+		for (int k = 0; k < keys; k++)
+			conf.append("tenant.key").append(k).append('=').append("tenant-").append(t).append("-value-").append(k).append('\n');
+		return conf.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,93 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+final class Measure {
+	private final static long WARMUP_NANOS = TimeUnit.SECONDS.toNanos(2);
+	private final static long MEASURE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	private Measure() {
+	}
+
+	static int getInteger(String name, int defaultValue) {
+		return Integer.getInteger("bench." + name, defaultValue);
+	}
+
+	static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 5; i++) {
+			System.gc();
+			used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+		}
+		return used;
+	}
+
+	/**
+	 * Runs the operation on the given number of threads and returns the
+	 * throughput in operations per second. The operation receives a
+	 * per-thread counter, which it can use to pick its input.
+	 */
+	static double throughput(int threads, IntConsumer operation) {
+		run(threads, WARMUP_NANOS, operation);
+		return run(threads, MEASURE_NANOS, operation) * 1e9 / MEASURE_NANOS;
+	}
+
+	/**
+	 * Returns the average time of the operation in nanoseconds, measured on a
+	 * single thread.
+	 */
+	static double averageNanos(IntConsumer operation) {
+		run(1, WARMUP_NANOS, operation);
+		long start = System.nanoTime();
+		long count = run(1, MEASURE_NANOS, operation);
+		return (double) (System.nanoTime() - start) / count;
+	}
+
+	private static long run(int threads, long nanos, IntConsumer operation) {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Long>> results = new ArrayList<>();
+			long deadline = System.nanoTime() + nanos;
+			for (int t = 0; t < threads; t++)
+				results.add(executor.submit((Callable<Long>) () -> {
+					long count = 0;
+					for (int i = 0; System.nanoTime() < deadline; i++, count++)
+						operation.accept(i);
+					return count;
+				}));
+			long total = 0;
+			for (Future<Long> result : results)
+				total += result.get();
+			return total;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
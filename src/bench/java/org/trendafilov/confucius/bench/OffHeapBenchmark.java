@@ -0,0 +1,70 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ThreadLocalRandom;
+import org.trendafilov.confucius.InjectableConfiguration;
+import org.trendafilov.confucius.core.Storage;
+
+/**
+ * Compares the heap, the garbage collection pause and the read cost of a
+ * configuration with millions of keys held on the heap and off-heap.
+ */
+final class OffHeapBenchmark implements Runnable {
+	private final int keys = Measure.getInteger("keys", 2_000_000);
+
+	public void run() {
+		try {
+			Path conf = Files.createTempFile("confucius", ".cfg");
+			try {
+				Files.write(conf, configuration());
+				for (Storage storage : Storage.values())
+					run(storage, conf);
+			} finally {
+				Files.delete(conf);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private void run(Storage storage, Path conf) {
+		long before = Measure.usedHeap();
+		InjectableConfiguration configuration = InjectableConfiguration.isolated(conf, null, storage);
+		long retained = Measure.usedHeap() - before;
+		long start = System.nanoTime();
+		System.gc();
+		long pause = System.nanoTime() - start;
+		double hit = Measure.averageNanos(i -> configuration.getStringValue("flag." + ThreadLocalRandom.current().nextInt(keys) + ".enabled"));
+		double miss = Measure.averageNanos(i -> configuration.getStringValue("flag." + ThreadLocalRandom.current().nextInt(keys) + ".missing", null));
+		System.out.printf("%s: keys=%d heap=%d MiB off-heap=%d MiB gc=%d ms hit=%.0f ns miss=%.0f ns%n", storage, keys, retained >> 20,
+				configuration.getMemoryReport().getOffHeapBytes() >> 20, pause / 1_000_000, hit, miss);
+	}
+
+	private byte[] configuration() {
+		StringBuilder conf = new StringBuilder();
+		for (int k = 0; k < keys; k++)
+			conf.append("flag.").append(k).append(".enabled=").append((k & 1) == 0).append('\n');
+		return conf.toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
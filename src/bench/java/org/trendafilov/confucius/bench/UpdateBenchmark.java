@@ -0,0 +1,57 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.bench;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import org.trendafilov.confucius.InjectableConfiguration;
+
+/**
+ * Compares the cost of a single-key update and of a read on a large
+ * configuration with a map which is copied on every update, which is what an
+ * immutable snapshot costs without structural sharing.
+ */
+final class UpdateBenchmark implements Runnable {
+	private final int keys = Measure.getInteger("keys", 500_000);
+
+	public void run() {
+		String[] names = new String[keys];
+		StringBuilder conf = new StringBuilder();
+		for (int k = 0; k < keys; k++) {
+			names[k] = "flag.key" + k;
+			conf.append(names[k]).append("=false\n");
+		}
+		InjectableConfiguration configuration = InjectableConfiguration.isolated(new ByteArrayInputStream(conf.toString().getBytes(StandardCharsets.UTF_8)), null);
+		double update = Measure.averageNanos(i -> configuration.setProperty(names[ThreadLocalRandom.current().nextInt(keys)], (i & 1) == 0));
+		double read = Measure.averageNanos(i -> configuration.getStringValue(names[ThreadLocalRandom.current().nextInt(keys)]));
+		System.out.printf("persistent: keys=%d update=%.0f ns read=%.0f ns%n", keys, update, read);
+
+		AtomicReference<Map<String, String>> copy = new AtomicReference<>(new HashMap<>(configuration.getSources().get(0).getProperties()));
+		update = Measure.averageNanos(i -> {
+			Map<String, String> next = new HashMap<>(copy.get());
+			next.put(names[ThreadLocalRandom.current().nextInt(keys)], Boolean.toString((i & 1) == 0));
+			copy.set(next);
+		});
+		read = Measure.averageNanos(i -> copy.get().get(names[ThreadLocalRandom.current().nextInt(keys)]));
+		System.out.printf("full copy:  keys=%d update=%.0f ns read=%.0f ns%n", keys, update, read);
+	}
+}
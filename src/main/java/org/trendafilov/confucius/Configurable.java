@@ -16,14 +16,24 @@
 
 package org.trendafilov.confucius;
 
+import java.time.Duration;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
 import java.util.Properties;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.trendafilov.confucius.core.Quantities;
+import org.trendafilov.confucius.core.Utils;
 
 /**
  * The <tt>Configurable</tt> interface defines the contracts which are exposed
@@ -36,12 +46,46 @@ public interface Configurable {
 
 	/**
 	 * Returns a {@link Set} view of the keys contained in the configuration
-	 * map.
+	 * map. The set is a copy, which the caller may change, and which does not
+	 * follow later changes of the configuration.
 	 * 
 	 * @return a set view of the keys contained in the configuration properties
 	 */
 	@NotNull Set<@NotNull String> keySet();
 
+	/**
+	 * Returns a read-only {@link Map} view of the configuration properties
+	 * whose keys start with the specified prefix, ordered by key. The keys
+	 * keep the prefix. The default implementation scans {@link #keySet()}.
+	 * 
+	 * @param prefix
+	 *            of the keys, for example <code>db.pool.</code>
+	 * @return a map view of the matching configuration properties
+	 */
+	default @NotNull Map<@NotNull String, @NotNull String> subset(@NotNull String prefix) {
+		Map<String, String> subset = new TreeMap<>();
+		for (String key : keySet())
+			if (key.startsWith(prefix)) {
+				String value = getStringValue(key, null);
+				if (value != null)
+					subset.put(key, value);
+			}
+		return Collections.unmodifiableMap(subset);
+	}
+
+	/**
+	 * Performs the given action for each configuration property whose key
+	 * starts with the specified prefix, in the order of the keys.
+	 * 
+	 * @param prefix
+	 *            of the keys, for example <code>db.pool.</code>
+	 * @param action
+	 *            which receives each matching key and its value
+	 */
+	default void forEach(@NotNull String prefix, @NotNull BiConsumer<? super String, ? super String> action) {
+		subset(prefix).forEach(action);
+	}
+
 	/**
 	 * Returns as a {@code boolean} the configuration value to which the
 	 * specified key is mapped, or throws an unchecked
@@ -523,6 +567,273 @@ public interface Configurable {
 	 */
 	@NotNull List<@NotNull String> getStringList(@NotNull String key);
 
+	/**
+	 * Returns as a {@link Duration} the configuration value to which the
+	 * specified key is mapped, or throws an unchecked
+	 * {@code ConfigurationException} if the specified key is missing in the
+	 * configuration properties. The value is an amount with an optional unit
+	 * of <code>ns</code>, <code>us</code>, <code>ms</code>, <code>s</code>,
+	 * <code>m</code>, <code>min</code>, <code>h</code> or <code>d</code>, such
+	 * as <code>250ms</code>, where an amount without a unit is in
+	 * milliseconds, or an ISO-8601 duration such as <code>PT30S</code>. The
+	 * parsed value may be cached until the key changes.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return associated value as a duration
+	 * @throws NumberFormatException
+	 *             if the value is not a parsable duration
+	 */
+	default @NotNull Duration getDuration(@NotNull String key) {
+		return Quantities.toDuration(key, getStringValue(key));
+	}
+
+	/**
+	 * Returns as a {@link Duration} the configuration value to which the
+	 * specified key is mapped, or returns the provided default value argument
+	 * if the specified key is missing in the configuration properties.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @param defaultValue
+	 *            is returned if the map does not contain the passed <b>key</b>
+	 *            parameter
+	 * @return associated value as a duration, or <b>defaultValue</b> if the
+	 *         map does not contain the <b>key</b>
+	 * @throws NumberFormatException
+	 *             if the value is not a parsable duration
+	 * @see #getDuration(String)
+	 */
+	@Contract("_, !null -> !null")
+	default @Nullable Duration getDuration(@NotNull String key, @Nullable Duration defaultValue) {
+		String value = getStringValue(key, null);
+		return value == null ? defaultValue : Quantities.toDuration(key, value);
+	}
+
+	/**
+	 * Returns a List of durations mapped to the specified key, or throws an
+	 * unchecked {@code ConfigurationException} if the specified key is missing
+	 * in the configuration properties. The list is unmodifiable.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @param separator
+	 *            regular expression
+	 * @return a list of durations, as separated on the <b>separator</b>
+	 *         regular expression
+	 * @see #getDuration(String)
+	 */
+	default @NotNull List<@NotNull Duration> getDurationList(@NotNull String key, @NotNull String separator) {
+		return Quantities.toDurations(key, getStringValue(key), separator);
+	}
+
+	/**
+	 * Returns a List of durations mapped to the specified key, or throws an
+	 * unchecked {@code ConfigurationException} if the specified key is missing
+	 * in the configuration properties. Uses the comma character ("<b>,</b>") as
+	 * the regular expression for separation of items. The list is
+	 * unmodifiable.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return a list of durations, as separated on the comma character
+	 *         ("<b>,</b>")
+	 * @see #getDuration(String)
+	 */
+	default @NotNull List<@NotNull Duration> getDurationList(@NotNull String key) {
+		return getDurationList(key, ",");
+	}
+
+	/**
+	 * Returns as a number of bytes the configuration value to which the
+	 * specified key is mapped, or throws an unchecked
+	 * {@code ConfigurationException} if the specified key is missing in the
+	 * configuration properties. The value is an amount with an optional unit
+	 * of <code>B</code>, the decimal <code>KB</code>, <code>MB</code>,
+	 * <code>GB</code>, <code>TB</code> and <code>PB</code>, or the binary
+	 * <code>KiB</code> to <code>PiB</code> and their shorthands <code>K</code>
+	 * to <code>P</code>, such as <code>64MiB</code>, where an amount without a
+	 * unit is in bytes. The parsed value may be cached until the key changes.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return associated value in bytes
+	 * @throws NumberFormatException
+	 *             if the value is not a parsable data size
+	 */
+	default long getDataSize(@NotNull String key) {
+		return Quantities.toDataSize(key, getStringValue(key));
+	}
+
+	/**
+	 * Returns as a number of bytes the configuration value to which the
+	 * specified key is mapped, or returns the provided default value argument
+	 * if the specified key is missing in the configuration properties.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @param defaultValue
+	 *            is returned if the map does not contain the passed <b>key</b>
+	 *            parameter
+	 * @return associated value in bytes, or <b>defaultValue</b> if the map
+	 *         does not contain the <b>key</b>
+	 * @throws NumberFormatException
+	 *             if the value is not a parsable data size
+	 * @see #getDataSize(String)
+	 */
+	default long getDataSize(@NotNull String key, long defaultValue) {
+		String value = getStringValue(key, null);
+		return value == null ? defaultValue : Quantities.toDataSize(key, value);
+	}
+
+	/**
+	 * Returns a List of data sizes in bytes mapped to the specified key, or
+	 * throws an unchecked {@code ConfigurationException} if the specified key
+	 * is missing in the configuration properties. The list is unmodifiable.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @param separator
+	 *            regular expression
+	 * @return a list of data sizes in bytes, as separated on the
+	 *         <b>separator</b> regular expression
+	 * @see #getDataSize(String)
+	 */
+	default @NotNull List<@NotNull Long> getDataSizeList(@NotNull String key, @NotNull String separator) {
+		return Quantities.toDataSizes(key, getStringValue(key), separator);
+	}
+
+	/**
+	 * Returns a List of data sizes in bytes mapped to the specified key, or
+	 * throws an unchecked {@code ConfigurationException} if the specified key
+	 * is missing in the configuration properties. Uses the comma character
+	 * ("<b>,</b>") as the regular expression for separation of items. The
+	 * list is unmodifiable.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return a list of data sizes in bytes, as separated on the comma
+	 *         character ("<b>,</b>")
+	 * @see #getDataSize(String)
+	 */
+	default @NotNull List<@NotNull Long> getDataSizeList(@NotNull String key) {
+		return getDataSizeList(key, ",");
+	}
+
+	/**
+	 * Returns the configuration value to which the specified key is mapped,
+	 * or an empty {@code Optional} if the key is missing. Never throws.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return associated value, if any
+	 */
+	default @NotNull Optional<@NotNull String> tryGetString(@NotNull String key) {
+		return Optional.ofNullable(getStringValue(key, null));
+	}
+
+	/**
+	 * Returns as an {@code int} the configuration value to which the specified
+	 * key is mapped, or an empty {@code OptionalInt} if the key is missing or
+	 * its value is not a parsable int. Never throws, and creates no exception
+	 * internally, so that optional keys can be probed at high rates.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return associated value as an int, if any
+	 */
+	default @NotNull OptionalInt tryGetInt(@NotNull String key) {
+		LookupResult<Integer> result = lookupInt(key);
+		return result.isPresent() ? OptionalInt.of(result.get()) : OptionalInt.empty();
+	}
+
+	/**
+	 * Returns as a {@code long} the configuration value to which the specified
+	 * key is mapped, or an empty {@code OptionalLong} if the key is missing or
+	 * its value is not a parsable long. Never throws, and creates no exception
+	 * internally.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return associated value as a long, if any
+	 */
+	default @NotNull OptionalLong tryGetLong(@NotNull String key) {
+		LookupResult<Long> result = lookupLong(key);
+		return result.isPresent() ? OptionalLong.of(result.get()) : OptionalLong.empty();
+	}
+
+	/**
+	 * Returns as a {@code double} the configuration value to which the
+	 * specified key is mapped, or an empty {@code OptionalDouble} if the key
+	 * is missing or its value is not a parsable double. Never throws, and
+	 * creates no exception internally.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return associated value as a double, if any
+	 */
+	default @NotNull OptionalDouble tryGetDouble(@NotNull String key) {
+		LookupResult<Double> result = lookupDouble(key);
+		return result.isPresent() ? OptionalDouble.of(result.get()) : OptionalDouble.empty();
+	}
+
+	/**
+	 * Looks up as an {@code int} the configuration value to which the
+	 * specified key is mapped, telling a missing key apart from a value which
+	 * is not a parsable int. Creates no exception unless
+	 * {@link LookupResult#get()} is called on a failed lookup.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return outcome of the lookup
+	 */
+	default @NotNull LookupResult<@NotNull Integer> lookupInt(@NotNull String key) {
+		String value = getStringValue(key, null);
+		if (value == null)
+			return LookupResult.missing(key);
+		if (!Utils.isParsableLong(value, Integer.MIN_VALUE, Integer.MAX_VALUE))
+			return LookupResult.malformed(key, value, "int");
+		return LookupResult.present(key, value, Integer.parseInt(value));
+	}
+
+	/**
+	 * Looks up as a {@code long} the configuration value to which the
+	 * specified key is mapped, telling a missing key apart from a value which
+	 * is not a parsable long. Creates no exception unless
+	 * {@link LookupResult#get()} is called on a failed lookup.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return outcome of the lookup
+	 */
+	default @NotNull LookupResult<@NotNull Long> lookupLong(@NotNull String key) {
+		String value = getStringValue(key, null);
+		if (value == null)
+			return LookupResult.missing(key);
+		if (!Utils.isParsableLong(value, Long.MIN_VALUE, Long.MAX_VALUE))
+			return LookupResult.malformed(key, value, "long");
+		return LookupResult.present(key, value, Long.parseLong(value));
+	}
+
+	/**
+	 * Looks up as a {@code double} the configuration value to which the
+	 * specified key is mapped, telling a missing key apart from a value which
+	 * is not a parsable double. Creates no exception unless
+	 * {@link LookupResult#get()} is called on a failed lookup.
+	 * 
+	 * @param key
+	 *            of the configuration property
+	 * @return outcome of the lookup
+	 */
+	default @NotNull LookupResult<@NotNull Double> lookupDouble(@NotNull String key) {
+		String value = getStringValue(key, null);
+		if (value == null)
+			return LookupResult.missing(key);
+		if (!Utils.isParsableDouble(value))
+			return LookupResult.malformed(key, value, "double");
+		return LookupResult.present(key, value, Double.parseDouble(value));
+	}
+
 	/**
 	 * Returns the current configuration properties.
 	 * 
@@ -577,6 +888,23 @@ public interface Configurable {
 	 */
 	void clearProperty(@NotNull String key);
 
+	/**
+	 * Returns a read-only view of the configuration properties as they are at
+	 * the time of the call. Reads through the view are consistent with each
+	 * other, even if the configuration is changed or reloaded meanwhile. The
+	 * view may be shared between threads, and taking a snapshot of a snapshot
+	 * returns the same view. Any attempt to change the view throws an
+	 * unchecked {@code ConfigurationException}. The default implementation
+	 * throws, as only the implementation knows how to capture its state.
+	 *
+	 * @return the read-only view
+	 * @throws ConfigurationException
+	 *             if the configuration does not support snapshots
+	 */
+	default @NotNull Configurable snapshot() {
+		throw new ConfigurationException("Configuration does not support snapshots");
+	}
+
 	/**
 	 * Resets all intermediate state held in the configuration properties.
 	 * 
@@ -588,4 +916,17 @@ public interface Configurable {
 	 */
 	@ApiStatus.Internal
 	void reset();
+
+	/**
+	 * Re-reads the configuration properties from their original location,
+	 * keeping any values which were set at runtime. The default
+	 * implementation throws, as a configuration does not know its location
+	 * unless it is implemented to.
+	 *
+	 * @throws ConfigurationException
+	 *             if the configuration properties cannot be re-read
+	 */
+	default void reload() {
+		throw new ConfigurationException("Configuration cannot be reloaded");
+	}
 }
@@ -16,6 +16,9 @@
 
 package org.trendafilov.confucius;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.jetbrains.annotations.NotNull;
 import org.trendafilov.confucius.core.AbstractConfiguration;
 
 /**
@@ -44,4 +47,22 @@ public class Configuration extends AbstractConfiguration {
 			}
 		return instance;
 	}
+
+	/**
+	 * Initializes the singleton on the given executor, so that the caller may
+	 * continue with other work while the configuration is read and parsed.
+	 * Once the returned future completes, {@link #getInstance()} returns
+	 * without blocking.
+	 *
+	 * @param executor
+	 *            which reads and parses the configuration
+	 * @return a future which completes with the singleton, or completes
+	 *         exceptionally with a {@code ConfigurationException}
+	 */
+	public static @NotNull CompletableFuture<Configurable> getInstanceAsync(@NotNull Executor executor) {
+		Configuration current = instance;
+		if (current != null)
+			return CompletableFuture.completedFuture(current);
+		return CompletableFuture.supplyAsync(Configuration::getInstance, executor);
+	}
 }
@@ -17,7 +17,13 @@
 package org.trendafilov.confucius;
 
 import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.trendafilov.confucius.core.AbstractConfiguration;
+import org.trendafilov.confucius.core.Storage;
+import org.trendafilov.confucius.core.provider.ConfigurationDataProvider;
 
 import java.io.InputStream;
 
@@ -54,4 +60,142 @@ public class InjectableConfiguration extends AbstractConfiguration {
 		super(inputStream, context);
 	}
 
+	private InjectableConfiguration(ConfigurationDataProvider configurationDataProvider, String context, Storage storage) {
+		super(configurationDataProvider, context, true, storage);
+	}
+
+	private InjectableConfiguration(Path sharedFile) {
+		super(sharedFile);
+	}
+
+	/**
+	 * Creates a configuration from the specified file which is isolated from
+	 * System properties. Its properties are only visible through the returned
+	 * instance and System properties are not included, which allows many
+	 * independent configurations to be held in one JVM.
+	 *
+	 * @param filePath
+	 *            of the configuration file
+	 * @param context
+	 *            of the configuration, or {@code null} for the default one
+	 * @return the isolated configuration
+	 */
+	public static @NotNull InjectableConfiguration isolated(@NotNull String filePath, @Nullable String context) {
+		return isolated(filePath, context, Storage.HEAP);
+	}
+
+	/**
+	 * Creates a configuration from the specified path which is isolated from
+	 * System properties.
+	 *
+	 * @see #isolated(String, String)
+	 */
+	public static @NotNull InjectableConfiguration isolated(@NotNull Path path, @Nullable String context) {
+		return isolated(path, context, Storage.HEAP);
+	}
+
+	/**
+	 * Creates a configuration from the specified stream which is isolated from
+	 * System properties.
+	 *
+	 * @see #isolated(String, String)
+	 */
+	public static @NotNull InjectableConfiguration isolated(@NotNull InputStream inputStream, @Nullable String context) {
+		return isolated(inputStream, context, Storage.HEAP);
+	}
+
+	/**
+	 * Creates a configuration from the specified file which is isolated from
+	 * System properties and holds its properties in the given storage.
+	 *
+	 * @param filePath
+	 *            of the configuration file
+	 * @param context
+	 *            of the configuration, or {@code null} for the default one
+	 * @param storage
+	 *            which holds the properties of the configuration
+	 * @return the isolated configuration
+	 * @see #isolated(String, String)
+	 */
+	public static @NotNull InjectableConfiguration isolated(@NotNull String filePath, @Nullable String context, @NotNull Storage storage) {
+		//noinspection ConstantConditions
+		if (filePath == null)
+			throw new ConfigurationException("filePath cannot be null.");
+		return new InjectableConfiguration(ConfigurationDataProvider.of(filePath), context, storage);
+	}
+
+	/**
+	 * Creates a configuration from the specified path which is isolated from
+	 * System properties and holds its properties in the given storage.
+	 *
+	 * @see #isolated(String, String, Storage)
+	 */
+	public static @NotNull InjectableConfiguration isolated(@NotNull Path path, @Nullable String context, @NotNull Storage storage) {
+		return new InjectableConfiguration(ConfigurationDataProvider.of(path), context, storage);
+	}
+
+	/**
+	 * Creates a configuration from the specified stream which is isolated from
+	 * System properties and holds its properties in the given storage.
+	 *
+	 * @see #isolated(String, String, Storage)
+	 */
+	public static @NotNull InjectableConfiguration isolated(@NotNull InputStream inputStream, @Nullable String context, @NotNull Storage storage) {
+		return new InjectableConfiguration(ConfigurationDataProvider.of(inputStream), context, storage);
+	}
+
+	/**
+	 * Creates an isolated configuration which reads its properties from a file
+	 * written by {@link #publish(Path)}, usually in another process. The file
+	 * is mapped into memory and shared with all other processes which read it,
+	 * and is not parsed. Call {@link #refresh()} periodically to pick up new
+	 * versions of the file.
+	 *
+	 * @param sharedFile
+	 *            written by {@link #publish(Path)}
+	 * @return the shared configuration
+	 */
+	public static @NotNull InjectableConfiguration shared(@NotNull Path sharedFile) {
+		return new InjectableConfiguration(sharedFile);
+	}
+
+	/**
+	 * Loads a configuration from the properties file specified via the
+	 * <code>conf.properties</code> property on the given executor.
+	 *
+	 * @param executor
+	 *            which reads and parses the configuration
+	 * @return a future which completes with the loaded configuration, or
+	 *         completes exceptionally with a {@code ConfigurationException}
+	 */
+	public static @NotNull CompletableFuture<Configurable> loadAsync(@NotNull Executor executor) {
+		return CompletableFuture.supplyAsync(InjectableConfiguration::new, executor);
+	}
+
+	/**
+	 * Loads a configuration from the specified file on the given executor.
+	 *
+	 * @see #loadAsync(Executor)
+	 */
+	public static @NotNull CompletableFuture<Configurable> loadAsync(@NotNull String filePath, @Nullable String context, @NotNull Executor executor) {
+		return CompletableFuture.supplyAsync(() -> new InjectableConfiguration(filePath, context), executor);
+	}
+
+	/**
+	 * Loads a configuration from the specified path on the given executor.
+	 *
+	 * @see #loadAsync(Executor)
+	 */
+	public static @NotNull CompletableFuture<Configurable> loadAsync(@NotNull Path path, @Nullable String context, @NotNull Executor executor) {
+		return CompletableFuture.supplyAsync(() -> new InjectableConfiguration(path, context), executor);
+	}
+
+	/**
+	 * Loads a configuration from the specified stream on the given executor.
+	 *
+	 * @see #loadAsync(Executor)
+	 */
+	public static @NotNull CompletableFuture<Configurable> loadAsync(@NotNull InputStream inputStream, @Nullable String context, @NotNull Executor executor) {
+		return CompletableFuture.supplyAsync(() -> new InjectableConfiguration(inputStream, context), executor);
+	}
 }
@@ -0,0 +1,131 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius;
+
+import org.jetbrains.annotations.ApiStatus;
+import org.jetbrains.annotations.Contract;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The outcome of looking up a typed configuration value, which tells a
+ * missing key apart from a value which cannot be parsed. Obtaining a result
+ * never creates an exception; only {@link #get()} throws, as the plain
+ * getters of {@link Configurable} would.
+ *
+ * @param <T>
+ *            type of the value
+ */
+public final class LookupResult<T> {
+
+	/**
+	 * The kinds of outcome of a lookup.
+	 */
+	public enum Status {
+		/** The key is mapped to a parsable value. */
+		PRESENT,
+		/** The key is missing in the configuration properties. */
+		MISSING,
+		/** The key is mapped to a value which cannot be parsed. */
+		MALFORMED
+	}
+
+	private final @NotNull String key;
+	private final @NotNull Status status;
+	private final @Nullable String rawValue;
+	private final @Nullable T value;
+	private final @NotNull String type;
+
+	private LookupResult(@NotNull String key, @NotNull Status status, @Nullable String rawValue, @Nullable T value, @NotNull String type) {
+		this.key = key;
+		this.status = status;
+		this.rawValue = rawValue;
+		this.value = value;
+		this.type = type;
+	}
+
+	@ApiStatus.Internal
+	public static <T> @NotNull LookupResult<T> present(@NotNull String key, @NotNull String rawValue, @NotNull T value) {
+		return new LookupResult<>(key, Status.PRESENT, rawValue, value, "");
+	}
+
+	@ApiStatus.Internal
+	public static <T> @NotNull LookupResult<T> missing(@NotNull String key) {
+		return new LookupResult<>(key, Status.MISSING, null, null, "");
+	}
+
+	@ApiStatus.Internal
+	public static <T> @NotNull LookupResult<T> malformed(@NotNull String key, @NotNull String rawValue, @NotNull String type) {
+		return new LookupResult<>(key, Status.MALFORMED, rawValue, null, type);
+	}
+
+	public @NotNull String getKey() {
+		return key;
+	}
+
+	public @NotNull Status getStatus() {
+		return status;
+	}
+
+	public boolean isPresent() {
+		return status == Status.PRESENT;
+	}
+
+	public boolean isMissing() {
+		return status == Status.MISSING;
+	}
+
+	public boolean isMalformed() {
+		return status == Status.MALFORMED;
+	}
+
+	/**
+	 * Returns the value as it is held in the configuration properties, or
+	 * <tt>null</tt> if the key is missing.
+	 */
+	public @Nullable String getRawValue() {
+		return rawValue;
+	}
+
+	/**
+	 * Returns the parsed value, or throws an unchecked
+	 * {@code ConfigurationException} if the key is missing, or a
+	 * {@code NumberFormatException} if its value cannot be parsed.
+	 */
+	public @NotNull T get() {
+		if (status == Status.MISSING)
+			throw new ConfigurationException(String.format("Unable to find configuration value for key [%s]", key));
+		if (status == Status.MALFORMED)
+			throw new NumberFormatException(String.format("Configuration value [%s] is not a parsable %s", key, type));
+		//noinspection ConstantConditions
+		return value;
+	}
+
+	/**
+	 * Returns the parsed value, or the given one if the key is missing or its
+	 * value cannot be parsed.
+	 */
+	@Contract("!null -> !null")
+	public @Nullable T orElse(@Nullable T other) {
+		return status == Status.PRESENT ? value : other;
+	}
+
+	@Override
+	public @NotNull String toString() {
+		return String.format("LookupResult[%s: %s %s]", key, status, rawValue);
+	}
+}
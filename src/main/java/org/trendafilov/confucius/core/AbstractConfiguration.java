@@ -16,7 +16,11 @@
 
 package org.trendafilov.confucius.core;
 
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -27,24 +31,63 @@ import org.trendafilov.confucius.Configurable;
 import java.io.InputStream;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import org.trendafilov.confucius.ConfigurationException;
 import org.trendafilov.confucius.core.provider.ConfigurationDataProvider;
+import org.trendafilov.confucius.core.provider.FileChangeDetector;
+import org.trendafilov.confucius.core.source.PropertySource;
 
 public abstract class AbstractConfiguration implements Configurable {
 	private final static Logger LOG = LoggerFactory.getLogger(AbstractConfiguration.class);
 
 	private final static String ITEM_SEPARATOR = ",";
+	private final static Duration RELOAD_QUIET_PERIOD = Duration.ofMillis(250);
+	private final static String DURATION = "duration";
+	private final static String DATA_SIZE = "data size";
 	protected static String FILE_PARAM = "conf.properties";
 	protected static String CONTEXT_PARAM = "conf.context";
+	protected static String LAZY_PARAM = "conf.lazy";
+
+	public final static String SYSTEM_SOURCE = "system";
+	public final static String FILE_SOURCE = "file";
+	public final static String RUNTIME_SOURCE = "runtime";
 
 	private final @NotNull  ConfigurationDataProvider configurationDataProvider;
 	private final @Nullable String context;
 	private final @NotNull  Map<String, String> initialState;
+	private final @NotNull  Map<String, String> displaced = new HashMap<>();
+	private volatile @NotNull PropertySources sources = new PropertySources(RUNTIME_SOURCE);
+	private       @NotNull  PropertySources initial = sources;
+	private final           boolean lazy;
+	private final           boolean isolated;
+	private final           boolean readOnly;
+	private volatile        boolean loaded;
+	private volatile        boolean frozen;
+	private final @Nullable Path sharedFile;
+	private volatile        long sequence;
+	private       @Nullable ChangeJournal.Writer journal;
+	private       @Nullable ChangeJournal.Tailer follower;
+	private       @Nullable WriteBehindPersister persister;
+	private       @Nullable FileChangeDetector detector;
+	private       @Nullable ScheduledFuture<?> polling;
+	private volatile @Nullable List<Consumer<? super ConfigurationDiff>> listeners;
+	private volatile @Nullable Map<String, Parsed> parsed;
+	private       @Nullable Debouncer reloads;
 
 	public AbstractConfiguration() {
 		this.configurationDataProvider = ConfigurationDataProvider.of(System.getProperty(FILE_PARAM));
 		this.context = System.getProperty(CONTEXT_PARAM);
-		this.initialState = Collections.unmodifiableMap(Utils.propertiesToMap(System.getProperties()));
+		this.lazy = Boolean.getBoolean(LAZY_PARAM);
+		this.isolated = false;
+		this.readOnly = false;
+		this.sharedFile = null;
+		this.initialState = lazy ? Collections.emptyMap() : Collections.unmodifiableMap(Utils.propertiesToMap(System.getProperties()));
 		init();
 	}
 
@@ -53,47 +96,205 @@ public abstract class AbstractConfiguration implements Configurable {
 		if (filePath == null)
 			throw new ConfigurationException("filePath cannot be null. Use no arg constructor instead.");
 		if (context != null)
-			setProperty(CONTEXT_PARAM, context);
-		setProperty(FILE_PARAM, filePath);
+			exportProperty(CONTEXT_PARAM, context);
+		exportProperty(FILE_PARAM, filePath);
 		this.configurationDataProvider = ConfigurationDataProvider.of(filePath);
 		this.context = context;
-		this.initialState = Collections.unmodifiableMap(Utils.propertiesToMap(System.getProperties()));
+		this.lazy = Boolean.getBoolean(LAZY_PARAM);
+		this.isolated = false;
+		this.readOnly = false;
+		this.sharedFile = null;
+		this.initialState = lazy ? Collections.emptyMap() : Collections.unmodifiableMap(Utils.propertiesToMap(System.getProperties()));
 		init();
 	}
 
 	public AbstractConfiguration(@NotNull Path path, @Nullable String context) {
 		if (context != null)
-			setProperty(CONTEXT_PARAM, context);
-		setProperty(FILE_PARAM, path);
+			exportProperty(CONTEXT_PARAM, context);
+		exportProperty(FILE_PARAM, path);
 		this.configurationDataProvider = ConfigurationDataProvider.of(path);
 		this.context = context;
-		this.initialState = Collections.unmodifiableMap(Utils.propertiesToMap(System.getProperties()));
+		this.lazy = Boolean.getBoolean(LAZY_PARAM);
+		this.isolated = false;
+		this.readOnly = false;
+		this.sharedFile = null;
+		this.initialState = lazy ? Collections.emptyMap() : Collections.unmodifiableMap(Utils.propertiesToMap(System.getProperties()));
 		init();
 	}
 
 	public AbstractConfiguration(@NotNull InputStream inputStream, @Nullable String context) {
 		this.configurationDataProvider = ConfigurationDataProvider.of(inputStream);
 		this.context = context;
-		this.initialState = Collections.unmodifiableMap(Utils.propertiesToMap(System.getProperties()));
+		this.lazy = Boolean.getBoolean(LAZY_PARAM);
+		this.isolated = false;
+		this.readOnly = false;
+		this.sharedFile = null;
+		this.initialState = lazy ? Collections.emptyMap() : Collections.unmodifiableMap(Utils.propertiesToMap(System.getProperties()));
+		init();
+	}
+
+	/**
+	 * Creates a configuration which keeps its properties to itself. An
+	 * isolated configuration neither copies nor publishes System properties,
+	 * so any number of them can coexist in one JVM without interfering with
+	 * each other or contending on the global System properties lock.
+	 *
+	 * @param isolated
+	 *            whether the configuration is isolated from System properties
+	 */
+	protected AbstractConfiguration(@NotNull ConfigurationDataProvider configurationDataProvider, @Nullable String context, boolean isolated) {
+		this(configurationDataProvider, context, isolated, Storage.HEAP);
+	}
+
+	/**
+	 * Creates a configuration which holds its properties in the given storage.
+	 * Storage other than {@link Storage#HEAP} is only available to isolated
+	 * configurations, as others publish all of their properties as System
+	 * properties anyway.
+	 *
+	 * @param isolated
+	 *            whether the configuration is isolated from System properties
+	 * @param storage
+	 *            which holds the properties of the configuration
+	 */
+	protected AbstractConfiguration(@NotNull ConfigurationDataProvider configurationDataProvider, @Nullable String context, boolean isolated,
+			@NotNull Storage storage) {
+		if (storage != Storage.HEAP && !isolated)
+			throw new ConfigurationException(String.format("Storage [%s] requires an isolated configuration", storage));
+		this.sources = new PropertySources(RUNTIME_SOURCE, storage);
+		this.initial = sources;
+		this.configurationDataProvider = configurationDataProvider;
+		this.context = context;
+		this.lazy = Boolean.getBoolean(LAZY_PARAM);
+		this.isolated = isolated;
+		this.readOnly = false;
+		this.sharedFile = null;
+		this.initialState = lazy || isolated ? Collections.emptyMap() : Collections.unmodifiableMap(Utils.propertiesToMap(System.getProperties()));
+		init();
+	}
+
+	/**
+	 * Creates an isolated configuration which reads its properties straight
+	 * from a file written by {@link #publish(Path)}, usually in another
+	 * process. The file is mapped into memory rather than read, so that all
+	 * processes which read it share a single copy of the properties. Use
+	 * {@link #refresh()} to pick up a new version of the file.
+	 *
+	 * @param sharedFile
+	 *            written by {@link #publish(Path)}
+	 */
+	protected AbstractConfiguration(@NotNull Path sharedFile) {
+		this.sources = new PropertySources(RUNTIME_SOURCE, Storage.OFF_HEAP);
+		this.initial = sources;
+		this.configurationDataProvider = ConfigurationDataProvider.of(sharedFile);
+		this.context = null;
+		this.lazy = Boolean.getBoolean(LAZY_PARAM);
+		this.isolated = true;
+		this.readOnly = false;
+		this.sharedFile = sharedFile;
+		this.initialState = Collections.emptyMap();
 		init();
 	}
 
+	AbstractConfiguration(@NotNull AbstractConfiguration origin, @NotNull PropertySources sources) {
+		this.configurationDataProvider = origin.configurationDataProvider;
+		this.context = origin.context;
+		this.lazy = origin.lazy;
+		this.isolated = origin.isolated;
+		this.readOnly = true;
+		this.sharedFile = null;
+		this.initialState = Collections.emptyMap();
+		this.sources = sources;
+		this.initial = sources;
+		this.loaded = true;
+	}
+
+	/**
+	 * Loads the configuration, unless lazy loading was requested via the
+	 * <code>conf.lazy</code> property. In lazy mode, the configuration is only
+	 * read and parsed on first access, and System properties are not copied
+	 * but looked up on demand for keys which the configuration does not hold.
+	 */
 	private void init() {
+		if (lazy)
+			LOG.info("Deferring configuration initialization until first access");
+		else
+			load();
+	}
+
+	private void ensureLoaded() {
+		if (!loaded)
+			synchronized (this) {
+				if (!loaded)
+					load();
+			}
+	}
+
+	private synchronized void load() {
 		LOG.info("Initializing configuration...");
-		setProperties(initialState);
-		setProperties(new Parser(configurationDataProvider, context).getConfiguration());
+		PropertySources next = sources.addLast(parse());
+		if (!lazy && !isolated)
+			next = next.addLast(PropertySource.of(SYSTEM_SOURCE, initialState));
+		update(next);
+		initial = sources;
+		displaced.clear();
+		loaded = true;
 	}
 
-	public synchronized @NotNull Set<String> keySet() {
-		return Utils.propertiesToMap(getProperties()).keySet();
+	private @NotNull PropertySource parse() {
+		if (sharedFile != null) {
+			SharedSnapshot snapshot = SharedSnapshot.map(sharedFile);
+			sequence = snapshot.getSequence();
+			return new OffHeapPropertySource(FILE_SOURCE, snapshot.getMap());
+		}
+		return sources.createSource(FILE_SOURCE, new Parser(configurationDataProvider, context).getConfiguration());
+	}
+
+	public @NotNull Set<String> keySet() {
+		ensureLoaded();
+		Set<String> keys = new HashSet<>(sources.getValues().keySet());
+		if (lazy && !isolated)
+			keys.addAll(System.getProperties().stringPropertyNames());
+		return keys;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * <p>
+	 * The view is served from a sorted index of the keys, so its cost is
+	 * proportional to the number of matching keys. In lazy mode, matching
+	 * System properties which the configuration does not hold are copied into
+	 * the returned map.
+	 * </p>
+	 */
+	public @NotNull Map<String, String> subset(@NotNull String prefix) {
+		ensureLoaded();
+		PropertySources sources = this.sources;
+		if (!lazy || isolated)
+			return sources.subset(prefix);
+		Map<String, String> subset = new TreeMap<>();
+		for (String key : System.getProperties().stringPropertyNames())
+			if (key.startsWith(prefix))
+				subset.put(key, System.getProperty(key));
+		sources.forEach(prefix, subset::put);
+		return Collections.unmodifiableMap(subset);
+	}
+
+	public void forEach(@NotNull String prefix, @NotNull BiConsumer<? super String, ? super String> action) {
+		ensureLoaded();
+		if (!lazy || isolated)
+			sources.forEach(prefix, action);
+		else
+			subset(prefix).forEach(action);
 	}
 
 	public boolean getBooleanValue(@NotNull String key) {
 		return Boolean.parseBoolean(getKey(key));
 	}
 
-	public synchronized boolean getBooleanValue(@NotNull String key, boolean defaultValue) {
-		String value = System.getProperty(key);
+	public boolean getBooleanValue(@NotNull String key, boolean defaultValue) {
+		String value = lookup(key);
 		return value == null ? defaultValue : Boolean.parseBoolean(value);
 	}
 
@@ -116,8 +317,8 @@ public abstract class AbstractConfiguration implements Configurable {
 		}
 	}
 
-	public synchronized byte getByteValue(@NotNull String key, byte defaultValue) {
-		String value = System.getProperty(key);
+	public byte getByteValue(@NotNull String key, byte defaultValue) {
+		String value = lookup(key);
 		try {
 			return value == null ? defaultValue : Byte.parseByte(value);
 		} catch (NumberFormatException e) {
@@ -144,8 +345,8 @@ public abstract class AbstractConfiguration implements Configurable {
 		return getKey(key).charAt(0);
 	}
 
-	public synchronized char getCharValue(@NotNull String key, char defaultValue) {
-		String value = System.getProperty(key);
+	public char getCharValue(@NotNull String key, char defaultValue) {
+		String value = lookup(key);
 		return value == null ? defaultValue : value.charAt(0);
 	}
 
@@ -164,8 +365,8 @@ public abstract class AbstractConfiguration implements Configurable {
 		return Double.parseDouble(getKey(key));
 	}
 
-	public synchronized double getDoubleValue(@NotNull String key, double defaultValue) {
-		String value = System.getProperty(key);
+	public double getDoubleValue(@NotNull String key, double defaultValue) {
+		String value = lookup(key);
 		return value == null ? defaultValue : Double.parseDouble(value);
 	}
 
@@ -184,8 +385,8 @@ public abstract class AbstractConfiguration implements Configurable {
 		return Float.parseFloat(getKey(key));
 	}
 
-	public synchronized float getFloatValue(@NotNull String key, float defaultValue) {
-		String value = System.getProperty(key);
+	public float getFloatValue(@NotNull String key, float defaultValue) {
+		String value = lookup(key);
 		return value == null ? defaultValue : Float.parseFloat(value);
 	}
 
@@ -204,8 +405,8 @@ public abstract class AbstractConfiguration implements Configurable {
 		return Integer.parseInt(getKey(key));
 	}
 
-	public synchronized int getIntValue(@NotNull String key, int defaultValue) {
-		String value = System.getProperty(key);
+	public int getIntValue(@NotNull String key, int defaultValue) {
+		String value = lookup(key);
 		return value == null ? defaultValue : Integer.parseInt(value);
 	}
 
@@ -228,8 +429,8 @@ public abstract class AbstractConfiguration implements Configurable {
 		}
 	}
 
-	public synchronized long getLongValue(@NotNull String key, long defaultValue) {
-		String value = System.getProperty(key);
+	public long getLongValue(@NotNull String key, long defaultValue) {
+		String value = lookup(key);
 		try {
 			return value == null ? defaultValue : Long.parseLong(value);
 		} catch (NumberFormatException e) {
@@ -260,8 +461,8 @@ public abstract class AbstractConfiguration implements Configurable {
 		}
 	}
 
-	public synchronized short getShortValue(@NotNull String key, short defaultValue) {
-		String value = System.getProperty(key);
+	public short getShortValue(@NotNull String key, short defaultValue) {
+		String value = lookup(key);
 		try {
 			return value == null ? defaultValue : Short.parseShort(value);
 		} catch (NumberFormatException e) {
@@ -289,8 +490,8 @@ public abstract class AbstractConfiguration implements Configurable {
 	}
 
 	@Contract("_, null -> null; _, !null -> !null")
-	public synchronized @Nullable String getStringValue(@NotNull String key, @Nullable String defaultValue) {
-		String value = System.getProperty(key);
+	public @Nullable String getStringValue(@NotNull String key, @Nullable String defaultValue) {
+		String value = lookup(key);
 		return value == null ? defaultValue : value;
 	}
 
@@ -305,51 +506,827 @@ public abstract class AbstractConfiguration implements Configurable {
 		return getStringList(key, ITEM_SEPARATOR);
 	}
 
-	public synchronized @NotNull Properties getProperties() {
-		return System.getProperties();
+	public @NotNull Duration getDuration(@NotNull String key) {
+		//noinspection ConstantConditions
+		return (Duration) parsed(key, DURATION, null, true);
+	}
+
+	@Contract("_, !null -> !null")
+	public @Nullable Duration getDuration(@NotNull String key, @Nullable Duration defaultValue) {
+		Duration value = (Duration) parsed(key, DURATION, null, false);
+		return value == null ? defaultValue : value;
+	}
+
+	@SuppressWarnings("unchecked")
+	public @NotNull List<@NotNull Duration> getDurationList(@NotNull String key, @NotNull String separator) {
+		//noinspection ConstantConditions
+		return (List<Duration>) parsed(key, DURATION, separator, true);
+	}
+
+	public @NotNull List<@NotNull Duration> getDurationList(@NotNull String key) {
+		return getDurationList(key, ITEM_SEPARATOR);
+	}
+
+	public long getDataSize(@NotNull String key) {
+		//noinspection ConstantConditions
+		return (Long) parsed(key, DATA_SIZE, null, true);
+	}
+
+	public long getDataSize(@NotNull String key, long defaultValue) {
+		Long value = (Long) parsed(key, DATA_SIZE, null, false);
+		return value == null ? defaultValue : value;
+	}
+
+	@SuppressWarnings("unchecked")
+	public @NotNull List<@NotNull Long> getDataSizeList(@NotNull String key, @NotNull String separator) {
+		//noinspection ConstantConditions
+		return (List<Long>) parsed(key, DATA_SIZE, separator, true);
+	}
+
+	public @NotNull List<@NotNull Long> getDataSizeList(@NotNull String key) {
+		return getDataSizeList(key, ITEM_SEPARATOR);
+	}
+
+	public @NotNull OptionalInt tryGetInt(@NotNull String key) {
+		String value = lookup(key);
+		if (value == null || !Utils.isParsableLong(value, Integer.MIN_VALUE, Integer.MAX_VALUE))
+			return OptionalInt.empty();
+		return OptionalInt.of(Integer.parseInt(value));
+	}
+
+	public @NotNull OptionalLong tryGetLong(@NotNull String key) {
+		String value = lookup(key);
+		if (value == null || !Utils.isParsableLong(value, Long.MIN_VALUE, Long.MAX_VALUE))
+			return OptionalLong.empty();
+		return OptionalLong.of(Long.parseLong(value));
+	}
+
+	public @NotNull OptionalDouble tryGetDouble(@NotNull String key) {
+		String value = lookup(key);
+		if (value == null || !Utils.isParsableDouble(value))
+			return OptionalDouble.empty();
+		return OptionalDouble.of(Double.parseDouble(value));
+	}
+
+	public @NotNull Properties getProperties() {
+		ensureLoaded();
+		if (!isolated && !readOnly)
+			return System.getProperties();
+		Properties properties = new Properties();
+		properties.putAll(sources.getValues());
+		return properties;
 	}
 
 	public synchronized <T> void setProperty(@NotNull String key, @NotNull T value) {
+		checkWritable();
+		ensureLoaded();
 		String item = value.toString();
-		System.setProperty(key, item);
-		LOG.info("Set configuration property: [{}] => [{}]", key, item);
+		PropertySources previous = sources;
+		sources = sources.withOverride(key, item);
+		export(key, item);
+		record(Collections.singletonMap(key, item));
+		notifyListeners(previous, Collections.singleton(key));
 	}
 
 	public synchronized <T> void setProperties(@NotNull Map<String, T> properties) {
+		checkWritable();
+		ensureLoaded();
+		PropertySources previous = sources;
+		PropertySources next = sources;
 		for (Entry<String, T> entry : properties.entrySet())
-			setProperty(entry.getKey(), entry.getValue());
+			next = next.withOverride(entry.getKey(), entry.getValue().toString());
+		sources = next;
+		for (Entry<String, T> entry : properties.entrySet())
+			export(entry.getKey(), entry.getValue().toString());
+		if (journal != null || persister != null) {
+			Map<String, String> changes = new LinkedHashMap<>();
+			for (Entry<String, T> entry : properties.entrySet())
+				changes.put(entry.getKey(), entry.getValue().toString());
+			record(changes);
+		}
+		notifyListeners(previous, properties.keySet());
 	}
 
 	public synchronized void setProperties(@NotNull Properties properties) {
-		for (Object e : properties.keySet())
-			setProperty((String) e, properties.getProperty((String) e));
+		setProperties(Utils.propertiesToMap(properties));
 	}
 
 	public synchronized void clearProperty(@NotNull String key) {
-		System.clearProperty(key);
-		LOG.info("Unset configuration property: [{}]", key);
+		checkWritable();
+		ensureLoaded();
+		PropertySources previous = sources;
+		sources = sources.withoutOverride(key);
+		unexport(key);
+		record(Collections.singletonMap(key, null));
+		notifyListeners(previous, Collections.singleton(key));
+	}
+
+	/**
+	 * Adds a layer with the highest precedence, below runtime overrides only.
+	 */
+	public synchronized void addFirst(@NotNull PropertySource source) {
+		checkWritable();
+		ensureLoaded();
+		update(sources.addFirst(source));
+	}
+
+	/**
+	 * Adds a layer with the lowest precedence.
+	 */
+	public synchronized void addLast(@NotNull PropertySource source) {
+		checkWritable();
+		ensureLoaded();
+		update(sources.addLast(source));
+	}
+
+	/**
+	 * Adds a layer which takes precedence over the layer with the given name.
+	 */
+	public synchronized void addBefore(@NotNull String name, @NotNull PropertySource source) {
+		checkWritable();
+		ensureLoaded();
+		update(sources.addBefore(name, source));
+	}
+
+	/**
+	 * Adds a layer which is overridden by the layer with the given name.
+	 */
+	public synchronized void addAfter(@NotNull String name, @NotNull PropertySource source) {
+		checkWritable();
+		ensureLoaded();
+		update(sources.addAfter(name, source));
+	}
+
+	/**
+	 * Replaces the layer which has the same name as the given layer.
+	 */
+	public synchronized void replaceSource(@NotNull PropertySource source) {
+		checkWritable();
+		ensureLoaded();
+		update(sources.replace(source));
+	}
+
+	public synchronized @Nullable PropertySource removeSource(@NotNull String name) {
+		checkWritable();
+		ensureLoaded();
+		PropertySource removed = sources.getSource(name);
+		update(sources.remove(name));
+		return removed;
+	}
+
+	/**
+	 * Returns the layers of this configuration, ordered from the highest to
+	 * the lowest precedence. Runtime overrides are not included.
+	 */
+	public @NotNull List<PropertySource> getSources() {
+		ensureLoaded();
+		return sources.getSources();
+	}
+
+	/**
+	 * Returns the name of the layer which supplied the current value of the
+	 * specified key, {@link #RUNTIME_SOURCE} for values set at runtime, or
+	 * {@code null} if the key is missing.
+	 */
+	public @Nullable String getSourceName(@NotNull String key) {
+		ensureLoaded();
+		String origin = sources.getOrigin(key);
+		if (origin == null && lazy && !isolated && System.getProperty(key) != null)
+			return SYSTEM_SOURCE;
+		return origin;
 	}
 
 	/**
 	 * {@inheritDoc}
 	 * <p/>
 	 * <p>
-	 * The reset procedure restores configuration properties to their initial
-	 * values at the time of creation of the <tt>Configurable</tt> instance.
-	 * Configuration properties specified via a file are re-processed.
+	 * The reset procedure discards all runtime overrides and layer changes and
+	 * restores the configuration to the state it had at the time of creation
+	 * of the <tt>Configurable</tt> instance. The file is not re-processed, use
+	 * {@link #reload()} to pick up its changes. Only the system properties
+	 * which were modified since creation are restored.
 	 * </p>
 	 */
 	public synchronized void reset() {
-		for (String key : Utils.propertiesToMap(getProperties()).keySet())
-			clearProperty(key);
-		init();
+		checkWritable();
+		ensureLoaded();
+		PropertySources previous = sources;
+		sources = initial;
+		for (Entry<String, String> entry : displaced.entrySet()) {
+			String key = entry.getKey();
+			String value = initial.get(key);
+			if (value == null)
+				value = entry.getValue();
+			if (Objects.equals(value, previous.get(key)) && Objects.equals(value, System.getProperty(key)))
+				continue;
+			if (value == null)
+				unexportProperty(key);
+			else
+				exportProperty(key, value);
+		}
+		displaced.clear();
+		if (journal != null)
+			journal.appendReset();
+		if (isObserved())
+			notifyListeners(ConfigurationDiff.between(previous, initial));
 		LOG.info("Configuration properties have been reset");
 	}
 
-	private synchronized @NotNull String getKey(@NotNull String key) {
-		String value = System.getProperty(key);
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * <p>
+	 * The file is re-processed and its layer is replaced both in the current
+	 * configuration and in the state restored by {@link #reset()}. Runtime
+	 * overrides and other layers are kept.
+	 * </p>
+	 */
+	public synchronized void reload() {
+		checkWritable();
+		ensureLoaded();
+		PropertySource file = parse();
+		if (initial.getSource(FILE_SOURCE) != null)
+			initial = initial.replace(file);
+		if (sources.getSource(FILE_SOURCE) != null)
+			update(sources.replace(file));
+		LOG.info("Configuration properties have been reloaded");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p/>
+	 * <p>
+	 * Obtaining a snapshot costs a single volatile read and an allocation. In
+	 * lazy mode, keys which are only present in System properties are still
+	 * looked up on demand.
+	 * </p>
+	 */
+	public @NotNull Configurable snapshot() {
+		if (readOnly || frozen)
+			return this;
+		ensureLoaded();
+		return new Snapshot(this, sources);
+	}
+
+	/**
+	 * Compiles the current properties into a read-only table addressed by a
+	 * minimal perfect hash function, which answers a lookup with a single hash
+	 * and one key comparison. Any later attempt to change the configuration,
+	 * including {@link #reset()} and {@link #reload()}, throws a
+	 * {@link ConfigurationException}. In lazy mode, keys which are only
+	 * present in System properties are still looked up on demand. With
+	 * {@link Storage#OFF_HEAP} storage, the properties are not copied to the
+	 * heap: the runtime overrides are merged into the encoded table instead,
+	 * whose lookups are already a hash and one key comparison.
+	 */
+	public synchronized void freeze() {
+		checkWritable();
+		ensureLoaded();
+		sources = sources.freeze();
+		initial = sources;
+		frozen = true;
+		LOG.info("Configuration properties have been frozen");
+	}
+
+	/**
+	 * Returns whether {@link #freeze()} has been called on this configuration.
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Writes the current properties to a file which other configurations,
+	 * usually in other processes, read through {@link #AbstractConfiguration(Path)}.
+	 * System properties which the configuration holds are left out, as each
+	 * process has its own. The previous version of the file is replaced
+	 * atomically, and readers which still map it are not affected.
+	 *
+	 * @param file
+	 *            to write
+	 * @return the sequence number of the new version of the file
+	 */
+	public long publish(@NotNull Path file) {
+		ensureLoaded();
+		PropertySources sources = this.sources;
+		Map<String, String> values = new HashMap<>();
+		Map<String, String> origins = new HashMap<>();
+		sources.forEach("", (key, value) -> {
+			String origin = sources.getOrigin(key);
+			if (SYSTEM_SOURCE.equals(origin))
+				return;
+			values.put(key, value);
+			origins.put(key, origin);
+		});
+		long sequence = SharedSnapshot.write(file, values, origins);
+		LOG.info("Configuration properties have been published to [{}] with sequence number [{}]", file, sequence);
+		return sequence;
+	}
+
+	/**
+	 * Checks the sequence number of the shared file of this configuration and
+	 * maps its new version, if one was published, and applies the changes
+	 * appended to the followed change journal since the previous call.
+	 * Checking costs a read of the file header, so this method may be polled
+	 * frequently. Runtime overrides and other layers are kept, as with
+	 * {@link #reload()}.
+	 *
+	 * @return whether the properties changed
+	 * @throws ConfigurationException
+	 *             if the configuration was neither created from a shared file
+	 *             nor follows a change journal
+	 */
+	public synchronized boolean refresh() {
+		if (sharedFile == null && follower == null)
+			throw new ConfigurationException("Configuration is neither backed by a shared file nor follows a change journal");
+		ensureLoaded();
+		boolean changed = false;
+		if (sharedFile != null && SharedSnapshot.readSequence(sharedFile) != sequence) {
+			reload();
+			changed = true;
+		}
+		return applyChanges() || changed;
+	}
+
+	/**
+	 * Appends all further changes of runtime overrides made through this
+	 * configuration to the given journal file, from which other
+	 * configurations, usually in other processes, pick them up through
+	 * {@link #followChanges(Path)}. Each call of a mutator appends one batch,
+	 * and {@link #reset()} appends a reset of all overrides. Changes of layers
+	 * are not recorded. The journal is compacted in the background as it
+	 * grows, and must only be written by one configuration.
+	 *
+	 * @param journal
+	 *            file to append to, which is created if it does not exist
+	 */
+	public synchronized void recordChanges(@NotNull Path journal) {
+		checkWritable();
+		ensureLoaded();
+		this.journal = new ChangeJournal.Writer(journal);
+		LOG.info("Recording configuration changes to [{}]", journal);
+	}
+
+	/**
+	 * Applies the changes recorded in the given journal file by
+	 * {@link #recordChanges(Path)} to the runtime overrides of this
+	 * configuration, first all changes which are in the journal so far, and
+	 * then those appended later on each call of {@link #refresh()}. The
+	 * journal is read through a memory mapping, so polling it for new changes
+	 * costs little more than a check of its size.
+	 *
+	 * @param journal
+	 *            file to read, which need not exist yet
+	 */
+	public synchronized void followChanges(@NotNull Path journal) {
+		checkWritable();
+		ensureLoaded();
+		follower = new ChangeJournal.Tailer(journal);
+		applyChanges();
+		LOG.info("Following configuration changes in [{}]", journal);
+	}
+
+	/**
+	 * Writes all further changes of runtime overrides made through this
+	 * configuration back to the file it was read from.
+	 *
+	 * @see #persistChanges(Path, Duration)
+	 * @throws ConfigurationException
+	 *             if the configuration was not read from a plain text file
+	 *             in the context-based format
+	 */
+	public void persistChanges(@NotNull Duration window) {
+		Path file = configurationDataProvider.getLocation();
+		if (file == null || sharedFile != null || Files.isDirectory(file))
+			throw new ConfigurationException("Configuration was not read from a file");
+		persistChanges(file, window);
+	}
+
+	/**
+	 * Writes all further changes of runtime overrides made through this
+	 * configuration to the section of its context in the given file, in the
+	 * background. Changes are collected for the given window after the first
+	 * of them and written together, so that mutators never wait for the disk.
+	 * Only the lines of the section are rewritten, and the file is replaced
+	 * atomically once the new content is on disk. A key which is cleared is
+	 * removed from the section, and {@link #reset()} is not written. Changes
+	 * which are still pending are written when the JVM shuts down, or by
+	 * {@link #flushChanges()}. A write which fails with an I/O error is
+	 * retried with a growing delay.
+	 *
+	 * @param file
+	 *            in the context-based format, which is created if it does
+	 *            not exist
+	 * @param window
+	 *            for which changes are collected before they are written
+	 * @throws ConfigurationException
+	 *             if the file is compressed, not UTF-8 text, or in the
+	 *             standard Properties format
+	 */
+	public synchronized void persistChanges(@NotNull Path file, @NotNull Duration window) {
+		checkWritable();
+		ensureLoaded();
+		if (persister != null)
+			persister.close();
+		persister = new WriteBehindPersister(file, context == null ? Parser.DEFAULT_CONTEXT : context, window);
+		LOG.info("Persisting configuration changes to [{}]", file);
+	}
+
+	/**
+	 * Writes the changes which are waiting for the window of
+	 * {@link #persistChanges(Path, Duration)} to elapse, and returns once they
+	 * are on disk.
+	 *
+	 * @throws ConfigurationException
+	 *             if the file cannot be written
+	 */
+	public void flushChanges() {
+		WriteBehindPersister persister;
+		synchronized (this) {
+			persister = this.persister;
+		}
+		if (persister != null)
+			persister.flush();
+	}
+
+	/**
+	 * Registers a listener which is passed the keys whose values changed,
+	 * after each change of this configuration which affects any key. A change
+	 * of a layer, such as a {@link #reload()}, is compared key by key, so that
+	 * keys whose values are unchanged are not reported. Listeners are called
+	 * in the order of their registration on the thread which made the change,
+	 * while it holds the lock of the configuration, and must therefore be
+	 * quick. A listener which throws does not affect the change or the other
+	 * listeners.
+	 *
+	 * @param listener
+	 *            to be passed the keys which changed
+	 */
+	public synchronized void addChangeListener(@NotNull Consumer<? super ConfigurationDiff> listener) {
+		if (listeners == null)
+			listeners = new CopyOnWriteArrayList<>();
+		listeners.add(listener);
+	}
+
+	/**
+	 * Unregisters a listener registered by
+	 * {@link #addChangeListener(Consumer)}.
+	 */
+	public void removeChangeListener(@NotNull Consumer<? super ConfigurationDiff> listener) {
+		List<Consumer<? super ConfigurationDiff>> listeners = this.listeners;
+		if (listeners != null)
+			listeners.remove(listener);
+	}
+
+	/**
+	 * Polls the file this configuration was read from for changes at the
+	 * given interval, and requests a reload with {@link #requestReload()} when
+	 * its content changed, so that a file which is rewritten several times in
+	 * a row is parsed once it has settled. A poll only reads the size and
+	 * modification time of the file, which suits file systems that do not
+	 * deliver change events reliably, and hashes the content only when either
+	 * of them changed, so that the file is only parsed again when its content
+	 * actually differs. Polling runs on a thread shared by all configurations,
+	 * and stops with {@link #stopPolling()} or when the configuration is no
+	 * longer in use.
+	 *
+	 * @param interval
+	 *            between the end of a poll and the start of the next one
+	 * @throws ConfigurationException
+	 *             if the configuration was not read from a file
+	 */
+	public synchronized void pollForChanges(@NotNull Duration interval) {
+		checkWritable();
+		ensureLoaded();
+		Path file = configurationDataProvider.getLocation();
+		if (file == null || sharedFile != null || Files.isDirectory(file))
+			throw new ConfigurationException("Configuration was not read from a file");
+		if (interval.isNegative() || interval.isZero())
+			throw new ConfigurationException(String.format("Invalid polling interval [%s]", interval));
+		if (polling != null)
+			polling.cancel(false);
+		try {
+			detector = new FileChangeDetector(file);
+		} catch (IOException e) {
+			throw new ConfigurationException(String.format("Unable to read configuration file [%s]", file), e);
+		}
+		WeakReference<AbstractConfiguration> reference = new WeakReference<>(this);
+		ScheduledFuture<?>[] task = new ScheduledFuture<?>[1];
+		task[0] = polling = SharedScheduler.get().scheduleWithFixedDelay(() -> {
+			AbstractConfiguration configuration = reference.get();
+			if (configuration == null) {
+				task[0].cancel(false);
+				return;
+			}
+			configuration.poll();
+		}, interval.toNanos(), interval.toNanos(), TimeUnit.NANOSECONDS);
+		LOG.info("Polling [{}] for changes every [{}]", file, interval);
+	}
+
+	/**
+	 * Requests that the file of this configuration is reloaded in the
+	 * background, once requests have stopped arriving for the quiet period set
+	 * by {@link #setReloadQuietPeriod(Duration)}. A burst of requests results
+	 * in a single reload after its last request. Reloads never run
+	 * concurrently: requests which settle while a reload runs are coalesced
+	 * into one further reload, which starts once the running one completes.
+	 */
+	public void requestReload() {
+		checkWritable();
+		reloads().trigger();
+	}
+
+	/**
+	 * Sets the quiet period after which requests of {@link #requestReload()},
+	 * including those of {@link #pollForChanges(Duration)}, result in a
+	 * reload. It defaults to 250 milliseconds.
+	 *
+	 * @param quietPeriod
+	 *            for which no further request may arrive before a reload
+	 */
+	public void setReloadQuietPeriod(@NotNull Duration quietPeriod) {
+		reloads().setQuietPeriod(quietPeriod);
+	}
+
+	/**
+	 * Stops polling started by {@link #pollForChanges(Duration)}, and cancels
+	 * a reload which was requested but has not started yet. A reload which is
+	 * already running completes.
+	 */
+	public synchronized void stopPolling() {
+		if (polling != null)
+			polling.cancel(false);
+		polling = null;
+		detector = null;
+		if (reloads != null)
+			reloads.cancel();
+	}
+
+	/**
+	 * Checks the file this configuration is polling for changes once, and
+	 * reloads the configuration right away if its content changed.
+	 *
+	 * @return whether the configuration was reloaded
+	 * @throws ConfigurationException
+	 *             if the configuration is not polling its file
+	 */
+	public boolean reloadIfChanged() {
+		FileChangeDetector detector;
+		synchronized (this) {
+			detector = this.detector;
+		}
+		if (detector == null)
+			throw new ConfigurationException("Configuration is not polling its file for changes");
+		try {
+			if (!detector.hasChanged())
+				return false;
+		} catch (IOException e) {
+			throw new ConfigurationException("Unable to read configuration file", e);
+		}
+		reload();
+		return true;
+	}
+
+	/**
+	 * Returns the debouncer of {@link #requestReload()}, which is created on
+	 * first use so that configurations which never reload, such as snapshots,
+	 * do not start the shared scheduler.
+	 */
+	private synchronized @NotNull Debouncer reloads() {
+		if (reloads == null)
+			reloads = new Debouncer(this::reload, RELOAD_QUIET_PERIOD, SharedScheduler.get(), ForkJoinPool.commonPool());
+		return reloads;
+	}
+
+	private void poll() {
+		FileChangeDetector detector;
+		synchronized (this) {
+			detector = this.detector;
+		}
+		if (detector == null)
+			return;
+		try {
+			if (detector.hasChanged())
+				reloads().trigger();
+		} catch (IOException e) {
+			LOG.error("Unable to poll configuration file", e);
+		}
+	}
+
+	/**
+	 * Returns an estimate of the heap retained by the keys, the values and
+	 * the index structures of this configuration.
+	 */
+	public @NotNull MemoryReport getMemoryReport() {
+		ensureLoaded();
+		return sources.getMemoryReport();
+	}
+
+	private void checkWritable() {
+		if (readOnly)
+			throw new ConfigurationException("Configuration snapshot is read-only");
+		if (frozen)
+			throw new ConfigurationException("Configuration is frozen");
+	}
+
+	private @NotNull String getKey(@NotNull String key) {
+		String value = lookup(key);
 		if (value == null)
 			throw new ConfigurationException(String.format("Unable to find configuration value for key [%s]", key));
 		return value;
 	}
+
+	private @Nullable String lookup(@NotNull String key) {
+		ensureLoaded();
+		String value = sources.get(key);
+		if (value == null && lazy && !isolated)
+			return System.getProperty(key);
+		return value;
+	}
+
+	/**
+	 * Returns the value of the key parsed as the given kind of quantity, or a
+	 * list of them if a separator is given. Parsed values are cached per key
+	 * and dropped when listeners are notified of a change of the key, so that
+	 * a hit costs a single map lookup. An entry which raced with a change of
+	 * its key is dropped by its reader. The cache is created on the first
+	 * parse.
+	 */
+	private @Nullable Object parsed(@NotNull String key, @NotNull String kind, @Nullable String separator, boolean required) {
+		Map<String, Parsed> parsed = this.parsed;
+		Parsed entry = parsed == null ? null : parsed.get(key);
+		if (entry != null && entry.kind.equals(kind) && Objects.equals(entry.separator, separator))
+			return entry.value;
+		ensureLoaded();
+		String value = sources.get(key);
+		boolean cacheable = value != null;
+		if (value == null && lazy && !isolated)
+			value = System.getProperty(key);
+		if (value == null) {
+			if (required)
+				throw new ConfigurationException(String.format("Unable to find configuration value for key [%s]", key));
+			return null;
+		}
+		Object result;
+		if (kind.equals(DURATION))
+			result = separator == null ? Quantities.toDuration(key, value) : Quantities.toDurations(key, value, separator);
+		else
+			result = separator == null ? Quantities.toDataSize(key, value) : Quantities.toDataSizes(key, value, separator);
+		if (cacheable) {
+			if (parsed == null)
+				parsed = parsedCache();
+			entry = new Parsed(kind, separator, result);
+			parsed.put(key, entry);
+			if (!value.equals(sources.get(key)))
+				parsed.remove(key, entry);
+		}
+		return result;
+	}
+
+	private synchronized @NotNull Map<String, Parsed> parsedCache() {
+		if (parsed == null)
+			parsed = new ConcurrentHashMap<>();
+		return parsed;
+	}
+
+	private boolean isObserved() {
+		List<Consumer<? super ConfigurationDiff>> listeners = this.listeners;
+		Map<String, Parsed> parsed = this.parsed;
+		return listeners != null && !listeners.isEmpty() || parsed != null && !parsed.isEmpty();
+	}
+
+	private void record(@NotNull Map<String, String> changes) {
+		if (journal != null)
+			journal.append(changes);
+		if (persister != null)
+			persister.submit(changes);
+	}
+
+	private boolean applyChanges() {
+		if (follower == null)
+			return false;
+		checkWritable();
+		List<ChangeJournal.Change> changes = follower.poll();
+		if (changes.isEmpty())
+			return false;
+		PropertySources next = sources;
+		boolean reset = false;
+		for (ChangeJournal.Change change : changes)
+			if (change.isReset()) {
+				next = next.withoutOverrides();
+				reset = true;
+			} else if (change.getValue() == null)
+				next = next.withoutOverride(change.getKey());
+			else
+				next = next.withOverride(change.getKey(), change.getValue());
+		if (reset) {
+			update(next);
+			return true;
+		}
+		PropertySources previous = sources;
+		sources = next;
+		Set<String> keys = new LinkedHashSet<>();
+		for (ChangeJournal.Change change : changes) {
+			keys.add(change.getKey());
+			if (change.getValue() == null)
+				unexport(change.getKey());
+			else
+				export(change.getKey(), change.getValue());
+		}
+		notifyListeners(previous, keys);
+		return true;
+	}
+
+	private void update(@NotNull PropertySources next) {
+		PropertySources previous = sources;
+		sources = next;
+		if (isolated && !isObserved())
+			return;
+		ConfigurationDiff diff = ConfigurationDiff.between(previous, next);
+		diff.forEach((key, value) -> {
+			if (value == null)
+				unexport(key);
+			else if (next.isRelaxed(key))
+				restore(key);
+			else
+				export(key, value);
+		});
+		notifyListeners(diff);
+	}
+
+	private void notifyListeners(@NotNull PropertySources previous, @NotNull Collection<String> keys) {
+		if (isObserved())
+			notifyListeners(ConfigurationDiff.between(previous, sources, keys));
+	}
+
+	private void notifyListeners(@NotNull ConfigurationDiff diff) {
+		if (diff.isEmpty())
+			return;
+		Map<String, Parsed> parsed = this.parsed;
+		if (parsed != null && !parsed.isEmpty())
+			diff.forEach((key, value) -> parsed.remove(key));
+		List<Consumer<? super ConfigurationDiff>> listeners = this.listeners;
+		if (listeners == null)
+			return;
+		for (Consumer<? super ConfigurationDiff> listener : listeners)
+			try {
+				listener.accept(diff);
+			} catch (RuntimeException e) {
+				LOG.error("Configuration change listener failed", e);
+			}
+	}
+
+	private void export(@NotNull String key, @NotNull String value) {
+		if (isolated)
+			return;
+		if (!displaced.containsKey(key))
+			displaced.put(key, System.getProperty(key));
+		exportProperty(key, value);
+	}
+
+	private void unexport(@NotNull String key) {
+		if (isolated)
+			return;
+		if (!displaced.containsKey(key))
+			displaced.put(key, System.getProperty(key));
+		unexportProperty(key);
+	}
+
+	/**
+	 * Restores the System property which an earlier export of the key
+	 * replaced, as values of relaxed layers such as the environment are not
+	 * published as System properties.
+	 */
+	private void restore(@NotNull String key) {
+		if (isolated || !displaced.containsKey(key))
+			return;
+		String value = displaced.remove(key);
+		if (value == null)
+			unexportProperty(key);
+		else
+			exportProperty(key, value);
+	}
+
+	private static void exportProperty(@NotNull String key, @NotNull Object value) {
+		String item = value.toString();
+		System.setProperty(key, item);
+		LOG.info("Set configuration property: [{}] => [{}]", key, item);
+	}
+
+	private static void unexportProperty(@NotNull String key) {
+		System.clearProperty(key);
+		LOG.info("Unset configuration property: [{}]", key);
+	}
+
+	private final static class Parsed {
+		private final @NotNull String kind;
+		private final @Nullable String separator;
+		private final @NotNull Object value;
+
+		Parsed(@NotNull String kind, @Nullable String separator, @NotNull Object value) {
+			this.kind = kind;
+			this.separator = separator;
+			this.value = value;
+		}
+	}
 }
@@ -0,0 +1,490 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ForkJoinPool;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trendafilov.confucius.ConfigurationException;
+
+/**
+ * An append-only file of changes to runtime overrides, through which the
+ * changes made in one process are propagated to others. The layout is:
+ *
+ * <pre>
+ * header  int magic, int format version, int sealed flag, int reserved
+ * batches int length, int record count, records
+ * records long version, long timestamp, byte type, [int key length, key, [int value length, value]]
+ * </pre>
+ * <p>
+ * A record either sets a key, clears it, or resets all overrides, in which
+ * case it has no key. Versions increase by one with each record. The records
+ * of a batch are written before its length, and a reader stops at a batch
+ * whose length is not set yet, so that a reader on the same host does not see
+ * a batch before all of its records are in the file. Batches are not forced
+ * to disk, so a crash of the host may lose the latest of them, and a writer
+ * which reopens the journal drops a batch it finds incomplete.
+ * <p>
+ * Once the journal grows well beyond the number of keys it changes, it is
+ * compacted in the background, off the thread which appended: its latest
+ * state is written as a single batch to a new file, which is forced to disk,
+ * the batches appended meanwhile are copied after it, and the new file is
+ * moved over the journal before the old file is sealed. Records keep their
+ * versions across compaction, so a reader which finds its file sealed reopens
+ * the journal and skips the records it has already applied. A journal must
+ * only be written by one process.
+ */
+final class ChangeJournal {
+	private final static Logger LOG = LoggerFactory.getLogger(ChangeJournal.class);
+	private final static int MAGIC = 0x434A4E31;
+	private final static int FORMAT = 1;
+	private final static int HEADER = 16;
+	private final static int SEALED = 8;
+	private final static int BATCH_HEADER = 8;
+	private final static byte SET = 0;
+	private final static byte CLEAR = 1;
+	private final static byte RESET = 2;
+	private final static int MIN_COMPACTION = 1024;
+
+	private ChangeJournal() {
+	}
+
+	/**
+	 * A change to the runtime overrides. A change without a key resets all
+	 * overrides, and a change of a key without a value clears the key.
+	 */
+	static final class Change {
+		private final long version;
+		private final long timestamp;
+		private final @Nullable String key;
+		private final @Nullable String value;
+
+		Change(long version, long timestamp, @Nullable String key, @Nullable String value) {
+			this.version = version;
+			this.timestamp = timestamp;
+			this.key = key;
+			this.value = value;
+		}
+
+		long getVersion() {
+			return version;
+		}
+
+		long getTimestamp() {
+			return timestamp;
+		}
+
+		@Nullable String getKey() {
+			return key;
+		}
+
+		@Nullable String getValue() {
+			return value;
+		}
+
+		boolean isReset() {
+			return key == null;
+		}
+	}
+
+	/**
+	 * Appends changes to a journal, which is created if it does not exist.
+	 */
+	static final class Writer implements Closeable {
+		private final @NotNull Path file;
+		private final @NotNull Map<String, Change> latest = new LinkedHashMap<>();
+		private @Nullable Change reset;
+		private @NotNull FileChannel channel;
+		private long end;
+		private long version;
+		private int records;
+		private boolean scheduled;
+		private boolean compacting;
+		private boolean closed;
+
+		Writer(@NotNull Path file) {
+			this.file = file;
+			try {
+				this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+				if (channel.size() == 0) {
+					channel.write(header(), 0);
+					this.end = HEADER;
+				} else {
+					List<Change> changes = new ArrayList<>();
+					this.end = read(file, map(channel, channel.size()), HEADER, changes);
+					channel.truncate(end);
+					for (Change change : changes)
+						fold(change);
+					records = changes.size();
+				}
+			} catch (IOException e) {
+				throw new ConfigurationException(String.format("Unable to open change journal [%s]", file), e);
+			} catch (ConfigurationException e) {
+				try {
+					channel.close();
+				} catch (IOException ignored) {
+				}
+				throw e;
+			}
+		}
+
+		/**
+		 * Appends a batch which sets the given keys, or clears those which are
+		 * mapped to {@code null}.
+		 */
+		synchronized void append(@NotNull Map<String, String> changes) {
+			long timestamp = System.currentTimeMillis();
+			List<Change> batch = new ArrayList<>(changes.size());
+			for (Entry<String, String> entry : changes.entrySet())
+				batch.add(new Change(++version, timestamp, entry.getKey(), entry.getValue()));
+			write(batch);
+		}
+
+		/**
+		 * Appends a batch which resets all overrides.
+		 */
+		synchronized void appendReset() {
+			write(List.of(new Change(++version, System.currentTimeMillis(), null, null)));
+		}
+
+		synchronized long getVersion() {
+			return version;
+		}
+
+		/**
+		 * Writes the latest state of the journal to a new file, which replaces
+		 * the journal, and seals the old file. The new file is written and
+		 * forced to disk without holding the writer, so that appends only wait
+		 * for the batches appended meanwhile to be copied and the file to be
+		 * moved.
+		 */
+		void compact() {
+			List<Change> state = new ArrayList<>();
+			long from;
+			int appended;
+			synchronized (this) {
+				while (compacting)
+					await();
+				if (closed)
+					return;
+				compacting = true;
+				if (reset != null)
+					state.add(reset);
+				state.addAll(latest.values());
+				from = end;
+				appended = records;
+			}
+			state.sort(Comparator.comparingLong(Change::getVersion));
+			Path temporary = null;
+			try {
+				temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+				FileChannel next = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				try {
+					ByteBuffer batch = state.isEmpty() ? ByteBuffer.allocate(0) : encode(state);
+					next.write(header(), 0);
+					writeFully(next, batch, HEADER);
+					next.force(true);
+					synchronized (this) {
+						if (closed) {
+							next.close();
+							return;
+						}
+						long position = HEADER + batch.capacity();
+						for (long copied = 0; copied < end - from; )
+							copied += channel.transferTo(from + copied, end - from - copied, next.position(position + copied));
+						Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+						temporary = null;
+						channel.write(ByteBuffer.allocate(4).putInt(0, 1), SEALED);
+						channel.close();
+						channel = next;
+						end = position + end - from;
+						records = state.size() + records - appended;
+					}
+				} catch (IOException | RuntimeException e) {
+					next.close();
+					throw e;
+				}
+			} catch (IOException e) {
+				throw new ConfigurationException(String.format("Unable to compact change journal [%s]", file), e);
+			} finally {
+				if (temporary != null)
+					try {
+						Files.deleteIfExists(temporary);
+					} catch (IOException ignored) {
+					}
+				synchronized (this) {
+					compacting = false;
+					notifyAll();
+				}
+			}
+		}
+
+		/**
+		 * Closes the journal, once a compaction which is in progress has
+		 * completed.
+		 */
+		public synchronized void close() throws IOException {
+			while (compacting)
+				await();
+			closed = true;
+			channel.close();
+		}
+
+		private synchronized void write(@NotNull List<Change> batch) {
+			if (batch.isEmpty())
+				return;
+			ByteBuffer buffer = encode(batch);
+			try {
+				writeFully(channel, buffer.slice(BATCH_HEADER, buffer.capacity() - BATCH_HEADER), end + BATCH_HEADER);
+				writeFully(channel, buffer.slice(0, BATCH_HEADER), end);
+			} catch (IOException e) {
+				throw new ConfigurationException(String.format("Unable to write change journal [%s]", file), e);
+			}
+			end += buffer.capacity();
+			records += batch.size();
+			for (Change change : batch)
+				fold(change);
+			if (!scheduled && !compacting && records > Math.max(MIN_COMPACTION, 4 * (latest.size() + 1))) {
+				scheduled = true;
+				ForkJoinPool.commonPool().execute(this::compactInBackground);
+			}
+		}
+
+		private void compactInBackground() {
+			synchronized (this) {
+				scheduled = false;
+			}
+			try {
+				compact();
+			} catch (ConfigurationException e) {
+				LOG.error("Unable to compact change journal", e);
+			}
+		}
+
+		private void await() {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new ConfigurationException("Interrupted while waiting for the change journal", e);
+			}
+		}
+
+		private void fold(@NotNull Change change) {
+			version = Math.max(version, change.getVersion());
+			if (change.isReset()) {
+				latest.clear();
+				reset = change;
+			} else
+				latest.put(change.getKey(), change);
+		}
+	}
+
+	/**
+	 * Reads the changes appended to a journal through a read-only memory
+	 * mapping, which is extended as the journal grows.
+	 */
+	static final class Tailer implements Closeable {
+		private final @NotNull Path file;
+		private @Nullable FileChannel channel;
+		private @Nullable MappedByteBuffer buffer;
+		private long position;
+		private long version;
+
+		Tailer(@NotNull Path file) {
+			this.file = file;
+		}
+
+		/**
+		 * Returns the changes which were appended since the previous call,
+		 * or an empty list if there are none or the journal does not exist
+		 * yet.
+		 */
+		@NotNull List<Change> poll() {
+			try {
+				if (channel == null && !open())
+					return List.of();
+				while (buffer.getInt(SEALED) != 0)
+					if (!open())
+						return List.of();
+				long size = channel.size();
+				if (size > buffer.capacity())
+					buffer = map(channel, size);
+				List<Change> changes = new ArrayList<>();
+				position = read(file, buffer, position, changes);
+				changes.removeIf(change -> change.getVersion() <= version);
+				if (!changes.isEmpty())
+					version = changes.get(changes.size() - 1).getVersion();
+				return changes;
+			} catch (IOException e) {
+				throw new ConfigurationException(String.format("Unable to read change journal [%s]", file), e);
+			}
+		}
+
+		long getVersion() {
+			return version;
+		}
+
+		public void close() throws IOException {
+			if (channel != null)
+				channel.close();
+		}
+
+		private boolean open() throws IOException {
+			close();
+			try {
+				channel = FileChannel.open(file, StandardOpenOption.READ);
+			} catch (NoSuchFileException e) {
+				channel = null;
+				return false;
+			}
+			if (channel.size() < HEADER) {
+				close();
+				channel = null;
+				return false;
+			}
+			try {
+				buffer = map(channel, channel.size());
+				checkHeader(file, buffer);
+			} catch (ConfigurationException e) {
+				close();
+				channel = null;
+				throw e;
+			}
+			position = HEADER;
+			return true;
+		}
+	}
+
+	private static @NotNull MappedByteBuffer map(@NotNull FileChannel channel, long size) throws IOException {
+		if (size > Integer.MAX_VALUE)
+			throw new ConfigurationException("Change journal is too large");
+		return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+	}
+
+	/**
+	 * Reads the complete batches from the given position on, and returns the
+	 * position after the last of them.
+	 */
+	private static long read(@NotNull Path file, @NotNull ByteBuffer buffer, long from, @NotNull Collection<Change> changes) {
+		checkHeader(file, buffer);
+		int position = (int) from;
+		while (position + BATCH_HEADER <= buffer.capacity()) {
+			int length = buffer.getInt(position);
+			if (length <= 0 || position + BATCH_HEADER + length > buffer.capacity())
+				break;
+			int count = buffer.getInt(position + 4);
+			int record = position + BATCH_HEADER;
+			for (int i = 0; i < count; i++) {
+				long version = buffer.getLong(record);
+				long timestamp = buffer.getLong(record + 8);
+				byte type = buffer.get(record + 16);
+				record += 17;
+				String key = null;
+				String value = null;
+				if (type != RESET) {
+					key = decode(buffer, record);
+					record += 4 + buffer.getInt(record);
+				}
+				if (type == SET) {
+					value = decode(buffer, record);
+					record += 4 + buffer.getInt(record);
+				}
+				changes.add(new Change(version, timestamp, key, value));
+			}
+			position += BATCH_HEADER + length;
+		}
+		return position;
+	}
+
+	private static void checkHeader(@NotNull Path file, @NotNull ByteBuffer buffer) {
+		if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT)
+			throw new ConfigurationException(String.format("Invalid change journal [%s]", file));
+	}
+
+	private static @NotNull ByteBuffer encode(@NotNull List<Change> batch) {
+		List<byte[]> strings = new ArrayList<>();
+		int length = 0;
+		for (Change change : batch) {
+			length += 17;
+			if (change.isReset())
+				continue;
+			byte[] key = change.getKey().getBytes(StandardCharsets.UTF_8);
+			strings.add(key);
+			length += 4 + key.length;
+			if (change.getValue() != null) {
+				byte[] value = change.getValue().getBytes(StandardCharsets.UTF_8);
+				strings.add(value);
+				length += 4 + value.length;
+			}
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(BATCH_HEADER + length);
+		buffer.putInt(length).putInt(batch.size());
+		int string = 0;
+		for (Change change : batch) {
+			buffer.putLong(change.getVersion()).putLong(change.getTimestamp());
+			if (change.isReset()) {
+				buffer.put(RESET);
+				continue;
+			}
+			buffer.put(change.getValue() == null ? CLEAR : SET);
+			byte[] key = strings.get(string++);
+			buffer.putInt(key.length).put(key);
+			if (change.getValue() != null) {
+				byte[] value = strings.get(string++);
+				buffer.putInt(value.length).put(value);
+			}
+		}
+		return buffer.flip();
+	}
+
+	private static @NotNull String decode(@NotNull ByteBuffer buffer, int position) {
+		byte[] bytes = new byte[buffer.getInt(position)];
+		buffer.get(position + 4, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static @NotNull ByteBuffer header() {
+		return ByteBuffer.allocate(HEADER).putInt(MAGIC).putInt(FORMAT).putInt(0).putInt(0).flip();
+	}
+
+	private static void writeFully(@NotNull FileChannel channel, @NotNull ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			position += channel.write(buffer, position);
+	}
+}
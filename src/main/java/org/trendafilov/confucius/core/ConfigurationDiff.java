@@ -0,0 +1,209 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The keys whose values differ between two versions of a configuration,
+ * along with their previous and current values. A key which is absent from a
+ * version has a <tt>null</tt> value in it. The values are the instances held
+ * by the configuration, so a diff does not copy any strings. Keys are
+ * ordered.
+ *
+ * @see AbstractConfiguration#addChangeListener(java.util.function.Consumer)
+ */
+public final class ConfigurationDiff {
+	private final static ConfigurationDiff EMPTY = new ConfigurationDiff(new String[0], new String[0], new String[0]);
+
+	private final @NotNull String @NotNull [] keys;
+	private final @Nullable String @NotNull [] previous;
+	private final @Nullable String @NotNull [] current;
+
+	private ConfigurationDiff(@NotNull String @NotNull [] keys, @Nullable String @NotNull [] previous, @Nullable String @NotNull [] current) {
+		this.keys = keys;
+		this.previous = previous;
+		this.current = current;
+	}
+
+	/**
+	 * Returns whether no key changed.
+	 */
+	public boolean isEmpty() {
+		return keys.length == 0;
+	}
+
+	/**
+	 * Returns the number of keys which changed.
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	/**
+	 * Returns whether the value of the given key changed.
+	 */
+	public boolean contains(@NotNull String key) {
+		return Arrays.binarySearch(keys, key) >= 0;
+	}
+
+	/**
+	 * Returns all keys which changed.
+	 */
+	public @NotNull Set<String> getKeys() {
+		return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(keys)));
+	}
+
+	/**
+	 * Returns the keys which are only present in the current version.
+	 */
+	public @NotNull Set<String> getAdded() {
+		Set<String> added = new LinkedHashSet<>();
+		for (int i = 0; i < keys.length; i++)
+			if (previous[i] == null)
+				added.add(keys[i]);
+		return Collections.unmodifiableSet(added);
+	}
+
+	/**
+	 * Returns the keys which are only present in the previous version.
+	 */
+	public @NotNull Set<String> getRemoved() {
+		Set<String> removed = new LinkedHashSet<>();
+		for (int i = 0; i < keys.length; i++)
+			if (current[i] == null)
+				removed.add(keys[i]);
+		return Collections.unmodifiableSet(removed);
+	}
+
+	/**
+	 * Returns the keys which are present in both versions with different
+	 * values.
+	 */
+	public @NotNull Set<String> getModified() {
+		Set<String> modified = new LinkedHashSet<>();
+		for (int i = 0; i < keys.length; i++)
+			if (previous[i] != null && current[i] != null)
+				modified.add(keys[i]);
+		return Collections.unmodifiableSet(modified);
+	}
+
+	/**
+	 * Returns the value of the given key in the previous version, or
+	 * <tt>null</tt> if it was absent or did not change.
+	 */
+	public @Nullable String getPreviousValue(@NotNull String key) {
+		int index = Arrays.binarySearch(keys, key);
+		return index < 0 ? null : previous[index];
+	}
+
+	/**
+	 * Returns the value of the given key in the current version, or
+	 * <tt>null</tt> if it is absent or did not change.
+	 */
+	public @Nullable String getValue(@NotNull String key) {
+		int index = Arrays.binarySearch(keys, key);
+		return index < 0 ? null : current[index];
+	}
+
+	/**
+	 * Passes each key which changed and its current value, which is
+	 * <tt>null</tt> for a removed key, to the action, ordered by key.
+	 */
+	public void forEach(@NotNull BiConsumer<? super String, ? super String> action) {
+		for (int i = 0; i < keys.length; i++)
+			action.accept(keys[i], current[i]);
+	}
+
+	@Override
+	public @NotNull String toString() {
+		StringBuilder builder = new StringBuilder("ConfigurationDiff[");
+		for (int i = 0; i < keys.length; i++) {
+			if (i > 0)
+				builder.append(", ");
+			builder.append(keys[i]).append(": ").append(previous[i]).append(" -> ").append(current[i]);
+		}
+		return builder.append(']').toString();
+	}
+
+	/**
+	 * Compares all keys of the two versions. Each key of either version is
+	 * looked up once in the other, so the cost is linear in their sizes, and
+	 * versions which share their table are not compared at all.
+	 */
+	static @NotNull ConfigurationDiff between(@NotNull PropertySources previous, @NotNull PropertySources current) {
+		if (previous.hasSameValues(current))
+			return EMPTY;
+		List<String[]> changes = new ArrayList<>();
+		for (Map.Entry<String, String> entry : previous.getValues().entrySet()) {
+			String value = current.get(entry.getKey());
+			if (!entry.getValue().equals(value))
+				changes.add(new String[] { entry.getKey(), entry.getValue(), value });
+		}
+		for (Map.Entry<String, String> entry : current.getValues().entrySet())
+			if (previous.get(entry.getKey()) == null)
+				changes.add(new String[] { entry.getKey(), null, entry.getValue() });
+		return of(changes);
+	}
+
+	/**
+	 * Compares only the given keys of the two versions, for changes which are
+	 * known not to affect any other key.
+	 */
+	static @NotNull ConfigurationDiff between(@NotNull PropertySources previous, @NotNull PropertySources current,
+			@NotNull Collection<String> keys) {
+		List<String[]> changes = new ArrayList<>();
+		for (String key : keys) {
+			String before = previous.get(key);
+			String after = current.get(key);
+			if (!Objects.equals(before, after))
+				changes.add(new String[] { key, before, after });
+		}
+		return of(changes);
+	}
+
+	private static @NotNull ConfigurationDiff of(@NotNull List<String[]> changes) {
+		if (changes.isEmpty())
+			return EMPTY;
+		changes.sort(Comparator.comparing(change -> change[0]));
+		int size = 0;
+		for (int i = 0; i < changes.size(); i++)
+			if (i == 0 || !changes.get(i)[0].equals(changes.get(i - 1)[0]))
+				changes.set(size++, changes.get(i));
+		String[] keys = new String[size];
+		String[] previous = new String[size];
+		String[] current = new String[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = changes.get(i)[0];
+			previous[i] = changes.get(i)[1];
+			current[i] = changes.get(i)[2];
+		}
+		return new ConfigurationDiff(keys, previous, current);
+	}
+}
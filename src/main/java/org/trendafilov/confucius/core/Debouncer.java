@@ -0,0 +1,105 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trendafilov.confucius.ConfigurationException;
+
+/**
+ * Runs an action once triggers have stopped arriving for a quiet period.
+ * Every trigger restarts the quiet period, so a burst of triggers results in
+ * a single run after its last trigger. Runs never overlap: triggers which
+ * settle while the action runs are coalesced into one further run, which
+ * starts as soon as the current one completes. The quiet period is measured
+ * on the scheduler, while the action itself runs on the executor.
+ */
+final class Debouncer {
+	private final static Logger LOG = LoggerFactory.getLogger(Debouncer.class);
+
+	private final @NotNull Runnable action;
+	private final @NotNull ScheduledExecutorService scheduler;
+	private final @NotNull Executor executor;
+	private volatile long quietPeriod;
+	private @Nullable ScheduledFuture<?> timer;
+	private long deadline;
+	private boolean running;
+	private boolean pending;
+
+	Debouncer(@NotNull Runnable action, @NotNull Duration quietPeriod, @NotNull ScheduledExecutorService scheduler,
+			@NotNull Executor executor) {
+		this.action = action;
+		this.scheduler = scheduler;
+		this.executor = executor;
+		setQuietPeriod(quietPeriod);
+	}
+
+	void setQuietPeriod(@NotNull Duration quietPeriod) {
+		if (quietPeriod.isNegative())
+			throw new ConfigurationException(String.format("Invalid quiet period [%s]", quietPeriod));
+		this.quietPeriod = quietPeriod.toNanos();
+	}
+
+	synchronized void trigger() {
+		deadline = System.nanoTime() + quietPeriod;
+		if (timer == null)
+			timer = scheduler.schedule(this::settle, quietPeriod, TimeUnit.NANOSECONDS);
+	}
+
+	synchronized void cancel() {
+		if (timer != null)
+			timer.cancel(false);
+		timer = null;
+		pending = false;
+	}
+
+	private synchronized void settle() {
+		timer = null;
+		long remaining = deadline - System.nanoTime();
+		if (remaining > 0) {
+			timer = scheduler.schedule(this::settle, remaining, TimeUnit.NANOSECONDS);
+		} else if (running) {
+			pending = true;
+		} else {
+			running = true;
+			executor.execute(this::run);
+		}
+	}
+
+	private void run() {
+		boolean again;
+		do {
+			try {
+				action.run();
+			} catch (RuntimeException e) {
+				LOG.error("Debounced action failed", e);
+			}
+			synchronized (this) {
+				again = pending;
+				pending = false;
+				running = again;
+			}
+		} while (again);
+	}
+}
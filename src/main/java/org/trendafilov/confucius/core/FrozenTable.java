@@ -0,0 +1,304 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.trendafilov.confucius.ConfigurationException;
+
+/**
+ * A read-only table addressed through a minimal perfect hash function, built
+ * with the compress, hash and displace scheme: keys are hashed into buckets of
+ * a few keys each, and every bucket gets the smallest displacement which moves
+ * all of its keys to free slots. A lookup is then a hash of the key, a read of
+ * the displacement of its bucket, and one key comparison in a slot array of
+ * exactly as many slots as there are keys.
+ */
+final class FrozenTable implements Table {
+	private final static int BUCKET_SIZE = 4;
+	private final static int MAX_DISPLACEMENT = 1 << 24;
+	private final static int MAX_SALTS = 8;
+
+	private final long salt;
+	private final int @NotNull [] displacements;
+	private final @NotNull String[] keys;
+	private final @NotNull String[] values;
+	private final byte @NotNull [] origins;
+	private final @NotNull String[] names;
+	private final int @NotNull [] order;
+	private @Nullable Map<String, String> view;
+
+	private FrozenTable(long salt, int @NotNull [] displacements, @NotNull String[] keys, @NotNull String[] values, byte @NotNull [] origins,
+			@NotNull String[] names, int @NotNull [] order) {
+		this.salt = salt;
+		this.displacements = displacements;
+		this.keys = keys;
+		this.values = values;
+		this.origins = origins;
+		this.names = names;
+		this.order = order;
+	}
+
+	/**
+	 * Compiles the given table.
+	 *
+	 * @throws ConfigurationException
+	 *             if no perfect hash function is found for the keys
+	 */
+	static @NotNull FrozenTable of(@NotNull Table table) {
+		int size = table.asMap().size();
+		String[] sorted = new String[size];
+		String[] sortedValues = new String[size];
+		int[] count = new int[1];
+		table.forEach("", (key, value) -> {
+			sorted[count[0]] = key;
+			sortedValues[count[0]++] = value;
+		});
+		for (int attempt = 0; attempt < MAX_SALTS; attempt++) {
+			long salt = mix(0x9E3779B97F4A7C15L * (attempt + 1));
+			int[] displacements = displace(sorted, salt);
+			if (displacements == null)
+				continue;
+			String[] keys = new String[size];
+			String[] values = new String[size];
+			byte[] origins = new byte[size];
+			int[] order = new int[size];
+			Set<String> names = new LinkedHashSet<>();
+			for (int i = 0; i < size; i++) {
+				int slot = slot(hash(sorted[i], salt), displacements, size);
+				String origin = table.getOrigin(sorted[i]);
+				names.add(origin);
+				if (names.size() > 256)
+					throw new ConfigurationException("Too many property sources to freeze the configuration");
+				keys[slot] = sorted[i];
+				values[slot] = sortedValues[i];
+				origins[slot] = (byte) indexOf(names, origin);
+				order[i] = slot;
+			}
+			return new FrozenTable(salt, displacements, keys, values, origins, names.toArray(new String[0]), order);
+		}
+		throw new ConfigurationException("Unable to find a perfect hash function for the configuration keys");
+	}
+
+	public @Nullable String get(@NotNull String key) {
+		int slot = find(key);
+		return slot < 0 ? null : values[slot];
+	}
+
+	public @Nullable String getOrigin(@NotNull String key) {
+		int slot = find(key);
+		return slot < 0 ? null : names[origins[slot] & 0xFF];
+	}
+
+	public @NotNull Map<String, String> asMap() {
+		if (view == null)
+			view = new View();
+		return view;
+	}
+
+	public @NotNull Map<String, String> subset(@NotNull String prefix) {
+		Map<String, String> subset = new LinkedHashMap<>();
+		forEach(prefix, subset::put);
+		return Collections.unmodifiableMap(subset);
+	}
+
+	public void forEach(@NotNull String prefix, @NotNull BiConsumer<? super String, ? super String> action) {
+		int low = 0;
+		int high = order.length;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (keys[order[middle]].compareTo(prefix) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		for (int i = low; i < order.length && keys[order[i]].startsWith(prefix); i++)
+			action.accept(keys[order[i]], values[order[i]]);
+	}
+
+	public @NotNull Table with(@NotNull String key, @NotNull String value, @NotNull String origin) {
+		throw new ConfigurationException("Configuration is frozen");
+	}
+
+	public @NotNull Table without(@NotNull String key) {
+		throw new ConfigurationException("Configuration is frozen");
+	}
+
+	public void estimate(@NotNull MemoryReport.Builder report) {
+		report.addIndex(4L * displacements.length + 16 + MemoryReport.arrayBytes(keys.length) * 2 + origins.length + 16 + 4L * order.length + 16);
+		report.addAll(asMap());
+	}
+
+	private int find(@NotNull String key) {
+		if (keys.length == 0)
+			return -1;
+		int slot = slot(hash(key, salt), displacements, keys.length);
+		return key.equals(keys[slot]) ? slot : -1;
+	}
+
+	/**
+	 * Returns the displacement of each bucket, or {@code null} if the keys
+	 * cannot be placed with the given salt.
+	 */
+	private static int @Nullable [] displace(@NotNull String[] keys, long salt) {
+		int buckets = Math.max(1, keys.length / BUCKET_SIZE);
+		int[] displacements = new int[buckets];
+		long[][] members = new long[buckets][];
+		int[] sizes = new int[buckets];
+		for (String key : keys) {
+			long hash = hash(key, salt);
+			int bucket = bucket(hash, buckets);
+			if (members[bucket] == null)
+				members[bucket] = new long[2];
+			else if (sizes[bucket] == members[bucket].length)
+				members[bucket] = Arrays.copyOf(members[bucket], sizes[bucket] * 2);
+			members[bucket][sizes[bucket]++] = hash;
+		}
+		int[] bySize = new int[buckets];
+		int[] starts = new int[keys.length + 2];
+		for (int size : sizes)
+			starts[keys.length - size + 1]++;
+		for (int i = 1; i < starts.length; i++)
+			starts[i] += starts[i - 1];
+		for (int i = 0; i < buckets; i++)
+			bySize[starts[keys.length - sizes[i]]++] = i;
+
+		boolean[] taken = new boolean[keys.length];
+		int[] slots = new int[0];
+		for (int bucket : bySize) {
+			int size = sizes[bucket];
+			if (size == 0)
+				break;
+			if (slots.length < size)
+				slots = new int[size];
+			int displacement = 0;
+			search:
+			for (; displacement < MAX_DISPLACEMENT; displacement++) {
+				for (int i = 0; i < size; i++) {
+					int slot = position(members[bucket][i], displacement, keys.length);
+					if (taken[slot])
+						continue search;
+					for (int j = 0; j < i; j++)
+						if (slots[j] == slot)
+							continue search;
+					slots[i] = slot;
+				}
+				break;
+			}
+			if (displacement == MAX_DISPLACEMENT)
+				return null;
+			for (int i = 0; i < size; i++)
+				taken[slots[i]] = true;
+			displacements[bucket] = displacement;
+		}
+		return displacements;
+	}
+
+	private static int slot(long hash, int @NotNull [] displacements, int size) {
+		return position(hash, displacements[bucket(hash, displacements.length)], size);
+	}
+
+	private static int bucket(long hash, int buckets) {
+		return (int) (((hash >>> 32) * buckets) >>> 32);
+	}
+
+	private static int position(long hash, int displacement, int size) {
+		long mixed = mix(hash + displacement * 0x9E3779B97F4A7C15L);
+		return (int) (((mixed >>> 32) * size) >>> 32);
+	}
+
+	private static long hash(@NotNull String key, long salt) {
+		long hash = salt;
+		for (int i = 0; i < key.length(); i++)
+			hash = (hash ^ key.charAt(i)) * 0x100000001B3L;
+		return mix(hash);
+	}
+
+	private static long mix(long hash) {
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	private static int indexOf(@NotNull Set<String> names, @NotNull String name) {
+		int index = 0;
+		for (String item : names) {
+			if (item.equals(name))
+				return index;
+			index++;
+		}
+		return -1;
+	}
+
+	private final class View extends AbstractMap<String, String> {
+
+		@Override
+		public @Nullable String get(Object key) {
+			return key instanceof String ? FrozenTable.this.get((String) key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public int size() {
+			return keys.length;
+		}
+
+		@Override
+		public @NotNull Set<Entry<String, String>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public @NotNull Iterator<Entry<String, String>> iterator() {
+					return new Iterator<>() {
+						private int i;
+
+						public boolean hasNext() {
+							return i < keys.length;
+						}
+
+						public @NotNull Entry<String, String> next() {
+							if (!hasNext())
+								throw new NoSuchElementException();
+							int slot = i++;
+							return new SimpleImmutableEntry<>(keys[slot], values[slot]);
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return keys.length;
+				}
+			};
+		}
+	}
+}
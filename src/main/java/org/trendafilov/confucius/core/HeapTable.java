@@ -0,0 +1,204 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.trendafilov.confucius.core.source.PropertySource;
+
+/**
+ * A table of persistent maps, where a change costs O(log n) and shares the
+ * rest of the table with the previous version. Prefix queries are served from
+ * a persistent sorted index of the keys, which is built on first use and then
+ * maintained along with the maps, at the same cost per change.
+ */
+final class HeapTable implements Table {
+	private final static HeapTable EMPTY = new HeapTable(PersistentMap.empty(), PersistentMap.empty(), null);
+
+	private final @NotNull PersistentMap<String, String> values;
+	private final @NotNull PersistentMap<String, String> origins;
+	private volatile @Nullable SortedKeys index;
+
+	private HeapTable(@NotNull PersistentMap<String, String> values, @NotNull PersistentMap<String, String> origins, @Nullable SortedKeys index) {
+		this.values = values;
+		this.origins = origins;
+		this.index = index;
+	}
+
+	static @NotNull HeapTable empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Merges the given layers, ordered from the highest to the lowest
+	 * precedence.
+	 */
+	static @NotNull HeapTable of(@NotNull List<PropertySource> sources) {
+		Builder table = new Builder();
+		for (int i = sources.size() - 1; i >= 0; i--) {
+			PropertySource source = sources.get(i);
+			for (Map.Entry<String, String> entry : source.getProperties().entrySet())
+				table.put(entry.getKey(), entry.getValue(), source.getName());
+		}
+		return table.build();
+	}
+
+	public @Nullable String get(@NotNull String key) {
+		return values.get(key);
+	}
+
+	public @Nullable String getOrigin(@NotNull String key) {
+		return origins.get(key);
+	}
+
+	public @NotNull Map<String, String> asMap() {
+		return values;
+	}
+
+	public @NotNull Map<String, String> subset(@NotNull String prefix) {
+		return new Subset(prefix);
+	}
+
+	public void forEach(@NotNull String prefix, @NotNull BiConsumer<? super String, ? super String> action) {
+		getIndex().forEach(prefix, key -> action.accept(key, values.get(key)));
+	}
+
+	public @NotNull HeapTable with(@NotNull String key, @NotNull String value, @NotNull String origin) {
+		SortedKeys index = this.index;
+		if (index != null && !values.containsKey(key))
+			index = index.with(key);
+		return new HeapTable(values.with(key, value), origins.with(key, origin), index);
+	}
+
+	public @NotNull HeapTable without(@NotNull String key) {
+		if (!values.containsKey(key))
+			return this;
+		SortedKeys index = this.index;
+		return new HeapTable(values.without(key), origins.without(key), index == null ? null : index.without(key));
+	}
+
+	public void estimate(@NotNull MemoryReport.Builder report) {
+		report.addIndex(values.estimateBytes() + origins.estimateBytes());
+		SortedKeys index = this.index;
+		if (index != null)
+			report.addIndex(index.estimateBytes());
+		report.addAll(values);
+	}
+
+	private @NotNull SortedKeys getIndex() {
+		SortedKeys index = this.index;
+		if (index == null) {
+			String[] keys = values.keySet().toArray(new String[0]);
+			Arrays.sort(keys);
+			index = SortedKeys.of(keys);
+			this.index = index;
+		}
+		return index;
+	}
+
+	private final static class Builder {
+		private final PersistentMap.Builder<String, String> values = PersistentMap.<String, String>empty().toBuilder();
+		private final PersistentMap.Builder<String, String> origins = PersistentMap.<String, String>empty().toBuilder();
+
+		void put(@NotNull String key, @NotNull String value, @NotNull String origin) {
+			values.put(key, value);
+			origins.put(key, origin);
+		}
+
+		@NotNull HeapTable build() {
+			return new HeapTable(values.build(), origins.build(), null);
+		}
+	}
+
+	private final class Subset extends AbstractMap<String, String> {
+		private final @NotNull String prefix;
+		private final @NotNull SortedKeys index;
+		private int size = -1;
+
+		private Subset(@NotNull String prefix) {
+			this.prefix = prefix;
+			this.index = getIndex();
+		}
+
+		@Override
+		public @Nullable String get(Object key) {
+			return key instanceof String && ((String) key).startsWith(prefix) ? values.get(key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof String && ((String) key).startsWith(prefix) && values.containsKey(key);
+		}
+
+		@Override
+		public void forEach(@NotNull BiConsumer<? super String, ? super String> action) {
+			index.forEach(prefix, key -> action.accept(key, values.get(key)));
+		}
+
+		@Override
+		public @NotNull Set<Entry<String, String>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public @NotNull Iterator<Entry<String, String>> iterator() {
+					return new Iterator<>() {
+						private final Iterator<String> keys = index.iterator(prefix);
+						private @Nullable String key = advance();
+
+						public boolean hasNext() {
+							return key != null;
+						}
+
+						public @NotNull Entry<String, String> next() {
+							String key = this.key;
+							if (key == null)
+								throw new NoSuchElementException();
+							this.key = advance();
+							return new SimpleImmutableEntry<>(key, values.get(key));
+						}
+
+						private @Nullable String advance() {
+							if (!keys.hasNext())
+								return null;
+							String key = keys.next();
+							return key.startsWith(prefix) ? key : null;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					if (size < 0) {
+						int[] count = new int[1];
+						index.forEach(prefix, key -> count[0]++);
+						size = count[0];
+					}
+					return size;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,179 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An estimate of the heap retained by a configuration, split into the
+ * distinct key and value strings and the structures which index them, along
+ * with the memory held outside of the heap. The estimate assumes a 64-bit JVM
+ * with compressed references and compact strings; a string which is shared by
+ * several keys or layers is counted once.
+ *
+ * @see AbstractConfiguration#getMemoryReport()
+ */
+public final class MemoryReport {
+	private final static int HEADER = 12;
+	private final static int REFERENCE = 4;
+	private final static int ARRAY_HEADER = 16;
+	private final static int STRING = 24;
+	private final static int HASH_MAP = 48;
+	private final static int HASH_MAP_NODE = 32;
+
+	private final int keyCount;
+	private final long keyBytes;
+	private final int valueCount;
+	private final long valueBytes;
+	private final long indexBytes;
+	private final long offHeapBytes;
+
+	private MemoryReport(int keyCount, long keyBytes, int valueCount, long valueBytes, long indexBytes, long offHeapBytes) {
+		this.keyCount = keyCount;
+		this.keyBytes = keyBytes;
+		this.valueCount = valueCount;
+		this.valueBytes = valueBytes;
+		this.indexBytes = indexBytes;
+		this.offHeapBytes = offHeapBytes;
+	}
+
+	/**
+	 * Returns the number of distinct key instances.
+	 */
+	public int getKeyCount() {
+		return keyCount;
+	}
+
+	/**
+	 * Returns the bytes retained by the key strings.
+	 */
+	public long getKeyBytes() {
+		return keyBytes;
+	}
+
+	/**
+	 * Returns the number of distinct value instances.
+	 */
+	public int getValueCount() {
+		return valueCount;
+	}
+
+	/**
+	 * Returns the bytes retained by the value strings.
+	 */
+	public long getValueBytes() {
+		return valueBytes;
+	}
+
+	/**
+	 * Returns the bytes retained by the maps and indexes of the configuration
+	 * and its layers, excluding the strings they refer to.
+	 */
+	public long getIndexBytes() {
+		return indexBytes;
+	}
+
+	/**
+	 * Returns the heap bytes retained by the strings and the index structures.
+	 */
+	public long getTotalBytes() {
+		return keyBytes + valueBytes + indexBytes;
+	}
+
+	/**
+	 * Returns the bytes held outside of the heap, such as by off-heap tables.
+	 */
+	public long getOffHeapBytes() {
+		return offHeapBytes;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("keys=%d (%d bytes), values=%d (%d bytes), index=%d bytes, total=%d bytes, off-heap=%d bytes",
+				keyCount, keyBytes, valueCount, valueBytes, indexBytes, getTotalBytes(), offHeapBytes);
+	}
+
+	static final class Builder {
+		private final Set<String> keys = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final Set<String> values = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final Set<Object> offHeap = Collections.newSetFromMap(new IdentityHashMap<>());
+		private long indexBytes;
+		private long offHeapBytes;
+
+		void addIndex(long bytes) {
+			indexBytes += bytes;
+		}
+
+		/**
+		 * Adds the bytes held outside of the heap by the given owner, unless
+		 * they were already added for it.
+		 */
+		void addOffHeap(@NotNull Object owner, long bytes) {
+			if (offHeap.add(owner))
+				offHeapBytes += bytes;
+		}
+
+		void addAll(@NotNull Map<String, String> map) {
+			for (Map.Entry<String, String> entry : map.entrySet()) {
+				keys.add(entry.getKey());
+				if (entry.getValue() != null)
+					values.add(entry.getValue());
+			}
+		}
+
+		@NotNull MemoryReport build() {
+			return new MemoryReport(keys.size(), stringBytes(keys), values.size(), stringBytes(values), indexBytes, offHeapBytes);
+		}
+	}
+
+	static long objectBytes(int references, int bytes) {
+		return align(HEADER + (long) references * REFERENCE + bytes);
+	}
+
+	static long arrayBytes(int length) {
+		return align(ARRAY_HEADER + (long) length * REFERENCE);
+	}
+
+	static long hashMapBytes(int size) {
+		int capacity = Integer.highestOneBit(Math.max(1, (int) (size / 0.75f) + 1) * 2 - 1);
+		return HASH_MAP + arrayBytes(capacity) + (long) size * HASH_MAP_NODE;
+	}
+
+	static long stringBytes(@NotNull Collection<String> strings) {
+		long bytes = 0;
+		for (String string : strings)
+			bytes += STRING + align(ARRAY_HEADER + (long) string.length() * (isLatin1(string) ? 1 : 2));
+		return bytes;
+	}
+
+	private static boolean isLatin1(@NotNull String string) {
+		for (int i = 0; i < string.length(); i++)
+			if (string.charAt(i) > 0xFF)
+				return false;
+		return true;
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+}
@@ -0,0 +1,471 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.trendafilov.confucius.ConfigurationException;
+
+/**
+ * An immutable string map encoded into a single buffer, usually in direct
+ * memory. Entries are stored as UTF-8 records in the order of their keys as
+ * strings, which is the order of a heap table, and located through an
+ * open-addressing table of hashes with linear probing at a load factor of at
+ * most one half. Keys are hashed and compared in place, so that a lookup
+ * does not allocate. Each record also refers to
+ * one of a handful of origin names, so that a merged table can tell which
+ * layer supplied a value. The layout is:
+ *
+ * <pre>
+ * header  int magic, int size, int slot count, int offset of the names
+ * slots   slot count * (int hash, int record offset), offset 0 marks a free slot
+ * order   size * int record offset, in the order of the keys
+ * records byte origin, int key length, key, int value length, value
+ * names   int count, count * (int length, name)
+ * </pre>
+ */
+final class OffHeapMap extends AbstractMap<String, String> {
+	private final static int MAGIC = 0x43464731;
+	private final static int HEADER = 16;
+	private final static int SLOT = 8;
+	private final static int MAX_ORIGINS = 256;
+
+	private final @NotNull ByteBuffer buffer;
+	private final int size;
+	private final int mask;
+	private final int order;
+	private final @NotNull String[] names;
+	private @Nullable Set<Entry<String, String>> entrySet;
+
+	/**
+	 * Reads a map which was encoded into the given buffer.
+	 *
+	 * @throws ConfigurationException
+	 *             if the buffer does not hold an encoded map
+	 */
+	OffHeapMap(@NotNull ByteBuffer buffer) {
+		if (buffer.capacity() < HEADER || buffer.getInt(0) != MAGIC)
+			throw new ConfigurationException("Invalid off-heap table");
+		this.buffer = buffer;
+		this.size = buffer.getInt(4);
+		this.mask = buffer.getInt(8) - 1;
+		this.order = HEADER + buffer.getInt(8) * SLOT;
+		int position = buffer.getInt(12);
+		this.names = new String[buffer.getInt(position)];
+		position += 4;
+		for (int i = 0; i < names.length; i++) {
+			names[i] = decode(position + 4, buffer.getInt(position));
+			position += 4 + buffer.getInt(position);
+		}
+	}
+
+	/**
+	 * Encodes the given values into a buffer obtained from the allocator,
+	 * which receives the required capacity. Each key is attributed to the
+	 * origin it is mapped to, or to the default origin if it is not mapped.
+	 *
+	 * @throws ConfigurationException
+	 *             if the map does not fit into a buffer, or refers to too
+	 *             many origins
+	 */
+	static @NotNull OffHeapMap encode(@NotNull Map<String, String> values, @NotNull Map<String, String> origins, @NotNull String defaultOrigin,
+			@NotNull IntFunction<ByteBuffer> allocator) {
+		Map<String, Integer> names = new LinkedHashMap<>();
+		names.put(defaultOrigin, 0);
+		List<String> sorted = new ArrayList<>(values.keySet());
+		sorted.sort(null);
+
+		int slots = slots(sorted.size());
+		long capacity = HEADER + (long) slots * SLOT + 4L * sorted.size();
+		List<byte[]> keys = new ArrayList<>(sorted.size());
+		List<byte[]> encoded = new ArrayList<>(sorted.size());
+		byte[] origin = new byte[sorted.size()];
+		for (int i = 0; i < sorted.size(); i++) {
+			String key = sorted.get(i);
+			keys.add(key.getBytes(StandardCharsets.UTF_8));
+			encoded.add(values.get(key).getBytes(StandardCharsets.UTF_8));
+			origin[i] = (byte) index(names, origins.getOrDefault(key, defaultOrigin));
+			capacity += 9 + keys.get(i).length + encoded.get(i).length;
+		}
+
+		ByteBuffer buffer = allocator.apply(checkCapacity(capacity + capacity(names)));
+		int order = HEADER + slots * SLOT;
+		int position = order + 4 * sorted.size();
+		for (int i = 0; i < sorted.size(); i++) {
+			buffer.putInt(order + 4 * i, position);
+			buffer.put(position, origin[i]);
+			put(buffer, position + 1, keys.get(i));
+			insert(buffer, slots, position);
+			position = put(buffer, position + 5 + keys.get(i).length, encoded.get(i));
+		}
+		return finish(buffer, sorted.size(), slots, position, names);
+	}
+
+	/**
+	 * Merges the given maps, ordered from the highest to the lowest
+	 * precedence, into direct memory. Records are copied from the buffers of
+	 * the maps as they are, and keep the origins they have in their maps.
+	 *
+	 * @throws ConfigurationException
+	 *             if the merged map does not fit into a buffer, or refers to
+	 *             too many origins
+	 */
+	static @NotNull OffHeapMap merge(@NotNull List<OffHeapMap> maps) {
+		Map<String, Integer> names = new LinkedHashMap<>();
+		int[][] origins = new int[maps.size()][];
+		int total = 0;
+		for (int m = 0; m < maps.size(); m++) {
+			OffHeapMap map = maps.get(m);
+			origins[m] = new int[map.names.length];
+			for (int i = 0; i < map.names.length; i++)
+				origins[m][i] = index(names, map.names[i]);
+			total += map.size;
+		}
+
+		int[] cursors = new int[maps.size()];
+		int[] sources = new int[total];
+		int[] records = new int[total];
+		int count = 0;
+		long capacity = 0;
+		while (true) {
+			int lowest = -1;
+			for (int m = 0; m < maps.size(); m++) {
+				if (cursors[m] == maps.get(m).size)
+					continue;
+				int result = lowest < 0 ? -1 : compare(maps.get(m), maps.get(m).record(cursors[m]), maps.get(lowest), maps.get(lowest).record(cursors[lowest]));
+				if (result < 0)
+					lowest = m;
+				else if (result == 0)
+					cursors[m]++;
+			}
+			if (lowest < 0)
+				break;
+			sources[count] = lowest;
+			records[count] = maps.get(lowest).record(cursors[lowest]++);
+			capacity += maps.get(lowest).recordLength(records[count]);
+			count++;
+		}
+
+		int slots = slots(count);
+		capacity += HEADER + (long) slots * SLOT + 4L * count;
+		ByteBuffer buffer = ByteBuffer.allocateDirect(checkCapacity(capacity + capacity(names)));
+		int order = HEADER + slots * SLOT;
+		int position = order + 4 * count;
+		for (int i = 0; i < count; i++) {
+			OffHeapMap source = maps.get(sources[i]);
+			int length = source.recordLength(records[i]);
+			buffer.putInt(order + 4 * i, position);
+			buffer.put(position, source.buffer, records[i], length);
+			buffer.put(position, (byte) origins[sources[i]][source.buffer.get(records[i]) & 0xFF]);
+			insert(buffer, slots, position);
+			position += length;
+		}
+		return finish(buffer, count, slots, position, names);
+	}
+
+	/**
+	 * Encodes the given values into direct memory, attributed to a single
+	 * origin.
+	 */
+	static @NotNull OffHeapMap encode(@NotNull Map<String, String> values, @NotNull String origin) {
+		return encode(values, Map.of(), origin, ByteBuffer::allocateDirect);
+	}
+
+	@Override
+	public @Nullable String get(Object key) {
+		int record = find(key);
+		return record == 0 ? null : decodeValue(record);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return find(key) != 0;
+	}
+
+	@Nullable String getOrigin(@NotNull String key) {
+		int record = find(key);
+		return record == 0 ? null : names[buffer.get(record) & 0xFF];
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the bytes occupied by the encoded map.
+	 */
+	int getCapacity() {
+		return buffer.capacity();
+	}
+
+	@NotNull ByteBuffer getBuffer() {
+		return buffer.duplicate();
+	}
+
+	/**
+	 * Passes the keys which start with the given prefix and their values to
+	 * the action, in the order of the keys.
+	 */
+	void forEach(@NotNull String prefix, @NotNull BiConsumer<? super String, ? super String> action) {
+		byte[] encoded = prefix.getBytes(StandardCharsets.UTF_8);
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (compare(record(middle), encoded) < 0)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		for (int i = low; i < size && startsWith(record(i), encoded); i++)
+			action.accept(decodeKey(record(i)), decodeValue(record(i)));
+	}
+
+	@Override
+	public @NotNull Set<Entry<String, String>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<>() {
+				@Override
+				public @NotNull Iterator<Entry<String, String>> iterator() {
+					return new Iterator<>() {
+						private int i;
+
+						public boolean hasNext() {
+							return i < size;
+						}
+
+						public @NotNull Entry<String, String> next() {
+							if (!hasNext())
+								throw new NoSuchElementException();
+							int record = record(i++);
+							return new SimpleImmutableEntry<>(decodeKey(record), decodeValue(record));
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		return entrySet;
+	}
+
+	/**
+	 * Returns the offset of the record of the given key, or 0 if it is missing.
+	 * The key is encoded as it is hashed and compared, rather than into an
+	 * array.
+	 */
+	private int find(@Nullable Object key) {
+		if (!(key instanceof String) || size == 0)
+			return 0;
+		String string = (String) key;
+		int hash = 0x811C9DC5;
+		int length = 0;
+		for (int i = 0; i < string.length(); ) {
+			int character = string.codePointAt(i);
+			i += Character.charCount(character);
+			for (int b = 0, bytes = encodedLength(character); b < bytes; b++, length++)
+				hash = (hash ^ encodedByte(character, bytes, b)) * 0x01000193;
+		}
+		hash ^= hash >>> 16;
+		for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+			int record = buffer.getInt(HEADER + slot * SLOT + 4);
+			if (record == 0)
+				return 0;
+			if (buffer.getInt(HEADER + slot * SLOT) == hash && buffer.getInt(record + 1) == length && matches(record, string))
+				return record;
+		}
+	}
+
+	/**
+	 * Tells whether the key of a record is the given key, whose encoded length
+	 * is known to match.
+	 */
+	private boolean matches(int record, @NotNull String key) {
+		int position = record + 5;
+		for (int i = 0; i < key.length(); ) {
+			int character = key.codePointAt(i);
+			i += Character.charCount(character);
+			for (int b = 0, bytes = encodedLength(character); b < bytes; b++)
+				if ((buffer.get(position++) & 0xFF) != encodedByte(character, bytes, b))
+					return false;
+		}
+		return true;
+	}
+
+	private int record(int index) {
+		return buffer.getInt(order + 4 * index);
+	}
+
+	private int recordLength(int record) {
+		int value = record + 5 + buffer.getInt(record + 1);
+		return value + 4 + buffer.getInt(value) - record;
+	}
+
+	private int compare(int record, byte @NotNull [] key) {
+		return compare(buffer, record + 5, buffer.getInt(record + 1), ByteBuffer.wrap(key), 0, key.length);
+	}
+
+	private static int compare(@NotNull OffHeapMap map, int record, @NotNull OffHeapMap other, int otherRecord) {
+		return compare(map.buffer, record + 5, map.buffer.getInt(record + 1), other.buffer, otherRecord + 5, other.buffer.getInt(otherRecord + 1));
+	}
+
+	/**
+	 * Compares two encoded keys in the order of the strings they encode. Where
+	 * the keys first differ, both bytes start a character, or both continue
+	 * one of the same length, so only the lead bytes of supplementary
+	 * characters need to be weighed, as strings order their surrogate pairs
+	 * before the characters from U+E000.
+	 */
+	private static int compare(@NotNull ByteBuffer buffer, int position, int length, @NotNull ByteBuffer other, int otherPosition, int otherLength) {
+		for (int i = 0; i < Math.min(length, otherLength); i++) {
+			int b = buffer.get(position + i) & 0xFF;
+			int o = other.get(otherPosition + i) & 0xFF;
+			if (b != o)
+				return Integer.compare(weigh(b), weigh(o));
+		}
+		return Integer.compare(length, otherLength);
+	}
+
+	private static int weigh(int b) {
+		return b >= 0xF0 ? b - 0x02 : b >= 0xEE ? b + 0x05 : b;
+	}
+
+	private boolean startsWith(int record, byte @NotNull [] prefix) {
+		if (buffer.getInt(record + 1) < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++)
+			if (buffer.get(record + 5 + i) != prefix[i])
+				return false;
+		return true;
+	}
+
+	private @NotNull String decodeKey(int record) {
+		return decode(record + 5, buffer.getInt(record + 1));
+	}
+
+	private @NotNull String decodeValue(int record) {
+		int value = record + 5 + buffer.getInt(record + 1);
+		return decode(value + 4, buffer.getInt(value));
+	}
+
+	private @NotNull String decode(int position, int length) {
+		byte[] bytes = new byte[length];
+		buffer.get(position, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static int put(@NotNull ByteBuffer buffer, int position, byte @NotNull [] bytes) {
+		buffer.putInt(position, bytes.length);
+		buffer.put(position + 4, bytes);
+		return position + 4 + bytes.length;
+	}
+
+	private static int slots(int size) {
+		return Integer.highestOneBit(Math.max(1, size) * 4 - 1);
+	}
+
+	private static int index(@NotNull Map<String, Integer> names, @NotNull String name) {
+		Integer index = names.get(name);
+		if (index == null) {
+			if (names.size() == MAX_ORIGINS)
+				throw new ConfigurationException("Too many property sources for an off-heap table");
+			names.put(name, index = names.size());
+		}
+		return index;
+	}
+
+	private static long capacity(@NotNull Map<String, Integer> names) {
+		long capacity = 4;
+		for (String name : names.keySet())
+			capacity += 4 + name.getBytes(StandardCharsets.UTF_8).length;
+		return capacity;
+	}
+
+	private static int checkCapacity(long capacity) {
+		if (capacity > Integer.MAX_VALUE)
+			throw new ConfigurationException("Configuration is too large for an off-heap table");
+		return (int) capacity;
+	}
+
+	/**
+	 * Adds the record at the given position, whose key is already written, to
+	 * the table of hashes.
+	 */
+	private static void insert(@NotNull ByteBuffer buffer, int slots, int record) {
+		int hash = 0x811C9DC5;
+		for (int i = 0, length = buffer.getInt(record + 1); i < length; i++)
+			hash = (hash ^ (buffer.get(record + 5 + i) & 0xFF)) * 0x01000193;
+		hash ^= hash >>> 16;
+		int slot = hash & (slots - 1);
+		while (buffer.getInt(HEADER + slot * SLOT + 4) != 0)
+			slot = (slot + 1) & (slots - 1);
+		buffer.putInt(HEADER + slot * SLOT, hash);
+		buffer.putInt(HEADER + slot * SLOT + 4, record);
+	}
+
+	/**
+	 * Writes the header and the origin names after the records which end at
+	 * the given position.
+	 */
+	private static @NotNull OffHeapMap finish(@NotNull ByteBuffer buffer, int size, int slots, int position, @NotNull Map<String, Integer> names) {
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, size);
+		buffer.putInt(8, slots);
+		buffer.putInt(12, position);
+		buffer.putInt(position, names.size());
+		position += 4;
+		for (String name : names.keySet())
+			position = put(buffer, position, name.getBytes(StandardCharsets.UTF_8));
+		return new OffHeapMap(buffer);
+	}
+
+	/**
+	 * Returns the number of bytes of a character in UTF-8, where a lone
+	 * surrogate is replaced with a question mark, as by
+	 * {@link String#getBytes(java.nio.charset.Charset)}.
+	 */
+	private static int encodedLength(int character) {
+		if (character < 0x80 || character >= Character.MIN_SURROGATE && character <= Character.MAX_SURROGATE)
+			return 1;
+		return character < 0x800 ? 2 : character < 0x10000 ? 3 : 4;
+	}
+
+	private static int encodedByte(int character, int length, int index) {
+		if (length == 1)
+			return character < 0x80 ? character : '?';
+		if (index == 0)
+			return (0xFF00 >> length) & 0xFF | character >> 6 * (length - 1);
+		return 0x80 | (character >> 6 * (length - 1 - index)) & 0x3F;
+	}
+}
@@ -0,0 +1,66 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.trendafilov.confucius.core.source.PropertySource;
+
+/**
+ * A layer whose properties are encoded into an {@link OffHeapMap}. The
+ * original map may be discarded once the layer is created.
+ */
+final class OffHeapPropertySource implements PropertySource {
+	private final @NotNull String name;
+	private final @NotNull OffHeapMap properties;
+
+	OffHeapPropertySource(@NotNull String name, @NotNull Map<String, String> properties) {
+		this(name, OffHeapMap.encode(properties, name));
+	}
+
+	OffHeapPropertySource(@NotNull String name, @NotNull OffHeapMap properties) {
+		this.name = name;
+		this.properties = properties;
+	}
+
+	public @NotNull String getName() {
+		return name;
+	}
+
+	public @Nullable String getProperty(@NotNull String key) {
+		return properties.get(key);
+	}
+
+	public @NotNull Map<String, String> getProperties() {
+		return properties;
+	}
+
+	@NotNull OffHeapMap getMap() {
+		return properties;
+	}
+
+	void estimate(@NotNull MemoryReport.Builder report) {
+		report.addOffHeap(properties, properties.getCapacity());
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,214 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.trendafilov.confucius.core.source.PropertySource;
+
+/**
+ * A table whose merged properties are encoded off-heap, with an overlay of
+ * persistent maps on the heap for the changes made since, where a
+ * {@code null} value marks a key removed from the encoded base.
+ */
+final class OffHeapTable implements Table {
+	private final @NotNull OffHeapMap base;
+	private final @NotNull PersistentMap<String, String> values;
+	private final @NotNull PersistentMap<String, String> origins;
+	private @Nullable Map<String, String> view;
+
+	OffHeapTable(@NotNull OffHeapMap base) {
+		this(base, PersistentMap.empty(), PersistentMap.empty());
+	}
+
+	private OffHeapTable(@NotNull OffHeapMap base, @NotNull PersistentMap<String, String> values, @NotNull PersistentMap<String, String> origins) {
+		this.base = base;
+		this.values = values;
+		this.origins = origins;
+	}
+
+	/**
+	 * Merges the given layers, ordered from the highest to the lowest
+	 * precedence. A single off-heap layer is used as the base as it is, and
+	 * the records of off-heap layers are merged without being decoded.
+	 */
+	static @NotNull OffHeapTable of(@NotNull List<PropertySource> sources) {
+		if (sources.size() == 1 && sources.get(0) instanceof OffHeapPropertySource)
+			return new OffHeapTable(((OffHeapPropertySource) sources.get(0)).getMap());
+		if (sources.size() == 1)
+			return new OffHeapTable(OffHeapMap.encode(sources.get(0).getProperties(), Map.of(), sources.get(0).getName(), ByteBuffer::allocateDirect));
+		List<OffHeapMap> maps = new ArrayList<>(sources.size());
+		for (PropertySource source : sources)
+			maps.add(source instanceof OffHeapPropertySource ? ((OffHeapPropertySource) source).getMap()
+					: OffHeapMap.encode(source.getProperties(), Map.of(), source.getName(), ByteBuffer::allocate));
+		return new OffHeapTable(OffHeapMap.merge(maps));
+	}
+
+	/**
+	 * Returns a table with the same entries and no overlay, whose base is
+	 * encoded anew if there are changes to merge into it.
+	 */
+	@NotNull OffHeapTable flatten() {
+		if (values.isEmpty())
+			return this;
+		Map<String, String> origins = new HashMap<>();
+		for (String key : asMap().keySet())
+			origins.put(key, getOrigin(key));
+		return new OffHeapTable(OffHeapMap.encode(asMap(), origins, "", ByteBuffer::allocateDirect));
+	}
+
+	public @Nullable String get(@NotNull String key) {
+		if (!values.isEmpty() && values.containsKey(key))
+			return values.get(key);
+		return base.get(key);
+	}
+
+	public @Nullable String getOrigin(@NotNull String key) {
+		if (!values.isEmpty() && values.containsKey(key))
+			return origins.get(key);
+		return base.getOrigin(key);
+	}
+
+	public @NotNull Map<String, String> asMap() {
+		if (view == null)
+			view = new View();
+		return view;
+	}
+
+	public @NotNull Map<String, String> subset(@NotNull String prefix) {
+		Map<String, String> subset = new TreeMap<>();
+		base.forEach(prefix, subset::put);
+		for (Map.Entry<String, String> entry : values.entrySet())
+			if (entry.getKey().startsWith(prefix)) {
+				if (entry.getValue() == null)
+					subset.remove(entry.getKey());
+				else
+					subset.put(entry.getKey(), entry.getValue());
+			}
+		return Collections.unmodifiableMap(subset);
+	}
+
+	public void forEach(@NotNull String prefix, @NotNull BiConsumer<? super String, ? super String> action) {
+		if (values.isEmpty())
+			base.forEach(prefix, action);
+		else
+			subset(prefix).forEach(action);
+	}
+
+	public @NotNull OffHeapTable with(@NotNull String key, @NotNull String value, @NotNull String origin) {
+		return new OffHeapTable(base, values.with(key, value), origins.with(key, origin));
+	}
+
+	public @NotNull OffHeapTable without(@NotNull String key) {
+		if (base.containsKey(key))
+			return new OffHeapTable(base, values.with(key, null), origins.without(key));
+		return new OffHeapTable(base, values.without(key), origins.without(key));
+	}
+
+	public void estimate(@NotNull MemoryReport.Builder report) {
+		report.addOffHeap(base, base.getCapacity());
+		report.addIndex(values.estimateBytes() + origins.estimateBytes());
+		report.addAll(values);
+	}
+
+	private final class View extends AbstractMap<String, String> {
+		private int size = -1;
+
+		@Override
+		public @Nullable String get(Object key) {
+			return key instanceof String ? OffHeapTable.this.get((String) key) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return get(key) != null;
+		}
+
+		@Override
+		public int size() {
+			if (size < 0) {
+				int size = base.size();
+				for (Map.Entry<String, String> entry : values.entrySet())
+					if (base.containsKey(entry.getKey()))
+						size -= entry.getValue() == null ? 1 : 0;
+					else
+						size += entry.getValue() == null ? 0 : 1;
+				this.size = size;
+			}
+			return size;
+		}
+
+		@Override
+		public @NotNull Set<Entry<String, String>> entrySet() {
+			return new AbstractSet<>() {
+				@Override
+				public @NotNull Iterator<Entry<String, String>> iterator() {
+					return new Iterator<>() {
+						private final Iterator<Entry<String, String>> bases = base.entrySet().iterator();
+						private final Iterator<Entry<String, String>> overlay = values.entrySet().iterator();
+						private @Nullable Entry<String, String> next = advance();
+
+						public boolean hasNext() {
+							return next != null;
+						}
+
+						public @NotNull Entry<String, String> next() {
+							Entry<String, String> entry = next;
+							if (entry == null)
+								throw new NoSuchElementException();
+							next = advance();
+							return entry;
+						}
+
+						private @Nullable Entry<String, String> advance() {
+							while (bases.hasNext()) {
+								Entry<String, String> entry = bases.next();
+								if (!values.containsKey(entry.getKey()))
+									return entry;
+							}
+							while (overlay.hasNext()) {
+								Entry<String, String> entry = overlay.next();
+								if (entry.getValue() != null)
+									return entry;
+							}
+							return null;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return View.this.size();
+				}
+			};
+		}
+	}
+}
@@ -17,34 +17,33 @@
 package org.trendafilov.confucius.core;
 
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.Map.Entry;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.trendafilov.confucius.ConfigurationException;
 import org.trendafilov.confucius.core.provider.ConfigurationDataProvider;
+import org.trendafilov.confucius.core.provider.Fragment;
+import org.trendafilov.confucius.core.provider.FragmentCache;
 
 class Parser {
-	private final static String DEFAULT_CONTEXT = "Default";
-	private final static String COMMENT = "#";
-	private final static String IDENTITY = "=";
-	private final static String LEFT_CONTEXT = "[";
-	private final static String RIGHT_CONTEXT = "]";
+	final static String DEFAULT_CONTEXT = "Default";
 	private final static String LEFT_SUBSTITUTION = "${";
 	private final static String RIGHT_SUBSTITUTION = "}";
 
 	private final Map<String, String> configuration = new HashMap<>();
+	private final Map<String, String> pool = new HashMap<>();
+	private final Deque<Path> includes = new ArrayDeque<>();
 
 	public Parser(@NotNull ConfigurationDataProvider configurationDataProvider, @Nullable String context) {
 		try {
-			Collection<String> lines = configurationDataProvider.getAllLines();
-			if (!lines.isEmpty() && isStandardProps(lines)) {
-				loadStandardProps(configurationDataProvider);
-			} else {
-				parseContext(lines, DEFAULT_CONTEXT);
-				parseContext(lines, context);
-			}
+			List<Fragment> fragments = configurationDataProvider.getFragments();
+			for (Fragment fragment : fragments)
+				parseFragment(fragment, getDirectory(fragment.getLocation()), DEFAULT_CONTEXT, true);
+			for (Fragment fragment : fragments)
+				parseFragment(fragment, getDirectory(fragment.getLocation()), context, false);
 			parseVariables();
 		} catch (IOException e) {
 			throw new ConfigurationException("Unable to read configuration", e);
@@ -55,47 +54,64 @@ class Parser {
 		return configuration;
 	}
 
-	private @NotNull Map<String, String> parseLine(@NotNull String line) {
-		Map<String, String> pair = new HashMap<>();
-		String newLine = line.trim();
-		if (line.contains(COMMENT))
-			newLine = newLine.substring(0, line.indexOf(COMMENT)).trim();
-		if (newLine.isEmpty())
-			return pair;
-		if (newLine.contains(IDENTITY)) {
-			String key = newLine.substring(0, newLine.indexOf(IDENTITY)).trim();
-			String value = newLine.substring(newLine.indexOf(IDENTITY) + 1).trim();
-			pair.put(key, value);
-			return pair;
-		} else {
-			throw new ConfigurationException(String.format("Unparsable line: [%s]", line));
+	/**
+	 * Reads the sections of a fragment which are named after the context.
+	 * Included fragments are read in place, where the key-value pairs of an
+	 * included standard Properties document belong to the enclosing section,
+	 * and includes before the first section are read with the default context.
+	 * Includes within sections which are not named after the context are not
+	 * followed.
+	 */
+	private void parseFragment(@NotNull Fragment fragment, @Nullable Path directory, @Nullable String context, boolean enclosing) throws IOException {
+		if (enclosing)
+			for (Entry<String, String> entry : fragment.getProperties().entrySet())
+				put(entry.getKey(), entry.getValue());
+		for (Fragment.Section section : fragment.getSections()) {
+			boolean named = section.getName() == null ? enclosing : section.isNamed(context);
+			for (Fragment.Entry entry : section.getEntries()) {
+				if (entry.isInclude()) {
+					if (named || section.getName() == null)
+						parseInclude(resolve(directory, entry.getValue()), context, named);
+				} else if (!named)
+					continue;
+				else if (!entry.isParsable())
+					throw new ConfigurationException(String.format("Unparsable line: [%s]", entry.getValue()));
+				else
+					put(entry.getKey(), entry.getValue());
+			}
 		}
 	}
 
-	private boolean isStandardProps(@NotNull Collection<String> lines) {
-		for (String line : lines)
-			if (isContext(line))
-				return false;
-		return true;
+	/**
+	 * Stores a key-value pair, where equal keys and values share one instance
+	 * for the duration of the load. Large generated configurations repeat the
+	 * same values many times over, which are then only retained once.
+	 */
+	private void put(@NotNull String key, @NotNull String value) {
+		configuration.put(pooled(key), pooled(value));
 	}
 
-	private void loadStandardProps(@NotNull ConfigurationDataProvider provider) throws IOException {
-		Properties props = new Properties();
-		InputStream stream = provider.getInputStream();
-		if (stream != null) props.load(stream);
-		configuration.putAll(Utils.propertiesToMap(props));
+	private @NotNull String pooled(@NotNull String item) {
+		String pooled = pool.putIfAbsent(item, item);
+		return pooled == null ? item : pooled;
 	}
 
-	private void parseContext(@NotNull Collection<String> lines, @Nullable String context) {
-		boolean insideContext = false;
-		for (String line : lines) {
-			if (isNamedContext(line, context))
-				insideContext = true;
-			else if (insideContext && isContext(line))
-				insideContext = false;
-			else if (insideContext)
-				configuration.putAll(parseLine(line));
-		}
+	private void parseInclude(@NotNull Path path, @Nullable String context, boolean enclosing) throws IOException {
+		if (includes.contains(path))
+			throw new ConfigurationException(String.format("Circular include: [%s]", path));
+		includes.push(path);
+		parseFragment(FragmentCache.getShared().get(path), path.getParent(), context, enclosing);
+		includes.pop();
+	}
+
+	private @NotNull Path resolve(@Nullable Path directory, @NotNull String include) {
+		return (directory == null ? Paths.get(include) : directory.resolve(include)).normalize();
+	}
+
+	private @Nullable Path getDirectory(@Nullable Path location) {
+		if (location == null)
+			return null;
+		return location.toAbsolutePath().getParent();
 	}
 
 	private void parseVariables() {
@@ -117,15 +133,6 @@ class Parser {
 		}
 	}
 
-	private boolean isContext(@NotNull String line) {
-		line = line.trim();
-		return line.startsWith(LEFT_CONTEXT) && line.endsWith(RIGHT_CONTEXT);
-	}
-
-	private boolean isNamedContext(@NotNull String line, @Nullable String context) {
-		return context != null && line.trim().equalsIgnoreCase(LEFT_CONTEXT + context + RIGHT_CONTEXT);
-	}
-
 	private boolean isSubstitution(@NotNull String value) {
 		return value.startsWith(LEFT_SUBSTITUTION) && value.endsWith(RIGHT_SUBSTITUTION);
 	}
@@ -0,0 +1,432 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An immutable hash array mapped trie. Deriving a map with one key added or
+ * removed copies only the path from the root to that key, at most seven nodes
+ * of up to 32 entries, and shares the rest with the original, which remains
+ * valid. Keys must not be {@code null}, values may.
+ * <p/>
+ * <p>
+ * A {@link Builder} edits nodes it created in place, which makes bulk loading
+ * about as cheap as filling a <code>HashMap</code>.
+ * </p>
+ */
+final class PersistentMap<K, V> extends AbstractMap<K, V> {
+	private final static int BITS = 5;
+	private final static int MASK = (1 << BITS) - 1;
+	private final static Object NOT_FOUND = new Object();
+	private final static PersistentMap<?, ?> EMPTY = new PersistentMap<>(null, 0);
+
+	private final @Nullable Node root;
+	private final int size;
+	private @Nullable Set<Entry<K, V>> entrySet;
+
+	private PersistentMap(@Nullable Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K, V> @NotNull PersistentMap<K, V> empty() {
+		return (PersistentMap<K, V>) EMPTY;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K, V> @NotNull PersistentMap<K, V> copyOf(@NotNull Map<? extends K, ? extends V> map) {
+		if (map instanceof PersistentMap)
+			return (PersistentMap<K, V>) map;
+		Builder<K, V> builder = new Builder<>(empty());
+		for (Entry<? extends K, ? extends V> entry : map.entrySet())
+			builder.put(entry.getKey(), entry.getValue());
+		return builder.build();
+	}
+
+	@NotNull Builder<K, V> toBuilder() {
+		return new Builder<>(this);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public @Nullable V get(Object key) {
+		Object value = find(key);
+		return value == NOT_FOUND ? null : (V) value;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return find(key) != NOT_FOUND;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@NotNull PersistentMap<K, V> with(@NotNull K key, @Nullable V value) {
+		boolean[] added = new boolean[1];
+		Node root = (this.root == null ? BitmapNode.EMPTY : this.root).put(null, 0, hash(key), key, value, added);
+		return root == this.root ? this : new PersistentMap<>(root, added[0] ? size + 1 : size);
+	}
+
+	@NotNull PersistentMap<K, V> without(@NotNull K key) {
+		if (root == null)
+			return this;
+		Node root = this.root.remove(null, 0, hash(key), key, new boolean[1]);
+		return root == this.root ? this : root == null ? empty() : new PersistentMap<>(root, size - 1);
+	}
+
+	@Override
+	public @NotNull Set<Entry<K, V>> entrySet() {
+		if (entrySet == null)
+			entrySet = new AbstractSet<>() {
+				@Override
+				public @NotNull Iterator<Entry<K, V>> iterator() {
+					return new EntryIterator<>(root);
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		return entrySet;
+	}
+
+	/**
+	 * Returns an estimate of the bytes retained by the trie itself, excluding
+	 * its keys and values.
+	 */
+	long estimateBytes() {
+		return MemoryReport.objectBytes(3, 4) + (root == null ? 0 : estimateBytes(root));
+	}
+
+	private static long estimateBytes(@NotNull Node node) {
+		Object[] array = node.getArray();
+		long bytes = MemoryReport.objectBytes(2, 4) + MemoryReport.arrayBytes(array.length);
+		for (int i = 0; i < array.length; i += 2)
+			if (array[i] == null)
+				bytes += estimateBytes((Node) array[i + 1]);
+		return bytes;
+	}
+
+	private @Nullable Object find(@Nullable Object key) {
+		return root == null || key == null ? NOT_FOUND : root.find(0, hash(key), key);
+	}
+
+	private static int hash(@NotNull Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static int bit(int hash, int shift) {
+		return 1 << ((hash >>> shift) & MASK);
+	}
+
+	private static @NotNull Node split(@Nullable Object edit, int shift, @NotNull Object key1, @Nullable Object value1,
+			int hash2, @NotNull Object key2, @Nullable Object value2) {
+		int hash1 = hash(key1);
+		if (hash1 == hash2)
+			return new CollisionNode(edit, hash1, new Object[] { key1, value1, key2, value2 });
+		boolean[] added = new boolean[1];
+		return BitmapNode.EMPTY
+				.put(edit, shift, hash1, key1, value1, added)
+				.put(edit, shift, hash2, key2, value2, added);
+	}
+
+	/**
+	 * Accumulates changes to a map without copying the nodes it created itself.
+	 * The built map is never changed by the builder afterwards.
+	 */
+	static final class Builder<K, V> {
+		private @NotNull Object edit = new Object();
+		private @Nullable Node root;
+		private int size;
+
+		private Builder(@NotNull PersistentMap<K, V> map) {
+			this.root = map.root;
+			this.size = map.size;
+		}
+
+		@NotNull Builder<K, V> put(@NotNull K key, @Nullable V value) {
+			boolean[] added = new boolean[1];
+			root = (root == null ? BitmapNode.EMPTY : root).put(edit, 0, hash(key), key, value, added);
+			if (added[0])
+				size++;
+			return this;
+		}
+
+		@NotNull Builder<K, V> remove(@NotNull K key) {
+			if (root != null) {
+				boolean[] removed = new boolean[1];
+				root = root.remove(edit, 0, hash(key), key, removed);
+				if (removed[0])
+					size--;
+			}
+			return this;
+		}
+
+		@NotNull PersistentMap<K, V> build() {
+			edit = new Object();
+			return root == null ? empty() : new PersistentMap<>(root, size);
+		}
+	}
+
+	private interface Node {
+		@Nullable Object find(int shift, int hash, @NotNull Object key);
+
+		@NotNull Node put(@Nullable Object edit, int shift, int hash, @NotNull Object key, @Nullable Object value, boolean @NotNull [] added);
+
+		@Nullable Node remove(@Nullable Object edit, int shift, int hash, @NotNull Object key, boolean @NotNull [] removed);
+
+		/**
+		 * Returns the entries as alternating keys and values, where a
+		 * {@code null} key denotes a child node in place of the value.
+		 */
+		@Nullable Object @NotNull [] getArray();
+	}
+
+	private final static class BitmapNode implements Node {
+		private final static BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+		private final @Nullable Object edit;
+		private int bitmap;
+		private @Nullable Object @NotNull [] array;
+
+		private BitmapNode(@Nullable Object edit, int bitmap, @Nullable Object @NotNull [] array) {
+			this.edit = edit;
+			this.bitmap = bitmap;
+			this.array = array;
+		}
+
+		public @Nullable Object find(int shift, int hash, @NotNull Object key) {
+			int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0)
+				return NOT_FOUND;
+			int index = index(bit);
+			Object k = array[index];
+			Object v = array[index + 1];
+			if (k == null)
+				return ((Node) v).find(shift + BITS, hash, key);
+			return key.equals(k) ? v : NOT_FOUND;
+		}
+
+		public @NotNull Node put(@Nullable Object edit, int shift, int hash, @NotNull Object key, @Nullable Object value, boolean @NotNull [] added) {
+			int bit = bit(hash, shift);
+			int index = index(bit);
+			if ((bitmap & bit) != 0) {
+				Object k = array[index];
+				Object v = array[index + 1];
+				if (k == null) {
+					Node child = ((Node) v).put(edit, shift + BITS, hash, key, value, added);
+					return child == v ? this : set(edit, index + 1, child);
+				}
+				if (key.equals(k))
+					return v == value ? this : set(edit, index + 1, value);
+				added[0] = true;
+				BitmapNode node = set(edit, index + 1, split(edit, shift + BITS, k, v, hash, key, value));
+				node.array[index] = null;
+				return node;
+			}
+			added[0] = true;
+			Object[] array = new Object[this.array.length + 2];
+			System.arraycopy(this.array, 0, array, 0, index);
+			array[index] = key;
+			array[index + 1] = value;
+			System.arraycopy(this.array, index, array, index + 2, this.array.length - index);
+			if (edit != null && edit == this.edit) {
+				this.bitmap |= bit;
+				this.array = array;
+				return this;
+			}
+			return new BitmapNode(edit, bitmap | bit, array);
+		}
+
+		public @Nullable Node remove(@Nullable Object edit, int shift, int hash, @NotNull Object key, boolean @NotNull [] removed) {
+			int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0)
+				return this;
+			int index = index(bit);
+			Object k = array[index];
+			Object v = array[index + 1];
+			if (k == null) {
+				Node child = ((Node) v).remove(edit, shift + BITS, hash, key, removed);
+				if (child == v)
+					return this;
+				if (child != null)
+					return set(edit, index + 1, child);
+			} else if (!key.equals(k))
+				return this;
+			removed[0] = true;
+			if (bitmap == bit)
+				return null;
+			Object[] array = new Object[this.array.length - 2];
+			System.arraycopy(this.array, 0, array, 0, index);
+			System.arraycopy(this.array, index + 2, array, index, array.length - index);
+			if (edit != null && edit == this.edit) {
+				this.bitmap ^= bit;
+				this.array = array;
+				return this;
+			}
+			return new BitmapNode(edit, bitmap ^ bit, array);
+		}
+
+		public @Nullable Object @NotNull [] getArray() {
+			return array;
+		}
+
+		private int index(int bit) {
+			return 2 * Integer.bitCount(bitmap & (bit - 1));
+		}
+
+		private @NotNull BitmapNode set(@Nullable Object edit, int index, @Nullable Object value) {
+			BitmapNode node = edit != null && edit == this.edit ? this : new BitmapNode(edit, bitmap, array.clone());
+			node.array[index] = value;
+			return node;
+		}
+	}
+
+	private final static class CollisionNode implements Node {
+		private final @Nullable Object edit;
+		private final int hash;
+		private @Nullable Object @NotNull [] array;
+
+		private CollisionNode(@Nullable Object edit, int hash, @Nullable Object @NotNull [] array) {
+			this.edit = edit;
+			this.hash = hash;
+			this.array = array;
+		}
+
+		public @Nullable Object find(int shift, int hash, @NotNull Object key) {
+			int index = indexOf(key);
+			return index < 0 ? NOT_FOUND : array[index + 1];
+		}
+
+		public @NotNull Node put(@Nullable Object edit, int shift, int hash, @NotNull Object key, @Nullable Object value, boolean @NotNull [] added) {
+			if (hash != this.hash)
+				return new BitmapNode(edit, bit(this.hash, shift), new Object[] { null, this }).put(edit, shift, hash, key, value, added);
+			int index = indexOf(key);
+			if (index >= 0) {
+				if (array[index + 1] == value)
+					return this;
+				CollisionNode node = editable(edit, array.clone());
+				node.array[index + 1] = value;
+				return node;
+			}
+			added[0] = true;
+			Object[] array = new Object[this.array.length + 2];
+			System.arraycopy(this.array, 0, array, 0, this.array.length);
+			array[this.array.length] = key;
+			array[this.array.length + 1] = value;
+			return editable(edit, array);
+		}
+
+		public @Nullable Node remove(@Nullable Object edit, int shift, int hash, @NotNull Object key, boolean @NotNull [] removed) {
+			int index = indexOf(key);
+			if (index < 0)
+				return this;
+			removed[0] = true;
+			if (array.length == 2)
+				return null;
+			Object[] array = new Object[this.array.length - 2];
+			System.arraycopy(this.array, 0, array, 0, index);
+			System.arraycopy(this.array, index + 2, array, index, array.length - index);
+			return editable(edit, array);
+		}
+
+		public @Nullable Object @NotNull [] getArray() {
+			return array;
+		}
+
+		private int indexOf(@NotNull Object key) {
+			for (int i = 0; i < array.length; i += 2)
+				if (key.equals(array[i]))
+					return i;
+			return -1;
+		}
+
+		private @NotNull CollisionNode editable(@Nullable Object edit, @Nullable Object @NotNull [] array) {
+			if (edit != null && edit == this.edit) {
+				this.array = array;
+				return this;
+			}
+			return new CollisionNode(edit, hash, array);
+		}
+	}
+
+	private final static class EntryIterator<K, V> implements Iterator<Entry<K, V>> {
+		private final Object[][] arrays = new Object[8][];
+		private final int[] positions = new int[8];
+		private int depth = -1;
+		private @Nullable Entry<K, V> next;
+
+		private EntryIterator(@Nullable Node root) {
+			if (root != null)
+				push(root);
+			advance();
+		}
+
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		public @NotNull Entry<K, V> next() {
+			Entry<K, V> entry = next;
+			if (entry == null)
+				throw new NoSuchElementException();
+			advance();
+			return entry;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			next = null;
+			while (depth >= 0) {
+				Object[] array = arrays[depth];
+				int position = positions[depth];
+				if (position == array.length) {
+					arrays[depth--] = null;
+					continue;
+				}
+				positions[depth] = position + 2;
+				Object key = array[position];
+				if (key == null) {
+					push((Node) array[position + 1]);
+					continue;
+				}
+				next = new SimpleImmutableEntry<>((K) key, (V) array[position + 1]);
+				return;
+			}
+		}
+
+		private void push(@NotNull Node node) {
+			arrays[++depth] = node.getArray();
+			positions[depth] = 0;
+		}
+	}
+}
@@ -0,0 +1,255 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.BiConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.trendafilov.confucius.ConfigurationException;
+import org.trendafilov.confucius.core.source.PropertySource;
+import org.trendafilov.confucius.core.source.RelaxedPropertySource;
+
+/**
+ * An immutable, ordered stack of {@link PropertySource} layers, topped by a
+ * layer of runtime overrides. The merged view of all layers is precomputed
+ * into a {@link Table} whenever a changed stack is derived, so that a lookup
+ * is a single table access regardless of the number of layers. As instances
+ * are immutable, any previous stack remains a consistent picture of the
+ * configuration and may be restored by reference. Keys which the merged view
+ * does not hold are resolved through the {@link RelaxedPropertySource} layers,
+ * if any, so that their aliases do not inflate the merged view.
+ */
+final class PropertySources {
+	private final @NotNull String overridesName;
+	private final @NotNull Storage storage;
+	private final @NotNull List<PropertySource> sources;
+	private final @NotNull List<RelaxedPropertySource> relaxed;
+	private final @NotNull PersistentMap<String, String> overrides;
+	private final @NotNull Table table;
+
+	PropertySources(@NotNull String overridesName) {
+		this(overridesName, Storage.HEAP);
+	}
+
+	PropertySources(@NotNull String overridesName, @NotNull Storage storage) {
+		this(overridesName, storage, Collections.emptyList(), Collections.emptyList(), PersistentMap.empty(), HeapTable.empty());
+	}
+
+	private PropertySources(@NotNull String overridesName, @NotNull Storage storage, @NotNull List<PropertySource> sources,
+			@NotNull List<RelaxedPropertySource> relaxed, @NotNull PersistentMap<String, String> overrides, @NotNull Table table) {
+		this.overridesName = overridesName;
+		this.storage = storage;
+		this.sources = sources;
+		this.relaxed = relaxed;
+		this.overrides = overrides;
+		this.table = table;
+	}
+
+	@NotNull Map<String, String> getValues() {
+		return table.asMap();
+	}
+
+	/**
+	 * Returns whether both stacks share their merged view, in which case they
+	 * hold the same values.
+	 */
+	boolean hasSameValues(@NotNull PropertySources other) {
+		return table == other.table;
+	}
+
+	@Nullable String get(@NotNull String key) {
+		String value = table.get(key);
+		if (value != null || relaxed.isEmpty())
+			return value;
+		String canonical = getCanonicalKey(key);
+		return canonical == null ? null : table.get(canonical);
+	}
+
+	@Nullable String getOrigin(@NotNull String key) {
+		String origin = table.getOrigin(key);
+		if (origin != null || relaxed.isEmpty())
+			return origin;
+		String canonical = getCanonicalKey(key);
+		return canonical == null ? null : table.getOrigin(canonical);
+	}
+
+	/**
+	 * Returns whether the current value of the key comes from a
+	 * {@link RelaxedPropertySource} layer.
+	 */
+	boolean isRelaxed(@NotNull String key) {
+		if (relaxed.isEmpty())
+			return false;
+		String origin = table.getOrigin(key);
+		for (RelaxedPropertySource source : relaxed)
+			if (source.getName().equals(origin))
+				return true;
+		return false;
+	}
+
+	@NotNull List<PropertySource> getSources() {
+		return sources;
+	}
+
+	@Nullable PropertySource getSource(@NotNull String name) {
+		for (PropertySource source : sources)
+			if (source.getName().equals(name))
+				return source;
+		return null;
+	}
+
+	/**
+	 * Creates a layer with the given properties, held as the storage of this
+	 * stack requires.
+	 */
+	@NotNull PropertySource createSource(@NotNull String name, @NotNull Map<String, String> properties) {
+		return storage == Storage.OFF_HEAP ? new OffHeapPropertySource(name, properties) : PropertySource.of(name, properties);
+	}
+
+	@NotNull PropertySources addFirst(@NotNull PropertySource source) {
+		return add(0, source);
+	}
+
+	@NotNull PropertySources addLast(@NotNull PropertySource source) {
+		return add(sources.size(), source);
+	}
+
+	@NotNull PropertySources addBefore(@NotNull String name, @NotNull PropertySource source) {
+		return add(indexOf(name), source);
+	}
+
+	@NotNull PropertySources addAfter(@NotNull String name, @NotNull PropertySource source) {
+		return add(indexOf(name) + 1, source);
+	}
+
+	@NotNull PropertySources replace(@NotNull PropertySource source) {
+		List<PropertySource> sources = new ArrayList<>(this.sources);
+		sources.set(indexOf(source.getName()), source);
+		return rebuild(sources, overrides);
+	}
+
+	@NotNull PropertySources remove(@NotNull String name) {
+		List<PropertySource> sources = new ArrayList<>(this.sources);
+		if (!sources.removeIf(source -> source.getName().equals(name)))
+			return this;
+		return rebuild(sources, overrides);
+	}
+
+	@NotNull PropertySources withOverride(@NotNull String key, @NotNull String value) {
+		return new PropertySources(overridesName, storage, sources, relaxed, overrides.with(key, value), table.with(key, value, overridesName));
+	}
+
+	@NotNull PropertySources withoutOverride(@NotNull String key) {
+		return new PropertySources(overridesName, storage, sources, relaxed, overrides.with(key, null), table.without(key));
+	}
+
+	@NotNull PropertySources withoutOverrides() {
+		return rebuild(sources, PersistentMap.empty());
+	}
+
+	/**
+	 * Passes the keys which start with the given prefix and their values to
+	 * the action, in the natural order of the keys.
+	 */
+	void forEach(@NotNull String prefix, @NotNull BiConsumer<? super String, ? super String> action) {
+		table.forEach(prefix, action);
+	}
+
+	/**
+	 * Returns a read-only view of the keys which start with the given prefix
+	 * and their values, ordered by key.
+	 */
+	@NotNull Map<String, String> subset(@NotNull String prefix) {
+		return table.subset(prefix);
+	}
+
+	/**
+	 * Returns a stack whose merged view is compiled into a {@link FrozenTable},
+	 * or, with off-heap storage, whose overrides are merged into the encoded
+	 * table, so that the properties stay off the heap. The result must not be
+	 * changed any further.
+	 */
+	@NotNull PropertySources freeze() {
+		Table frozen = table instanceof OffHeapTable ? ((OffHeapTable) table).flatten() : FrozenTable.of(table);
+		return new PropertySources(overridesName, storage, sources, relaxed, overrides, frozen);
+	}
+
+	@NotNull MemoryReport getMemoryReport() {
+		MemoryReport.Builder report = new MemoryReport.Builder();
+		report.addIndex(overrides.estimateBytes());
+		report.addAll(overrides);
+		for (PropertySource source : sources)
+			if (source instanceof OffHeapPropertySource)
+				((OffHeapPropertySource) source).estimate(report);
+			else {
+				report.addIndex(MemoryReport.hashMapBytes(source.getProperties().size()));
+				report.addAll(source.getProperties());
+			}
+		table.estimate(report);
+		return report.build();
+	}
+
+	private @NotNull PropertySources add(int index, @NotNull PropertySource source) {
+		checkUnique(source.getName());
+		List<PropertySource> sources = new ArrayList<>(this.sources);
+		sources.add(index, source);
+		return rebuild(sources, overrides);
+	}
+
+	private @NotNull PropertySources rebuild(@NotNull List<PropertySource> sources, @NotNull PersistentMap<String, String> overrides) {
+		Table table = storage == Storage.OFF_HEAP ? OffHeapTable.of(sources) : HeapTable.of(sources);
+		for (Entry<String, String> entry : overrides.entrySet())
+			table = entry.getValue() == null ? table.without(entry.getKey()) : table.with(entry.getKey(), entry.getValue(), overridesName);
+		List<RelaxedPropertySource> relaxed = new ArrayList<>();
+		for (PropertySource source : sources)
+			if (source instanceof RelaxedPropertySource)
+				relaxed.add((RelaxedPropertySource) source);
+		return new PropertySources(overridesName, storage, Collections.unmodifiableList(sources), relaxed, overrides, table);
+	}
+
+	/**
+	 * Returns the canonical key of the first relaxed layer which recognizes
+	 * the key under another spelling.
+	 */
+	private @Nullable String getCanonicalKey(@NotNull String key) {
+		for (RelaxedPropertySource source : relaxed) {
+			String canonical = source.getCanonicalKey(key);
+			if (canonical != null && !canonical.equals(key))
+				return canonical;
+		}
+		return null;
+	}
+
+	private int indexOf(@NotNull String name) {
+		for (int i = 0; i < sources.size(); i++)
+			if (sources.get(i).getName().equals(name))
+				return i;
+		throw new ConfigurationException(String.format("Unknown property source [%s]", name));
+	}
+
+	private void checkUnique(@NotNull String name) {
+		if (name.equals(overridesName))
+			throw new ConfigurationException(String.format("Property source name [%s] is reserved", name));
+		if (getSource(name) != null)
+			throw new ConfigurationException(String.format("Duplicate property source [%s]", name));
+	}
+}
@@ -0,0 +1,213 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Parses durations such as <code>250ms</code> or <code>1.5h</code> and data
+ * sizes such as <code>64MiB</code>. An amount is a decimal number, which may
+ * be followed by whitespace and a unit. Units are case-insensitive. Malformed
+ * input yields a marker value instead of an exception.
+ * <p>
+ * Duration units are <code>ns</code>, <code>us</code>, <code>ms</code>,
+ * <code>s</code>, <code>m</code> or <code>min</code>, <code>h</code> and
+ * <code>d</code>, and an amount without a unit is in milliseconds. ISO-8601
+ * durations such as <code>PT30S</code> are accepted as well.
+ * <p>
+ * Data size units are <code>B</code>, the decimal <code>KB</code>,
+ * <code>MB</code>, <code>GB</code>, <code>TB</code> and <code>PB</code>, the
+ * binary <code>KiB</code> to <code>PiB</code>, and the binary shorthands
+ * <code>K</code>, <code>M</code>, <code>G</code>, <code>T</code> and
+ * <code>P</code> used by JVM options. An amount without a unit is in bytes.
+ * Fractions of a byte are rounded down.
+ * <p>
+ * The methods which take the key of a value throw a
+ * {@link NumberFormatException} for malformed input, and serve the getters of
+ * {@link org.trendafilov.confucius.Configurable}.
+ */
+public final class Quantities {
+	private final static long KILO = 1000;
+	private final static long KIBI = 1024;
+	private final static BigInteger NANOS_PER_SECOND = BigInteger.valueOf(1_000_000_000);
+	private final static Map<String, Long> DURATION_UNITS = Map.of(
+			"ns", 1L,
+			"us", 1_000L,
+			"\u00b5s", 1_000L,
+			"ms", 1_000_000L,
+			"s", 1_000_000_000L,
+			"m", 60_000_000_000L,
+			"min", 60_000_000_000L,
+			"h", 3_600_000_000_000L,
+			"d", 86_400_000_000_000L);
+	private final static Map<String, Long> SIZE_UNITS = Map.ofEntries(
+			Map.entry("b", 1L),
+			Map.entry("kb", KILO),
+			Map.entry("mb", KILO * KILO),
+			Map.entry("gb", KILO * KILO * KILO),
+			Map.entry("tb", KILO * KILO * KILO * KILO),
+			Map.entry("pb", KILO * KILO * KILO * KILO * KILO),
+			Map.entry("kib", KIBI),
+			Map.entry("mib", KIBI * KIBI),
+			Map.entry("gib", KIBI * KIBI * KIBI),
+			Map.entry("tib", KIBI * KIBI * KIBI * KIBI),
+			Map.entry("pib", KIBI * KIBI * KIBI * KIBI * KIBI),
+			Map.entry("k", KIBI),
+			Map.entry("m", KIBI * KIBI),
+			Map.entry("g", KIBI * KIBI * KIBI),
+			Map.entry("t", KIBI * KIBI * KIBI * KIBI),
+			Map.entry("p", KIBI * KIBI * KIBI * KIBI * KIBI));
+
+	private Quantities() {
+	}
+
+	/**
+	 * Returns the duration the value of the given key denotes.
+	 *
+	 * @throws NumberFormatException
+	 *             if the value is malformed or out of range
+	 */
+	public static @NotNull Duration toDuration(@NotNull String key, @NotNull String value) {
+		Duration duration = parseDuration(value);
+		if (duration == null)
+			throw malformed(key, "duration");
+		return duration;
+	}
+
+	/**
+	 * Returns the durations the items of the value of the given key denote, as
+	 * an unmodifiable list.
+	 *
+	 * @throws NumberFormatException
+	 *             if an item is malformed or out of range
+	 */
+	public static @NotNull List<Duration> toDurations(@NotNull String key, @NotNull String value, @NotNull String separator) {
+		List<Duration> durations = new ArrayList<>();
+		for (String item : value.split(separator))
+			durations.add(toDuration(key, item));
+		return Collections.unmodifiableList(durations);
+	}
+
+	/**
+	 * Returns the number of bytes the value of the given key denotes.
+	 *
+	 * @throws NumberFormatException
+	 *             if the value is malformed or out of range
+	 */
+	public static long toDataSize(@NotNull String key, @NotNull String value) {
+		long size = parseDataSize(value);
+		if (size < 0)
+			throw malformed(key, "data size");
+		return size;
+	}
+
+	/**
+	 * Returns the numbers of bytes the items of the value of the given key
+	 * denote, as an unmodifiable list.
+	 *
+	 * @throws NumberFormatException
+	 *             if an item is malformed or out of range
+	 */
+	public static @NotNull List<Long> toDataSizes(@NotNull String key, @NotNull String value, @NotNull String separator) {
+		List<Long> sizes = new ArrayList<>();
+		for (String item : value.split(separator))
+			sizes.add(toDataSize(key, item));
+		return Collections.unmodifiableList(sizes);
+	}
+
+	/**
+	 * Returns the duration the value denotes, or <tt>null</tt> if it is
+	 * malformed or out of range.
+	 */
+	static @Nullable Duration parseDuration(@NotNull String value) {
+		String item = value.trim();
+		if (item.startsWith("P") || item.startsWith("-P") || item.startsWith("+P")) {
+			try {
+				return Duration.parse(item);
+			} catch (DateTimeParseException e) {
+				return null;
+			}
+		}
+		int end = amountEnd(item, true);
+		if (end < 0)
+			return null;
+		String unit = item.substring(end).trim().toLowerCase(Locale.ROOT);
+		Long nanos = unit.isEmpty() ? DURATION_UNITS.get("ms") : DURATION_UNITS.get(unit);
+		if (nanos == null)
+			return null;
+		BigInteger[] parts = new BigDecimal(item.substring(0, end)).multiply(BigDecimal.valueOf(nanos))
+				.setScale(0, RoundingMode.DOWN).toBigInteger().divideAndRemainder(NANOS_PER_SECOND);
+		if (parts[0].bitLength() > 63)
+			return null;
+		return Duration.ofSeconds(parts[0].longValue(), parts[1].longValue());
+	}
+
+	/**
+	 * Returns the number of bytes the value denotes, or <tt>-1</tt> if it is
+	 * malformed or out of range.
+	 */
+	static long parseDataSize(@NotNull String value) {
+		String item = value.trim();
+		int end = amountEnd(item, false);
+		if (end < 0)
+			return -1;
+		String unit = item.substring(end).trim().toLowerCase(Locale.ROOT);
+		Long bytes = unit.isEmpty() ? Long.valueOf(1) : SIZE_UNITS.get(unit);
+		if (bytes == null)
+			return -1;
+		BigInteger size = new BigDecimal(item.substring(0, end)).multiply(BigDecimal.valueOf(bytes))
+				.setScale(0, RoundingMode.DOWN).toBigInteger();
+		return size.bitLength() > 63 ? -1 : size.longValue();
+	}
+
+	private static @NotNull NumberFormatException malformed(@NotNull String key, @NotNull String kind) {
+		return new NumberFormatException(String.format("Configuration value [%s] is not a parsable %s", key, kind));
+	}
+
+	/**
+	 * Returns the end of the leading decimal amount of the item, or -1 if it
+	 * does not start with one.
+	 */
+	private static int amountEnd(@NotNull String item, boolean signed) {
+		int i = 0;
+		int length = item.length();
+		if (signed && i < length && (item.charAt(i) == '-' || item.charAt(i) == '+'))
+			i++;
+		int digits = 0;
+		for (; i < length && isDigit(item.charAt(i)); i++)
+			digits++;
+		if (i < length && item.charAt(i) == '.')
+			for (i++; i < length && isDigit(item.charAt(i)); i++)
+				digits++;
+		return digits == 0 ? -1 : i;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+}
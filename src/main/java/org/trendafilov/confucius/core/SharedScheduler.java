@@ -0,0 +1,49 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A single daemon thread which runs the periodic background work of all
+ * configurations in the JVM, such as polling files for changes. Tasks are
+ * expected to be short, and should hold their configuration only weakly, so
+ * that an unused configuration can be collected while it is scheduled.
+ */
+final class SharedScheduler {
+	private final static ScheduledExecutorService EXECUTOR = create();
+
+	private SharedScheduler() {
+	}
+
+	static @NotNull ScheduledExecutorService get() {
+		return EXECUTOR;
+	}
+
+	private static @NotNull ScheduledExecutorService create() {
+		ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+			Thread thread = new Thread(runnable, "confucius-scheduler");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.setRemoveOnCancelPolicy(true);
+		return executor;
+	}
+}
@@ -0,0 +1,157 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import org.jetbrains.annotations.NotNull;
+import org.trendafilov.confucius.ConfigurationException;
+
+/**
+ * A resolved configuration in a file which is shared by several processes.
+ * The file holds a header and an {@link OffHeapMap}, and is read through a
+ * read-only memory mapping, so that all processes which map it share the
+ * same pages of the page cache. The layout is:
+ *
+ * <pre>
+ * header  int magic, int format version, long sequence number
+ * table   an encoded {@link OffHeapMap}
+ * </pre>
+ * <p>
+ * A file is never changed once written. A new version is written to a
+ * temporary file and moved over the previous one, so that mappings of the
+ * previous version stay valid until they are released. Each version carries
+ * a sequence number one higher than the version it replaced, which readers
+ * poll to detect new versions. Versions must only be written by one process.
+ */
+final class SharedSnapshot {
+	private final static int MAGIC = 0x43464753;
+	private final static int VERSION = 1;
+	private final static int HEADER = 16;
+
+	private final long sequence;
+	private final @NotNull OffHeapMap map;
+
+	private SharedSnapshot(long sequence, @NotNull OffHeapMap map) {
+		this.sequence = sequence;
+		this.map = map;
+	}
+
+	long getSequence() {
+		return sequence;
+	}
+
+	@NotNull OffHeapMap getMap() {
+		return map;
+	}
+
+	/**
+	 * Maps the version currently in the given file.
+	 *
+	 * @throws ConfigurationException
+	 *             if the file cannot be read or is not a shared snapshot
+	 */
+	static @NotNull SharedSnapshot map(@NotNull Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			checkHeader(file, buffer, buffer.capacity());
+			return new SharedSnapshot(buffer.getLong(8), new OffHeapMap(buffer.slice(HEADER, buffer.capacity() - HEADER)));
+		} catch (IOException e) {
+			throw new ConfigurationException(String.format("Unable to map shared configuration [%s]", file), e);
+		}
+	}
+
+	/**
+	 * Reads the sequence number of the version currently in the given file,
+	 * or returns 0 if there is no such file.
+	 *
+	 * @throws ConfigurationException
+	 *             if the file cannot be read or is not a shared snapshot
+	 */
+	static long readSequence(@NotNull Path file) {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			while (header.hasRemaining())
+				if (channel.read(header, header.position()) < 0)
+					break;
+			checkHeader(file, header, header.position());
+			return header.getLong(8);
+		} catch (NoSuchFileException e) {
+			return 0;
+		} catch (IOException e) {
+			throw new ConfigurationException(String.format("Unable to read shared configuration [%s]", file), e);
+		}
+	}
+
+	/**
+	 * Writes a new version of the given file, which holds the values and their
+	 * origins, and returns its sequence number.
+	 *
+	 * @throws ConfigurationException
+	 *             if the file cannot be written
+	 */
+	static long write(@NotNull Path file, @NotNull Map<String, String> values, @NotNull Map<String, String> origins) {
+		long sequence = readSequence(file) + 1;
+		Path directory = file.toAbsolutePath().getParent();
+		Path temporary = null;
+		try {
+			temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				MappedByteBuffer[] mapped = new MappedByteBuffer[1];
+				OffHeapMap.encode(values, origins, AbstractConfiguration.FILE_SOURCE, capacity -> {
+					try {
+						mapped[0] = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER + (long) capacity);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					return mapped[0].slice(HEADER, capacity);
+				});
+				mapped[0].putInt(0, MAGIC);
+				mapped[0].putInt(4, VERSION);
+				mapped[0].putLong(8, sequence);
+				mapped[0].force();
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			return sequence;
+		} catch (IOException | UncheckedIOException e) {
+			throw new ConfigurationException(String.format("Unable to write shared configuration [%s]", file), e);
+		} finally {
+			if (temporary != null)
+				try {
+					Files.deleteIfExists(temporary);
+				} catch (IOException ignored) {
+				}
+		}
+	}
+
+	private static void checkHeader(@NotNull Path file, @NotNull ByteBuffer header, long size) {
+		if (size < HEADER || header.getInt(0) != MAGIC)
+			throw new ConfigurationException(String.format("Invalid shared configuration [%s]", file));
+		if (header.getInt(4) != VERSION)
+			throw new ConfigurationException(String.format("Unsupported shared configuration version [%d] in [%s]", header.getInt(4), file));
+	}
+}
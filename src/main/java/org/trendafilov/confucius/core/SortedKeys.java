@@ -0,0 +1,336 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A persistent sorted set of keys, held as a B-tree whose nodes are never
+ * changed once built. Adding or removing a key copies the nodes on the path
+ * to it, which costs O(log n), and shares all other nodes with the previous
+ * version. The keys are iterated in their natural order from any key on.
+ */
+final class SortedKeys {
+	private final static int MAX = 64;
+	private final static int MIN = MAX / 4;
+	private final static int FILL = MAX * 3 / 4;
+	private final static SortedKeys EMPTY = new SortedKeys(new Leaf(new String[0]), 0);
+
+	private final @NotNull Node root;
+	private final int size;
+
+	private SortedKeys(@NotNull Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	static @NotNull SortedKeys empty() {
+		return EMPTY;
+	}
+
+	/**
+	 * Builds a set from keys which are sorted and distinct, in O(n).
+	 */
+	static @NotNull SortedKeys of(@NotNull String[] sorted) {
+		if (sorted.length == 0)
+			return EMPTY;
+		int count = chunks(sorted.length);
+		Node[] level = new Node[count];
+		for (int i = 0; i < count; i++)
+			level[i] = new Leaf(Arrays.copyOfRange(sorted, bound(i, sorted.length, count), bound(i + 1, sorted.length, count)));
+		while (level.length > 1) {
+			count = chunks(level.length);
+			Node[] parents = new Node[count];
+			for (int i = 0; i < count; i++)
+				parents[i] = new Inner(Arrays.copyOfRange(level, bound(i, level.length, count), bound(i + 1, level.length, count)));
+			level = parents;
+		}
+		return new SortedKeys(level[0], sorted.length);
+	}
+
+	/**
+	 * Returns the number of nodes to spread the given number of entries over
+	 * evenly, so that no node but a root is less than half full.
+	 */
+	private static int chunks(int length) {
+		return (length + FILL - 1) / FILL;
+	}
+
+	private static int bound(int chunk, int length, int count) {
+		return (int) ((long) chunk * length / count);
+	}
+
+	int size() {
+		return size;
+	}
+
+	@NotNull SortedKeys with(@NotNull String key) {
+		Node[] result = root.with(key);
+		if (result == null)
+			return this;
+		return new SortedKeys(result.length == 1 ? result[0] : new Inner(result), size + 1);
+	}
+
+	@NotNull SortedKeys without(@NotNull String key) {
+		Node result = root.without(key);
+		if (result == null)
+			return this;
+		while (result instanceof Inner && ((Inner) result).children.length == 1)
+			result = ((Inner) result).children[0];
+		return new SortedKeys(result, size - 1);
+	}
+
+	/**
+	 * Passes the keys which start with the given prefix to the action, in
+	 * their natural order.
+	 */
+	void forEach(@NotNull String prefix, @NotNull Consumer<? super String> action) {
+		for (Iterator<String> keys = iterator(prefix); keys.hasNext();) {
+			String key = keys.next();
+			if (!key.startsWith(prefix))
+				return;
+			action.accept(key);
+		}
+	}
+
+	/**
+	 * Returns an iterator over the keys which are not less than the given
+	 * one, in their natural order.
+	 */
+	@NotNull Iterator<String> iterator(@NotNull String from) {
+		return new Cursor(root, from);
+	}
+
+	long estimateBytes() {
+		return root.estimateBytes();
+	}
+
+	private static abstract class Node {
+
+		abstract @NotNull String first();
+
+		abstract int count();
+
+		/**
+		 * Returns the node with the key added, split in two if it grew too
+		 * large, or {@code null} if the key is present.
+		 */
+		abstract @NotNull Node @Nullable [] with(@NotNull String key);
+
+		/**
+		 * Returns the node with the key removed, which may be too small, or
+		 * {@code null} if the key is absent.
+		 */
+		abstract @Nullable Node without(@NotNull String key);
+
+		abstract long estimateBytes();
+	}
+
+	private final static class Leaf extends Node {
+		private final @NotNull String[] keys;
+
+		Leaf(@NotNull String[] keys) {
+			this.keys = keys;
+		}
+
+		@NotNull String first() {
+			return keys[0];
+		}
+
+		int count() {
+			return keys.length;
+		}
+
+		@NotNull Node @Nullable [] with(@NotNull String key) {
+			int i = Arrays.binarySearch(keys, key);
+			if (i >= 0)
+				return null;
+			i = -i - 1;
+			String[] next = new String[keys.length + 1];
+			System.arraycopy(keys, 0, next, 0, i);
+			next[i] = key;
+			System.arraycopy(keys, i, next, i + 1, keys.length - i);
+			if (next.length <= MAX)
+				return new Node[] { new Leaf(next) };
+			int half = next.length / 2;
+			return new Node[] { new Leaf(Arrays.copyOfRange(next, 0, half)), new Leaf(Arrays.copyOfRange(next, half, next.length)) };
+		}
+
+		@Nullable Node without(@NotNull String key) {
+			int i = Arrays.binarySearch(keys, key);
+			if (i < 0)
+				return null;
+			String[] next = new String[keys.length - 1];
+			System.arraycopy(keys, 0, next, 0, i);
+			System.arraycopy(keys, i + 1, next, i, keys.length - i - 1);
+			return new Leaf(next);
+		}
+
+		long estimateBytes() {
+			return MemoryReport.arrayBytes(keys.length);
+		}
+	}
+
+	private final static class Inner extends Node {
+		private final @NotNull Node[] children;
+		private final @NotNull String[] lows;
+
+		Inner(@NotNull Node[] children) {
+			this.children = children;
+			this.lows = new String[children.length];
+			for (int i = 0; i < children.length; i++)
+				lows[i] = children[i].first();
+		}
+
+		@NotNull String first() {
+			return lows[0];
+		}
+
+		int count() {
+			return children.length;
+		}
+
+		/**
+		 * Returns the child whose range holds the key, i.e. the last one whose
+		 * lowest key is not greater than it, or the first one.
+		 */
+		int childIndex(@NotNull String key) {
+			int i = Arrays.binarySearch(lows, key);
+			return i >= 0 ? i : Math.max(0, -i - 2);
+		}
+
+		@NotNull Node @Nullable [] with(@NotNull String key) {
+			int i = childIndex(key);
+			Node[] result = children[i].with(key);
+			if (result == null)
+				return null;
+			Node[] next = new Node[children.length + result.length - 1];
+			System.arraycopy(children, 0, next, 0, i);
+			System.arraycopy(result, 0, next, i, result.length);
+			System.arraycopy(children, i + 1, next, i + result.length, children.length - i - 1);
+			if (next.length <= MAX)
+				return new Node[] { new Inner(next) };
+			int half = next.length / 2;
+			return new Node[] { new Inner(Arrays.copyOfRange(next, 0, half)), new Inner(Arrays.copyOfRange(next, half, next.length)) };
+		}
+
+		@Nullable Node without(@NotNull String key) {
+			int i = childIndex(key);
+			Node child = children[i].without(key);
+			if (child == null)
+				return null;
+			Node[] next = children.clone();
+			next[i] = child;
+			if (child.count() >= MIN || next.length == 1)
+				return new Inner(next);
+			int left = i > 0 ? i - 1 : i;
+			Node[] merged = merge(next[left], next[left + 1]);
+			Node[] result = new Node[next.length - 2 + merged.length];
+			System.arraycopy(next, 0, result, 0, left);
+			System.arraycopy(merged, 0, result, left, merged.length);
+			System.arraycopy(next, left + 2, result, left + merged.length, next.length - left - 2);
+			return new Inner(result);
+		}
+
+		long estimateBytes() {
+			long bytes = 2 * MemoryReport.arrayBytes(children.length);
+			for (Node child : children)
+				bytes += child.estimateBytes();
+			return bytes;
+		}
+
+		/**
+		 * Joins two adjacent siblings, and splits them evenly again if the
+		 * result would be too large.
+		 */
+		private static @NotNull Node[] merge(@NotNull Node left, @NotNull Node right) {
+			if (left instanceof Leaf) {
+				String[] keys = concat(((Leaf) left).keys, ((Leaf) right).keys);
+				if (keys.length <= MAX)
+					return new Node[] { new Leaf(keys) };
+				int half = keys.length / 2;
+				return new Node[] { new Leaf(Arrays.copyOfRange(keys, 0, half)), new Leaf(Arrays.copyOfRange(keys, half, keys.length)) };
+			}
+			Node[] children = concat(((Inner) left).children, ((Inner) right).children);
+			if (children.length <= MAX)
+				return new Node[] { new Inner(children) };
+			int half = children.length / 2;
+			return new Node[] { new Inner(Arrays.copyOfRange(children, 0, half)), new Inner(Arrays.copyOfRange(children, half, children.length)) };
+		}
+
+		private static <T> @NotNull T[] concat(@NotNull T[] left, @NotNull T[] right) {
+			T[] result = Arrays.copyOf(left, left.length + right.length);
+			System.arraycopy(right, 0, result, left.length, right.length);
+			return result;
+		}
+	}
+
+	/**
+	 * Walks the leaves from a starting key on, keeping the path of inner
+	 * nodes which lead to the current leaf.
+	 */
+	private final static class Cursor implements Iterator<String> {
+		private final @NotNull Inner[] path = new Inner[16];
+		private final @NotNull int[] positions = new int[16];
+		private int depth;
+		private @NotNull Leaf leaf;
+		private int position;
+
+		Cursor(@NotNull Node root, @NotNull String from) {
+			Node node = root;
+			while (node instanceof Inner) {
+				Inner inner = (Inner) node;
+				int i = inner.childIndex(from);
+				path[depth] = inner;
+				positions[depth++] = i;
+				node = inner.children[i];
+			}
+			leaf = (Leaf) node;
+			int i = Arrays.binarySearch(leaf.keys, from);
+			position = i >= 0 ? i : -i - 1;
+		}
+
+		public boolean hasNext() {
+			while (position == leaf.keys.length) {
+				while (depth > 0 && positions[depth - 1] + 1 == path[depth - 1].children.length)
+					depth--;
+				if (depth == 0)
+					return false;
+				Node node = path[depth - 1].children[++positions[depth - 1]];
+				while (node instanceof Inner) {
+					path[depth] = (Inner) node;
+					positions[depth++] = 0;
+					node = ((Inner) node).children[0];
+				}
+				leaf = (Leaf) node;
+				position = 0;
+			}
+			return true;
+		}
+
+		public @NotNull String next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return leaf.keys[position++];
+		}
+	}
+}
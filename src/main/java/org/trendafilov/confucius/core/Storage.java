@@ -0,0 +1,39 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+/**
+ * The storage engine which holds the properties of an isolated configuration.
+ */
+public enum Storage {
+	/**
+	 * Keeps the properties in persistent maps on the heap, which suits
+	 * configurations that are changed at runtime.
+	 */
+	HEAP,
+
+	/**
+	 * Keeps the properties as UTF-8 bytes in compact open-addressing tables in
+	 * direct memory, outside of the heap and of garbage collection. Values are
+	 * only materialized as strings when they are read, and a lookup of a
+	 * missing key does not create any string. Runtime overrides are held in a
+	 * small overlay on the heap. Suited to configurations with millions of
+	 * keys.
+	 */
+	OFF_HEAP
+}
@@ -0,0 +1,58 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.util.Map;
+import java.util.function.BiConsumer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The resolved key-value table behind a version of {@link PropertySources},
+ * which records for each key the name of the layer that supplied its value.
+ * Tables are immutable; changes derive a new table.
+ */
+interface Table {
+
+	@Nullable String get(@NotNull String key);
+
+	@Nullable String getOrigin(@NotNull String key);
+
+	/**
+	 * Returns a read-only view of the table.
+	 */
+	@NotNull Map<String, String> asMap();
+
+	/**
+	 * Returns a read-only view of the keys which start with the given prefix
+	 * and their values, ordered by key.
+	 */
+	@NotNull Map<String, String> subset(@NotNull String prefix);
+
+	/**
+	 * Passes the keys which start with the given prefix and their values to
+	 * the action, ordered by key.
+	 */
+	void forEach(@NotNull String prefix, @NotNull BiConsumer<? super String, ? super String> action);
+
+	@NotNull Table with(@NotNull String key, @NotNull String value, @NotNull String origin);
+
+	@NotNull Table without(@NotNull String key);
+
+	void estimate(@NotNull MemoryReport.Builder report);
+}
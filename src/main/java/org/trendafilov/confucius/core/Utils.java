@@ -21,7 +21,7 @@ import java.util.Map;
 import java.util.Properties;
 import org.jetbrains.annotations.NotNull;
 
-class Utils {
+public final class Utils {
 
 	private Utils() {
 	}
@@ -36,4 +36,81 @@ class Utils {
 		return properties;
 	}
 
+	/**
+	 * Returns whether {@link Long#parseLong(String)} would accept the value
+	 * and yield a number within the given bounds, without throwing.
+	 */
+	public static boolean isParsableLong(@NotNull String value, long min, long max) {
+		int length = value.length();
+		if (length == 0)
+			return false;
+		int i = 0;
+		char first = value.charAt(0);
+		boolean negative = first == '-';
+		if (negative || first == '+') {
+			if (length == 1)
+				return false;
+			i++;
+		}
+		long limit = negative ? min : -max;
+		long bound = limit / 10;
+		long result = 0;
+		for (; i < length; i++) {
+			int digit = Character.digit(value.charAt(i), 10);
+			if (digit < 0 || result < bound)
+				return false;
+			result *= 10;
+			if (result < limit + digit)
+				return false;
+			result -= digit;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether {@link Double#parseDouble(String)} would accept the
+	 * value, without throwing.
+	 */
+	public static boolean isParsableDouble(@NotNull String value) {
+		String item = value.trim();
+		int length = item.length();
+		int i = 0;
+		if (i < length && (item.charAt(i) == '+' || item.charAt(i) == '-'))
+			i++;
+		if (item.startsWith("NaN", i))
+			return i + 3 == length;
+		if (item.startsWith("Infinity", i))
+			return i + 8 == length;
+		boolean hex = i + 1 < length && item.charAt(i) == '0' && (item.charAt(i + 1) == 'x' || item.charAt(i + 1) == 'X');
+		if (hex)
+			i += 2;
+		int digits = 0;
+		for (; i < length && isDigit(item.charAt(i), hex); i++)
+			digits++;
+		if (i < length && item.charAt(i) == '.')
+			for (i++; i < length && isDigit(item.charAt(i), hex); i++)
+				digits++;
+		if (digits == 0)
+			return false;
+		boolean exponent = i < length && (hex ? item.charAt(i) == 'p' || item.charAt(i) == 'P' : item.charAt(i) == 'e' || item.charAt(i) == 'E');
+		if (hex && !exponent)
+			return false;
+		if (exponent) {
+			i++;
+			if (i < length && (item.charAt(i) == '+' || item.charAt(i) == '-'))
+				i++;
+			int start = i;
+			for (; i < length && isDigit(item.charAt(i), false); i++)
+				;
+			if (i == start)
+				return false;
+		}
+		if (i < length && "fFdD".indexOf(item.charAt(i)) >= 0)
+			i++;
+		return i == length;
+	}
+
+	private static boolean isDigit(char c, boolean hex) {
+		return c >= '0' && c <= '9' || hex && (c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F');
+	}
 }
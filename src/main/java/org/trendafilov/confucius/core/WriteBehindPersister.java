@@ -0,0 +1,321 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trendafilov.confucius.ConfigurationException;
+import org.trendafilov.confucius.core.provider.ConfigurationDataProvider;
+import org.trendafilov.confucius.core.provider.Fragment;
+
+/**
+ * Writes changes of runtime overrides back to a configuration file in the
+ * context-based format, off the thread which made them. Changes are collected
+ * for a window after the first of them and written together, where later
+ * changes of a key replace earlier ones. Only the lines of the section of the
+ * context are rewritten: a key which is set replaces the value of its last
+ * line in the section or is appended to the section, and a key which is
+ * cleared loses its lines in the section. The file is replaced atomically
+ * with a temporary file which is forced to disk first. Only plain UTF-8 text
+ * files in the context-based format are written: compressed files and files
+ * in the standard Properties format are refused.
+ * <p>
+ * The window is timed on the {@link SharedScheduler}, while the file is
+ * written on the common pool. A write which fails with an I/O error is
+ * retried with a growing delay, while a file which became unwritable keeps
+ * its changes queued until the next change or flush. A single shutdown hook
+ * writes the changes still queued by the persisters which are in use.
+ * </p>
+ */
+final class WriteBehindPersister {
+	private final static Logger LOG = LoggerFactory.getLogger(WriteBehindPersister.class);
+	private final static String COMMENT = "#";
+	private final static String IDENTITY = "=";
+	private final static long RETRY_DELAY = TimeUnit.SECONDS.toNanos(1);
+	private final static int MAX_BACKOFF = 6;
+	private final static Set<WriteBehindPersister> OPEN = Collections.newSetFromMap(new WeakHashMap<>());
+	private static boolean hooked;
+
+	private final @NotNull Path file;
+	private final @NotNull String section;
+	private final long window;
+	private final @NotNull Map<String, String> pending = new LinkedHashMap<>();
+	private final @NotNull Object lock = new Object();
+	private @Nullable ScheduledFuture<?> task;
+	private boolean scheduled;
+	private boolean closed;
+	private int failures;
+
+	WriteBehindPersister(@NotNull Path file, @NotNull String section, @NotNull Duration window) {
+		if (window.isNegative())
+			throw new ConfigurationException(String.format("Invalid write-behind window [%s]", window));
+		this.file = file;
+		this.section = section;
+		this.window = window.toNanos();
+		try {
+			read();
+		} catch (IOException e) {
+			throw new ConfigurationException(String.format("Unable to read configuration file [%s]", file), e);
+		}
+		register(this);
+	}
+
+	/**
+	 * Queues the given changes, where keys mapped to {@code null} are
+	 * cleared, and returns without waiting for them to be written.
+	 */
+	synchronized void submit(@NotNull Map<String, String> changes) {
+		for (Entry<String, String> entry : changes.entrySet())
+			if (isPersistable(entry.getKey(), entry.getValue()))
+				pending.put(entry.getKey(), entry.getValue());
+			else
+				LOG.warn("Configuration property [{}] cannot be persisted in the context-based format", entry.getKey());
+		schedule();
+	}
+
+	/**
+	 * Writes all queued changes, and waits until they are written.
+	 *
+	 * @throws ConfigurationException
+	 *             if the file cannot be written
+	 */
+	void flush() {
+		Map<String, String> changes;
+		synchronized (this) {
+			scheduled = false;
+			if (pending.isEmpty())
+				return;
+			changes = new LinkedHashMap<>(pending);
+			pending.clear();
+		}
+		synchronized (lock) {
+			try {
+				write(rewrite(read(), section, changes));
+				synchronized (this) {
+					failures = 0;
+				}
+				LOG.info("Persisted {} configuration properties to [{}]", changes.size(), file);
+			} catch (IOException | RuntimeException e) {
+				synchronized (this) {
+					for (Entry<String, String> entry : changes.entrySet())
+						if (!pending.containsKey(entry.getKey()))
+							pending.put(entry.getKey(), entry.getValue());
+					if (e instanceof IOException) {
+						failures++;
+						schedule();
+					}
+				}
+				LOG.error(String.format("Unable to persist configuration properties to [%s]", file), e);
+				throw e instanceof ConfigurationException ? (ConfigurationException) e
+						: new ConfigurationException(String.format("Unable to persist configuration properties to [%s]", file), e);
+			}
+		}
+	}
+
+	/**
+	 * Writes all queued changes and stops writing in the background.
+	 */
+	void close() {
+		synchronized (this) {
+			closed = true;
+			if (task != null)
+				task.cancel(false);
+			task = null;
+			scheduled = false;
+		}
+		synchronized (OPEN) {
+			OPEN.remove(this);
+		}
+		flush();
+	}
+
+	/**
+	 * Schedules a write after the window, or after a delay which doubles with
+	 * every consecutive failure of a write.
+	 */
+	private void schedule() {
+		if (scheduled || closed || pending.isEmpty())
+			return;
+		long delay = failures == 0 ? window : Math.max(window, RETRY_DELAY) << Math.min(failures - 1, MAX_BACKOFF);
+		scheduled = true;
+		task = SharedScheduler.get().schedule(() -> ForkJoinPool.commonPool().execute(this::flushInBackground), delay, TimeUnit.NANOSECONDS);
+	}
+
+	private void flushInBackground() {
+		try {
+			flush();
+		} catch (ConfigurationException ignored) {
+			// logged by flush
+		}
+	}
+
+	private static void register(@NotNull WriteBehindPersister persister) {
+		synchronized (OPEN) {
+			if (!hooked) {
+				Runtime.getRuntime().addShutdownHook(new Thread(WriteBehindPersister::flushAll, "confucius-persister-shutdown"));
+				hooked = true;
+			}
+			OPEN.add(persister);
+		}
+	}
+
+	private static void flushAll() {
+		List<WriteBehindPersister> persisters;
+		synchronized (OPEN) {
+			persisters = new ArrayList<>(OPEN);
+		}
+		for (WriteBehindPersister persister : persisters)
+			persister.flushInBackground();
+	}
+
+	/**
+	 * Applies the changes to the section with the given name, which is added
+	 * to the end of the document if it does not exist yet.
+	 */
+	static @NotNull List<String> rewrite(@NotNull List<String> lines, @NotNull String section, @NotNull Map<String, String> changes) {
+		List<String> result = new ArrayList<>(lines.size() + changes.size() + 2);
+		Map<String, Integer> last = new LinkedHashMap<>();
+		boolean named = false;
+		int end = -1;
+		for (String line : lines) {
+			String trimmed = line.trim();
+			if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+				named = trimmed.substring(1, trimmed.length() - 1).equalsIgnoreCase(section);
+				result.add(line);
+				if (named)
+					end = result.size();
+				continue;
+			}
+			if (named) {
+				String key = getKey(line);
+				if (key != null && changes.containsKey(key)) {
+					if (changes.get(key) == null)
+						continue;
+					last.put(key, result.size());
+				}
+				if (!trimmed.isEmpty())
+					end = result.size() + 1;
+			}
+			result.add(line);
+		}
+
+		Set<String> replaced = new HashSet<>();
+		for (Entry<String, Integer> entry : last.entrySet()) {
+			String line = result.get(entry.getValue());
+			int comment = line.indexOf(COMMENT);
+			String key = entry.getKey();
+			result.set(entry.getValue(), key + " " + IDENTITY + " " + changes.get(key) + (comment < 0 ? "" : " " + line.substring(comment)));
+			replaced.add(key);
+		}
+		List<String> added = new ArrayList<>();
+		for (Entry<String, String> entry : changes.entrySet())
+			if (entry.getValue() != null && !replaced.contains(entry.getKey()))
+				added.add(entry.getKey() + " " + IDENTITY + " " + entry.getValue());
+		if (added.isEmpty())
+			return result;
+		if (end < 0) {
+			if (!result.isEmpty() && !result.get(result.size() - 1).trim().isEmpty())
+				result.add("");
+			result.add("[" + section + "]");
+			result.addAll(added);
+		} else
+			result.addAll(end, added);
+		return result;
+	}
+
+	/**
+	 * Reads the lines of the file. A file which is not plain UTF-8 text, such
+	 * as a compressed one, is refused, as is a file in the standard Properties
+	 * format, whose lines would otherwise be dropped once a section is added
+	 * to it.
+	 */
+	private @NotNull List<String> read() throws IOException {
+		if (!Files.exists(file))
+			return List.of();
+		CharBuffer content;
+		try {
+			content = StandardCharsets.UTF_8.newDecoder().decode(ByteBuffer.wrap(Files.readAllBytes(file)));
+		} catch (CharacterCodingException e) {
+			throw new ConfigurationException(String.format("Configuration file [%s] is not a plain UTF-8 text file", file), e);
+		}
+		for (int i = 0; i < content.length(); i++) {
+			char c = content.charAt(i);
+			if (c < ' ' && c != '\t' && c != '\n' && c != '\r' && c != '\f')
+				throw new ConfigurationException(String.format("Configuration file [%s] is not a plain UTF-8 text file", file));
+		}
+		if (!Fragment.read(ConfigurationDataProvider.of(file)).getProperties().isEmpty())
+			throw new ConfigurationException(String.format("Configuration file [%s] is not in the context-based format", file));
+		return content.toString().lines().collect(Collectors.toList());
+	}
+
+	private void write(@NotNull List<String> lines) throws IOException {
+		Path temporary = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap((String.join(System.lineSeparator(), lines) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+				while (buffer.hasRemaining())
+					channel.write(buffer);
+				channel.force(true);
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+	}
+
+	private static boolean isPersistable(@NotNull String key, @Nullable String value) {
+		if (key.isEmpty() || key.contains(IDENTITY) || key.contains(COMMENT) || key.contains("\n") || key.trim().startsWith("["))
+			return false;
+		return value == null || !value.contains(COMMENT) && !value.contains("\n") && !value.contains("\r");
+	}
+
+	private static @Nullable String getKey(@NotNull String line) {
+		int comment = line.indexOf(COMMENT);
+		String content = (comment < 0 ? line : line.substring(0, comment)).trim();
+		int identity = content.indexOf(IDENTITY);
+		if (identity < 0 || content.startsWith("@include"))
+			return null;
+		return content.substring(0, identity).trim();
+	}
+}
@@ -0,0 +1,175 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads every resource of a name on the classpath, such as the defaults
+ * shipped in the jars of an application. Resources are merged as if they were
+ * a single document, in the reverse order of the classpath, so that the
+ * resource which comes first on the classpath takes precedence, as it would
+ * for {@link ClassLoader#getResource(String)}.
+ * <p>
+ * Tokenized resources are shared within the JVM, keyed by their URL. A cached
+ * resource is only read again once the size or modification time of the jar
+ * or file which holds it change. Resources which are held elsewhere are read
+ * on every access.
+ * </p>
+ */
+class ClasspathConfigurationDataProvider implements ConfigurationDataProvider {
+	private final static ConcurrentMap<String, Entry> CACHE = new ConcurrentHashMap<>();
+
+	private final @NotNull String name;
+	private final @Nullable ClassLoader classLoader;
+
+	public ClasspathConfigurationDataProvider(@NotNull String name, @Nullable ClassLoader classLoader) {
+		this.name = name.startsWith("/") ? name.substring(1) : name;
+		this.classLoader = classLoader;
+	}
+
+	public @NotNull List<String> getAllLines() throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (URL resource : listResources())
+			lines.addAll(Utils.readLines(open(resource)));
+		return lines;
+	}
+
+	public @Nullable InputStream getInputStream() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (URL resource : listResources()) {
+			try (InputStream input = Utils.decompress(open(resource))) {
+				input.transferTo(output);
+			}
+			output.write('\n');
+		}
+		return new ByteArrayInputStream(output.toByteArray());
+	}
+
+	public @NotNull List<Fragment> getFragments() throws IOException {
+		List<Fragment> fragments = new ArrayList<>();
+		for (URL resource : listResources())
+			fragments.add(load(resource));
+		return fragments;
+	}
+
+	static void clearCache() {
+		CACHE.clear();
+	}
+
+	/**
+	 * Returns the resources in the order in which they are merged, from the
+	 * lowest to the highest precedence.
+	 *
+	 * @throws FileNotFoundException
+	 *             if there is no resource of the name
+	 */
+	private @NotNull List<URL> listResources() throws IOException {
+		ClassLoader loader = classLoader != null ? classLoader : getDefaultClassLoader();
+		List<URL> resources = Collections.list(loader.getResources(name));
+		if (resources.isEmpty())
+			throw new FileNotFoundException(String.format("Classpath resource [%s] not found", name));
+		Collections.reverse(resources);
+		return resources;
+	}
+
+	private @NotNull Fragment load(@NotNull URL resource) throws IOException {
+		String key = resource.toString();
+		Path container = getContainer(resource);
+		if (container == null)
+			return read(resource);
+		BasicFileAttributes attributes = Files.readAttributes(container, BasicFileAttributes.class);
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().toMillis();
+		Entry cached = CACHE.get(key);
+		if (cached != null && cached.size == size && cached.modified == modified)
+			return cached.fragment;
+		Fragment fragment = read(resource);
+		CACHE.put(key, new Entry(size, modified, fragment));
+		return fragment;
+	}
+
+	private static @NotNull Fragment read(@NotNull URL resource) throws IOException {
+		try (InputStream input = open(resource)) {
+			return Fragment.read(new StreamConfigurationDataProvider(input), null);
+		}
+	}
+
+	private static @NotNull InputStream open(@NotNull URL resource) throws IOException {
+		URLConnection connection = resource.openConnection();
+		connection.setUseCaches(false);
+		return connection.getInputStream();
+	}
+
+	/**
+	 * Returns the jar or file which holds the resource, or {@code null} if it
+	 * is not held by a local file.
+	 */
+	private static @Nullable Path getContainer(@NotNull URL resource) throws IOException {
+		URL file = resource;
+		if ("jar".equals(resource.getProtocol())) {
+			URLConnection connection = resource.openConnection();
+			if (!(connection instanceof JarURLConnection))
+				return null;
+			file = ((JarURLConnection) connection).getJarFileURL();
+		}
+		if (!"file".equals(file.getProtocol()))
+			return null;
+		try {
+			return Paths.get(file.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static @NotNull ClassLoader getDefaultClassLoader() {
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		return loader != null ? loader : ClasspathConfigurationDataProvider.class.getClassLoader();
+	}
+
+	private static class Entry {
+		private final long size;
+		private final long modified;
+		private final Fragment fragment;
+
+		private Entry(long size, long modified, Fragment fragment) {
+			this.size = size;
+			this.modified = modified;
+			this.fragment = fragment;
+		}
+	}
+}
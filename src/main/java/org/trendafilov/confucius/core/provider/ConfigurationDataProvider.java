@@ -19,24 +19,65 @@ package org.trendafilov.confucius.core.provider;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public interface ConfigurationDataProvider {
+	/**
+	 * The prefix of a file path which names a resource on the classpath.
+	 */
+	String CLASSPATH_PREFIX = "classpath:";
+
 	@NotNull List<String> getAllLines() throws IOException;
 
 	@Nullable InputStream getInputStream() throws IOException;
 
+	/**
+	 * Returns the file the configuration is read from, if there is one.
+	 */
+	default @Nullable Path getLocation() {
+		return null;
+	}
+
+	default @NotNull List<Fragment> getFragments() throws IOException {
+		return Collections.singletonList(Fragment.read(this));
+	}
+
 	static ConfigurationDataProvider of(@Nullable String filePath) {
+		if (filePath != null && filePath.startsWith(CLASSPATH_PREFIX))
+			return ofClasspath(filePath.substring(CLASSPATH_PREFIX.length()));
+		if (filePath != null && Files.isDirectory(Paths.get(filePath)))
+			return ofDirectory(Paths.get(filePath));
 		return new FileConfigurationDataProvider(filePath);
 	}
 
 	static ConfigurationDataProvider of(@Nullable Path path) {
+		if (path != null && Files.isDirectory(path))
+			return ofDirectory(path);
 		return new PathConfigurationDataProvider(path);
 	}
 
+	static ConfigurationDataProvider ofDirectory(@NotNull Path directory) {
+		return new DirectoryConfigurationDataProvider(directory);
+	}
+
+	/**
+	 * Returns a provider of all resources of the given name on the classpath
+	 * of the context class loader, where the first of them takes precedence.
+	 */
+	static ConfigurationDataProvider ofClasspath(@NotNull String name) {
+		return new ClasspathConfigurationDataProvider(name, null);
+	}
+
+	static ConfigurationDataProvider ofClasspath(@NotNull String name, @NotNull ClassLoader classLoader) {
+		return new ClasspathConfigurationDataProvider(name, classLoader);
+	}
+
 	static ConfigurationDataProvider of(@Nullable InputStream stream) {
 		return new StreamConfigurationDataProvider(stream);
 	}
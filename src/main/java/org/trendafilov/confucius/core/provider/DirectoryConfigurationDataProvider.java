@@ -0,0 +1,136 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Reads every fragment of a <code>conf.d</code> style directory. Fragments
+ * are merged in lexical order of their file names, as if they were a single
+ * document: the <code>Default</code> sections of all fragments apply first,
+ * followed by the sections of the requested context.
+ * <p>
+ * Fragments are read and tokenized in parallel. Tokenized fragments are kept
+ * between reads, and a fragment is only tokenized again once its size or
+ * modification time change and its content hash differs.
+ * </p>
+ */
+class DirectoryConfigurationDataProvider implements ConfigurationDataProvider {
+	private final @NotNull Path directory;
+	private final @NotNull Map<Path, Entry> cache = new HashMap<>();
+
+	public DirectoryConfigurationDataProvider(@NotNull Path directory) {
+		this.directory = directory;
+	}
+
+	public @NotNull List<String> getAllLines() throws IOException {
+		List<String> lines = new ArrayList<>();
+		for (Path file : listFragments())
+			lines.addAll(Utils.readLines(Files.newInputStream(file)));
+		return lines;
+	}
+
+	public @Nullable InputStream getInputStream() throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		for (Path file : listFragments()) {
+			try (InputStream input = Utils.decompress(Files.newInputStream(file))) {
+				input.transferTo(output);
+			}
+			output.write('\n');
+		}
+		return new ByteArrayInputStream(output.toByteArray());
+	}
+
+	public @NotNull Path getLocation() {
+		return directory;
+	}
+
+	public synchronized @NotNull List<Fragment> getFragments() throws IOException {
+		List<Path> files = listFragments();
+		List<Entry> entries;
+		try {
+			entries = files.parallelStream().map(this::load).collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		List<Fragment> fragments = new ArrayList<>();
+		cache.clear();
+		for (int i = 0; i < files.size(); i++) {
+			cache.put(files.get(i), entries.get(i));
+			fragments.add(entries.get(i).fragment);
+		}
+		return fragments;
+	}
+
+	private @NotNull List<Path> listFragments() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(Files::isRegularFile)
+					.filter(file -> !file.getFileName().toString().startsWith("."))
+					.sorted((a, b) -> a.getFileName().toString().compareTo(b.getFileName().toString()))
+					.collect(Collectors.toList());
+		}
+	}
+
+	private @NotNull Entry load(@NotNull Path file) {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+			long size = attributes.size();
+			long modified = attributes.lastModifiedTime().toMillis();
+			Entry cached = cache.get(file);
+			if (cached != null && cached.size == size && cached.modified == modified)
+				return cached;
+			byte[] content = Files.readAllBytes(file);
+			byte[] hash = Utils.digest(content);
+			if (cached != null && Arrays.equals(cached.hash, hash))
+				return new Entry(size, modified, hash, cached.fragment);
+			Fragment fragment = Fragment.read(new StreamConfigurationDataProvider(new ByteArrayInputStream(content)), file);
+			return new Entry(size, modified, hash, fragment);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static class Entry {
+		private final long size;
+		private final long modified;
+		private final byte[] hash;
+		private final Fragment fragment;
+
+		private Entry(long size, long modified, byte[] hash, Fragment fragment) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+			this.fragment = fragment;
+		}
+	}
+}
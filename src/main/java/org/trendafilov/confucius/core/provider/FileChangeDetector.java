@@ -0,0 +1,92 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core.provider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Detects changes of the content of a file by polling. A check compares the
+ * size and modification time of the file with those seen by the previous
+ * check, which costs a single file system call. Only if either differs is the
+ * content hashed, in a streaming fashion, and the file only counts as changed
+ * if its hash differs as well. Touching or rewriting a file with the same
+ * content is therefore not reported.
+ */
+public final class FileChangeDetector {
+	private final static int BUFFER_SIZE = 8192;
+
+	private final @NotNull Path file;
+	private long size;
+	private long modified;
+	private byte @Nullable [] hash;
+
+	/**
+	 * Creates a detector which reports changes relative to the current content
+	 * of the file.
+	 */
+	public FileChangeDetector(@NotNull Path file) throws IOException {
+		this.file = file;
+		hasChanged();
+	}
+
+	/**
+	 * Returns whether the content of the file changed since the previous
+	 * check. A file which is created or deleted counts as changed.
+	 */
+	public synchronized boolean hasChanged() throws IOException {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			boolean changed = hash != null;
+			size = -1;
+			modified = -1;
+			hash = null;
+			return changed;
+		}
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().toMillis();
+		if (hash != null && size == this.size && modified == this.modified)
+			return false;
+		byte[] hash = digest();
+		boolean changed = !Arrays.equals(hash, this.hash);
+		this.size = size;
+		this.modified = modified;
+		this.hash = hash;
+		return changed;
+	}
+
+	private byte @NotNull [] digest() throws IOException {
+		MessageDigest digest = Utils.newDigest();
+		byte[] buffer = new byte[BUFFER_SIZE];
+		try (InputStream input = Files.newInputStream(file)) {
+			for (int n = input.read(buffer); n != -1; n = input.read(buffer))
+				digest.update(buffer, 0, n);
+		}
+		return digest.digest();
+	}
+}
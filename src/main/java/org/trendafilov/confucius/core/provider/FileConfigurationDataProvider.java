@@ -20,8 +20,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
@@ -39,10 +38,14 @@ class FileConfigurationDataProvider implements ConfigurationDataProvider {
 	}
 
 	public @NotNull List<String> getAllLines() throws IOException {
-		return file == null ? new ArrayList<>() : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+		return file == null ? new ArrayList<>() : Utils.readLines(new FileInputStream(file));
 	}
 
 	public @Nullable InputStream getInputStream() throws IOException {
-		return file == null ? null : new FileInputStream(file);
+		return file == null ? null : Utils.decompress(new FileInputStream(file));
+	}
+
+	public @Nullable Path getLocation() {
+		return file == null ? null : file.toPath();
 	}
 }
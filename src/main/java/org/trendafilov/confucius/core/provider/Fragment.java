@@ -0,0 +1,323 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core.provider;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A tokenized configuration document, independent of the context it will be
+ * read in. A document in the standard Java Properties format is held as a
+ * plain map, whereas a document in the context-based format is held as its
+ * ordered list of context sections. Instances are immutable.
+ * <p>
+ * A context-based document may include other documents via an
+ * <code>@include &lt;path&gt;</code> line, either before the first section or
+ * within a section. Relative paths are resolved against the directory of the
+ * including document.
+ * </p>
+ */
+public final class Fragment {
+	private final static String COMMENT = "#";
+	private final static String IDENTITY = "=";
+	private final static String LEFT_CONTEXT = "[";
+	private final static String RIGHT_CONTEXT = "]";
+	private final static String INCLUDE = "@include";
+
+	private final @Nullable Path location;
+	private final @Nullable Map<String, String> properties;
+	private final @NotNull List<Section> sections;
+
+	private Fragment(@Nullable Path location, @Nullable Map<String, String> properties, @NotNull List<Section> sections) {
+		this.location = location;
+		this.properties = properties;
+		this.sections = sections;
+	}
+
+	public static @NotNull Fragment read(@NotNull ConfigurationDataProvider provider) throws IOException {
+		return read(provider, provider.getLocation());
+	}
+
+	/**
+	 * Tokenizes a document in a single pass over its lines. Lines are only
+	 * kept until the first context section or include, which marks the
+	 * document as context-based, or to the end of a document in the standard
+	 * Properties format.
+	 * <p>
+	 * As the format is only known once a line marks it, the input is read as
+	 * ISO-8859-1, which maps each byte to one character. A document in the
+	 * standard Properties format is loaded in that encoding, as by
+	 * {@link Properties#load(InputStream)}, while the lines of a context-based
+	 * document are decoded as UTF-8.
+	 * </p>
+	 */
+	static @NotNull Fragment read(@NotNull ConfigurationDataProvider provider, @Nullable Path location) throws IOException {
+		InputStream source = provider.getInputStream();
+		if (source == null)
+			return new Fragment(location, null, Collections.emptyList());
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(source, StandardCharsets.ISO_8859_1))) {
+			List<String> preamble = new ArrayList<>();
+			Tokenizer tokenizer = null;
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				if (tokenizer != null)
+					tokenizer.accept(toUtf8(line));
+				else if (isContext(line) || isInclude(line.trim())) {
+					tokenizer = new Tokenizer();
+					tokenizer.accept(toUtf8(line));
+					preamble = null;
+				} else
+					preamble.add(line);
+			}
+			if (tokenizer != null)
+				return new Fragment(location, null, tokenizer.finish());
+			if (preamble.isEmpty())
+				return new Fragment(location, null, Collections.emptyList());
+			return new Fragment(location, loadStandardProps(preamble), Collections.emptyList());
+		}
+	}
+
+	/**
+	 * Returns the file this document was read from, or {@code null} if it is
+	 * not known, e.g. for documents which are shared by content.
+	 */
+	public @Nullable Path getLocation() {
+		return location;
+	}
+
+	public boolean isStandard() {
+		return properties != null;
+	}
+
+	/**
+	 * Returns the key-value pairs of a document in the standard Java
+	 * Properties format, or an empty map for a context-based document.
+	 */
+	public @NotNull Map<String, String> getProperties() {
+		return properties == null ? Collections.emptyMap() : properties;
+	}
+
+	/**
+	 * Returns the sections of a context-based document, in document order.
+	 */
+	public @NotNull List<Section> getSections() {
+		return sections;
+	}
+
+	private static @NotNull Map<String, String> loadStandardProps(@NotNull List<String> lines) throws IOException {
+		Properties props = new Properties();
+		props.load(new LinesReader(lines));
+		Map<String, String> properties = new HashMap<>();
+		for (String key : props.stringPropertyNames())
+			properties.put(key, props.getProperty(key));
+		return Collections.unmodifiableMap(properties);
+	}
+
+	/**
+	 * Decodes a line which was read as ISO-8859-1 as UTF-8 instead. A line of
+	 * ASCII characters reads the same in both, and is returned as it is.
+	 */
+	private static @NotNull String toUtf8(@NotNull String line) {
+		for (int i = 0; i < line.length(); i++)
+			if (line.charAt(i) > 0x7F)
+				return new String(line.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+		return line;
+	}
+
+	private static @Nullable Entry parseLine(@NotNull String line) {
+		String newLine = line.trim();
+		if (line.contains(COMMENT))
+			newLine = newLine.substring(0, line.indexOf(COMMENT)).trim();
+		if (newLine.isEmpty())
+			return null;
+		if (isInclude(newLine))
+			return new Entry(Entry.Type.INCLUDE, null, getIncludePath(newLine));
+		if (newLine.contains(IDENTITY)) {
+			String key = newLine.substring(0, newLine.indexOf(IDENTITY)).trim();
+			String value = newLine.substring(newLine.indexOf(IDENTITY) + 1).trim();
+			return new Entry(Entry.Type.PAIR, key, value);
+		} else {
+			return new Entry(Entry.Type.UNPARSABLE, null, line);
+		}
+	}
+
+	private static boolean isInclude(@NotNull String line) {
+		if (!line.startsWith(INCLUDE) || line.length() == INCLUDE.length())
+			return false;
+		String rest = line.substring(INCLUDE.length());
+		return Character.isWhitespace(rest.charAt(0)) && !rest.trim().startsWith(IDENTITY);
+	}
+
+	private static @NotNull String getIncludePath(@NotNull String line) {
+		String path = line.substring(INCLUDE.length()).trim();
+		if (path.length() > 1 && (path.startsWith("<") && path.endsWith(">") || path.startsWith("\"") && path.endsWith("\"")))
+			path = path.substring(1, path.length() - 1).trim();
+		return path;
+	}
+
+	private static boolean isContext(@NotNull String line) {
+		line = line.trim();
+		return line.startsWith(LEFT_CONTEXT) && line.endsWith(RIGHT_CONTEXT);
+	}
+
+	/**
+	 * Collects the sections of a context-based document, a line at a time.
+	 */
+	private static final class Tokenizer {
+		private final @NotNull List<Section> sections = new ArrayList<>();
+		private @Nullable String name;
+		private @NotNull List<Entry> entries = new ArrayList<>();
+
+		void accept(@NotNull String line) {
+			if (isContext(line)) {
+				if (name != null || !entries.isEmpty())
+					sections.add(new Section(name, entries));
+				String trimmed = line.trim();
+				name = trimmed.substring(LEFT_CONTEXT.length(), trimmed.length() - RIGHT_CONTEXT.length());
+				entries = new ArrayList<>();
+			} else {
+				Entry entry = parseLine(line);
+				if (entry != null && (name != null || entry.isInclude()))
+					entries.add(entry);
+			}
+		}
+
+		@NotNull List<Section> finish() {
+			if (name != null || !entries.isEmpty())
+				sections.add(new Section(name, entries));
+			return Collections.unmodifiableList(sections);
+		}
+	}
+
+	/**
+	 * Reads a list of lines as a document, without joining them.
+	 */
+	private static final class LinesReader extends Reader {
+		private final @NotNull List<String> lines;
+		private int line;
+		private int position;
+
+		private LinesReader(@NotNull List<String> lines) {
+			this.lines = lines;
+		}
+
+		@Override
+		public int read(@NotNull char[] buffer, int offset, int length) {
+			if (line == lines.size())
+				return -1;
+			int count = 0;
+			while (count < length && line < lines.size()) {
+				String current = lines.get(line);
+				if (position == current.length()) {
+					buffer[offset + count++] = '\n';
+					line++;
+					position = 0;
+				} else {
+					int chunk = Math.min(length - count, current.length() - position);
+					current.getChars(position, position + chunk, buffer, offset + count);
+					position += chunk;
+					count += chunk;
+				}
+			}
+			return count;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * A named context section and its entries, in document order. The
+	 * includes which precede the first named section of a document are held
+	 * by a section without a name.
+	 */
+	public static final class Section {
+		private final @Nullable String name;
+		private final @NotNull List<Entry> entries;
+
+		private Section(@Nullable String name, @NotNull List<Entry> entries) {
+			this.name = name;
+			this.entries = Collections.unmodifiableList(entries);
+		}
+
+		public boolean isNamed(@Nullable String context) {
+			return context != null && name != null && name.equalsIgnoreCase(context);
+		}
+
+		public @Nullable String getName() {
+			return name;
+		}
+
+		public @NotNull List<Entry> getEntries() {
+			return entries;
+		}
+	}
+
+	/**
+	 * A key-value pair, an include directive, or a line which could not be
+	 * parsed. An unparsable line is only reported once its section is read.
+	 */
+	public static final class Entry {
+		enum Type { PAIR, INCLUDE, UNPARSABLE }
+
+		private final @NotNull Type type;
+		private final @Nullable String key;
+		private final @NotNull String value;
+
+		private Entry(@NotNull Type type, @Nullable String key, @NotNull String value) {
+			this.type = type;
+			this.key = key;
+			this.value = value;
+		}
+
+		public boolean isParsable() {
+			return type != Type.UNPARSABLE;
+		}
+
+		public boolean isInclude() {
+			return type == Type.INCLUDE;
+		}
+
+		/**
+		 * Returns the key of a key-value pair, or {@code null} otherwise.
+		 */
+		public @Nullable String getKey() {
+			return key;
+		}
+
+		/**
+		 * Returns the value of a key-value pair, the path of an include
+		 * directive, or the raw line if it could not be parsed.
+		 */
+		public @NotNull String getValue() {
+			return value;
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core.provider;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A cache of tokenized documents which are shared by content, such as the
+ * targets of <code>@include</code> directives. Documents are keyed by the hash
+ * of their content, so a document is tokenized once per JVM no matter how many
+ * paths it is reached through. The hash of a path is kept alongside its size
+ * and modification time, and a path is only read again once either changes.
+ * <p>
+ * Cached documents are not bound to a location. Relative includes within them
+ * are resolved by the reader against the path they were reached through.
+ * </p>
+ */
+public final class FragmentCache {
+	private final static FragmentCache SHARED = new FragmentCache();
+
+	private final @NotNull ConcurrentMap<Path, Stamp> stamps = new ConcurrentHashMap<>();
+	private final @NotNull ConcurrentMap<String, Fragment> fragments = new ConcurrentHashMap<>();
+
+	FragmentCache() {
+	}
+
+	public static @NotNull FragmentCache getShared() {
+		return SHARED;
+	}
+
+	public @NotNull Fragment get(@NotNull Path path) throws IOException {
+		BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		long size = attributes.size();
+		long modified = attributes.lastModifiedTime().toMillis();
+		Stamp stamp = stamps.get(path);
+		if (stamp != null && stamp.size == size && stamp.modified == modified) {
+			Fragment fragment = fragments.get(stamp.hash);
+			if (fragment != null)
+				return fragment;
+		}
+		byte[] content = Files.readAllBytes(path);
+		String hash = Base64.getEncoder().encodeToString(Utils.digest(content));
+		Fragment fragment;
+		try {
+			fragment = fragments.computeIfAbsent(hash, key -> tokenize(content));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		Stamp previous = stamps.put(path, new Stamp(size, modified, hash));
+		if (previous != null && !previous.hash.equals(hash))
+			evict(previous.hash);
+		return fragment;
+	}
+
+	public int size() {
+		return fragments.size();
+	}
+
+	public void clear() {
+		stamps.clear();
+		fragments.clear();
+	}
+
+	private void evict(@NotNull String hash) {
+		for (Stamp stamp : stamps.values())
+			if (stamp.hash.equals(hash))
+				return;
+		fragments.remove(hash);
+	}
+
+	private static @NotNull Fragment tokenize(@NotNull byte[] content) {
+		try {
+			return Fragment.read(new StreamConfigurationDataProvider(new ByteArrayInputStream(content)), null);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static class Stamp {
+		private final long size;
+		private final long modified;
+		private final @NotNull String hash;
+
+		private Stamp(long size, long modified, @NotNull String hash) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+		}
+	}
+}
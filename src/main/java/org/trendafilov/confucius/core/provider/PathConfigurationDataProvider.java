@@ -18,7 +18,6 @@ package org.trendafilov.confucius.core.provider;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -34,10 +33,14 @@ class PathConfigurationDataProvider implements ConfigurationDataProvider {
 	}
 
 	public @NotNull List<String> getAllLines() throws IOException {
-		return path == null ? new ArrayList<>() : Files.readAllLines(path, StandardCharsets.UTF_8);
+		return path == null ? new ArrayList<>() : Utils.readLines(Files.newInputStream(path));
 	}
 
 	public @Nullable InputStream getInputStream() throws IOException {
-		return path == null ? null : Files.newInputStream(path);
+		return path == null ? null : Utils.decompress(Files.newInputStream(path));
+	}
+
+	public @Nullable Path getLocation() {
+		return path;
 	}
 }
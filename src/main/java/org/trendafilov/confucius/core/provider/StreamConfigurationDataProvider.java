@@ -16,33 +16,49 @@
 
 package org.trendafilov.confucius.core.provider;
 
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Reads a configuration from a stream, which may be compressed. The stream is
+ * read once, as it is tokenized, unless its lines are requested, in which
+ * case its content is kept so that it can be read again.
+ */
 class StreamConfigurationDataProvider implements ConfigurationDataProvider {
 
 	private @Nullable InputStream inputStream;
+	private boolean decompressed;
 
 	public StreamConfigurationDataProvider(@Nullable InputStream inputStream) {
 		this.inputStream = inputStream;
 	}
 
 	public @NotNull List<String> getAllLines() throws IOException {
+		InputStream inputStream = getInputStream();
 		if (inputStream == null)
 			return new ArrayList<>();
-		String configurationString = Utils.streamToString(inputStream);
-		this.inputStream = new ByteArrayInputStream(configurationString.getBytes(StandardCharsets.UTF_8));
-		return new ArrayList<>(Arrays.asList(configurationString.split("\\r?\\n")));
+		byte[] content = inputStream.readAllBytes();
+		this.inputStream = new ByteArrayInputStream(content);
+		List<String> lines = new ArrayList<>();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+		for (String line = reader.readLine(); line != null; line = reader.readLine())
+			lines.add(line);
+		return lines;
 	}
 
-	public @Nullable InputStream getInputStream() {
+	public @Nullable InputStream getInputStream() throws IOException {
+		if (!decompressed) {
+			inputStream = Utils.decompress(inputStream);
+			decompressed = true;
+		}
 		return inputStream;
 	}
 }
@@ -16,34 +16,95 @@
 
 package org.trendafilov.confucius.core.provider;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Properties;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 class Utils {
 	private static final int DEFAULT_BUFFER_SIZE = 1024 * 4;
+	private static final String DIGEST_ALGORITHM = "SHA-256";
 
 	private Utils() {
 	}
 
-	static @NotNull String streamToString(@Nullable InputStream input) throws IOException {
-		if (input == null) return "";
+	/**
+	 * Returns a stream of the decompressed content of the given stream if it
+	 * starts with the magic bytes of a gzip stream, a zip archive or a zlib
+	 * stream, or of its plain content otherwise. Of a zip archive, the first
+	 * file is read. The given stream is closed if this method fails, or if an
+	 * archive holds no file.
+	 */
+	static @Nullable InputStream decompress(@Nullable InputStream input) throws IOException {
+		if (input == null)
+			return null;
+		BufferedInputStream stream = new BufferedInputStream(input, DEFAULT_BUFFER_SIZE * 2);
+		try {
+			stream.mark(4);
+			byte[] magic = stream.readNBytes(4);
+			stream.reset();
+			if (magic.length >= 2 && (magic[0] & 0xFF) == 0x1F && (magic[1] & 0xFF) == 0x8B)
+				return new GZIPInputStream(stream, DEFAULT_BUFFER_SIZE * 2);
+			if (magic.length == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4) {
+				ZipInputStream zip = new ZipInputStream(stream, StandardCharsets.UTF_8);
+				for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry())
+					if (!entry.isDirectory())
+						return zip;
+				zip.close();
+				return InputStream.nullInputStream();
+			}
+			if (magic.length >= 2 && (magic[0] & 0xFF) == 0x78 && isZlibLevel(magic[1] & 0xFF))
+				return new InflaterInputStream(stream, new Inflater(), DEFAULT_BUFFER_SIZE * 2);
+			return stream;
+		} catch (IOException | RuntimeException e) {
+			try {
+				stream.close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the lines of a possibly compressed stream, and closes it.
+	 */
+	static @NotNull List<String> readLines(@NotNull InputStream input) throws IOException {
+		List<String> lines = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(decompress(input), StandardCharsets.UTF_8))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine())
+				lines.add(line);
+		}
+		return lines;
+	}
 
-		StringWriter output = new StringWriter();
-		InputStreamReader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+	private static boolean isZlibLevel(int flags) {
+		return flags == 0x01 || flags == 0x5E || flags == 0x9C || flags == 0xDA;
+	}
 
-		char[] buffer = new char[DEFAULT_BUFFER_SIZE];
-		for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
-			output.write(buffer, 0, n);
+	static @NotNull MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
 		}
-		return output.toString();
+	}
+
+	static @NotNull byte[] digest(@NotNull byte[] content) {
+		return newDigest().digest(content);
 	}
 
 }
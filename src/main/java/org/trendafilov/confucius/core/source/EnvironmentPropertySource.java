@@ -0,0 +1,118 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core.source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.trendafilov.confucius.ConfigurationException;
+
+/**
+ * Exposes the environment variables which start with a prefix under relaxed
+ * names. With the prefix <code>APP_</code>, the variable
+ * <code>APP_DB_MAX_POOL</code> is canonically known as
+ * <code>db.max.pool</code> and may also be referenced as
+ * <code>db.max-pool</code>, <code>db.maxPool</code> or
+ * <code>APP_DB_MAX_POOL</code>. All relaxed forms are indexed once at load,
+ * so that resolving one is a single map access, but only the canonical names
+ * are part of {@link #getProperties()}. The prefix is required, so that
+ * variables which are not meant for the configuration do not become keys.
+ */
+class EnvironmentPropertySource implements RelaxedPropertySource {
+	private final static String SEPARATOR = "_";
+
+	private final @NotNull String name;
+	private final @NotNull Map<String, String> aliases = new HashMap<>();
+	private final @NotNull Map<String, String> properties;
+
+	public EnvironmentPropertySource(@NotNull String name, @NotNull Map<String, String> environment, @NotNull String prefix) {
+		if (prefix.isEmpty())
+			throw new ConfigurationException("Environment variable prefix cannot be empty");
+		this.name = name;
+		Map<String, String> properties = new HashMap<>();
+		for (Entry<String, String> entry : new TreeMap<>(environment).entrySet()) {
+			if (!entry.getKey().startsWith(prefix))
+				continue;
+			List<String> segments = segments(entry.getKey().substring(prefix.length()));
+			if (segments.isEmpty())
+				continue;
+			String canonical = String.join(".", segments);
+			if (properties.putIfAbsent(canonical, entry.getValue()) != null)
+				continue;
+			aliases.put(entry.getKey(), canonical);
+			for (String form : relaxedForms(segments))
+				aliases.putIfAbsent(form, canonical);
+		}
+		aliases.keySet().removeAll(properties.keySet());
+		this.properties = Collections.unmodifiableMap(properties);
+	}
+
+	public @NotNull String getName() {
+		return name;
+	}
+
+	public @Nullable String getProperty(@NotNull String key) {
+		String canonical = getCanonicalKey(key);
+		return canonical == null ? null : properties.get(canonical);
+	}
+
+	public @NotNull Map<String, String> getProperties() {
+		return properties;
+	}
+
+	public @Nullable String getCanonicalKey(@NotNull String key) {
+		return properties.containsKey(key) ? key : aliases.get(key);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	private static @NotNull List<String> segments(@NotNull String variable) {
+		List<String> segments = new ArrayList<>();
+		for (String segment : variable.toLowerCase(Locale.ROOT).split(SEPARATOR))
+			if (!segment.isEmpty())
+				segments.add(segment);
+		return segments;
+	}
+
+	/**
+	 * Returns every form where a dotted prefix is followed by a dashed or a
+	 * camel-cased remainder.
+	 */
+	private static @NotNull List<String> relaxedForms(@NotNull List<String> segments) {
+		List<String> forms = new ArrayList<>();
+		for (int split = 0; split < segments.size() - 1; split++) {
+			String head = split == 0 ? "" : String.join(".", segments.subList(0, split)) + ".";
+			List<String> tail = segments.subList(split, segments.size());
+			forms.add(head + String.join("-", tail));
+			StringBuilder camel = new StringBuilder(head).append(tail.get(0));
+			for (String segment : tail.subList(1, tail.size()))
+				camel.append(Character.toUpperCase(segment.charAt(0))).append(segment.substring(1));
+			forms.add(camel.toString());
+		}
+		return forms;
+	}
+}
@@ -0,0 +1,118 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core.source;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.trendafilov.confucius.ConfigurationException;
+
+/**
+ * A named layer of configuration properties. Layers are stacked by an
+ * {@code AbstractConfiguration}, where a layer closer to the top of the stack
+ * takes precedence over the layers below it.
+ *
+ * @since 1.4
+ */
+public interface PropertySource {
+
+	/**
+	 * Returns the name which identifies this layer within a stack.
+	 *
+	 * @return the name of the layer
+	 */
+	@NotNull String getName();
+
+	/**
+	 * Returns the value mapped to the specified key in this layer only.
+	 *
+	 * @param key
+	 *            of the configuration property
+	 * @return the associated value, or {@code null} if the layer does not
+	 *         contain the <b>key</b>
+	 */
+	@Nullable String getProperty(@NotNull String key);
+
+	/**
+	 * Returns an unmodifiable view of all key-value pairs held by this layer.
+	 *
+	 * @return the properties of the layer
+	 */
+	@NotNull Map<String, String> getProperties();
+
+	static @NotNull PropertySource of(@NotNull String name, @NotNull Map<String, String> properties) {
+		return new MapPropertySource(name, properties);
+	}
+
+	static @NotNull PropertySource of(@NotNull String name, @NotNull Properties properties) {
+		Map<String, String> map = new HashMap<>();
+		for (String key : properties.stringPropertyNames())
+			map.put(key, properties.getProperty(key));
+		return new MapPropertySource(name, map);
+	}
+
+	/**
+	 * Creates a layer from the environment variables of the current process
+	 * which start with the given prefix. The variables are exposed under
+	 * relaxed names with the prefix stripped, e.g. with the prefix
+	 * <code>APP_</code> the variable <code>APP_DB_MAX_POOL</code> may be
+	 * referenced as <code>db.max.pool</code>, <code>db.max-pool</code> or
+	 * <code>db.maxPool</code>. Values of the layer are never published as
+	 * System properties.
+	 *
+	 * @param prefix
+	 *            of the environment variables to include, which must not be
+	 *            empty, so that unrelated variables such as
+	 *            <code>JAVA_HOME</code> do not become keys
+	 * @return a layer named <code>environment</code>
+	 * @throws ConfigurationException
+	 *             if the prefix is empty
+	 */
+	static @NotNull PropertySource environment(@NotNull String prefix) {
+		return new EnvironmentPropertySource("environment", System.getenv(), prefix);
+	}
+
+	/**
+	 * Creates a layer from command-line arguments of the form
+	 * <code>--key=value</code> or <code>-Dkey=value</code>. Any other argument
+	 * is ignored.
+	 *
+	 * @param name
+	 *            of the layer
+	 * @param args
+	 *            the command-line arguments
+	 * @return a layer holding the parsed arguments
+	 */
+	static @NotNull PropertySource ofArguments(@NotNull String name, @NotNull String... args) {
+		Map<String, String> map = new HashMap<>();
+		for (String arg : args) {
+			String option;
+			if (arg.startsWith("--"))
+				option = arg.substring(2);
+			else if (arg.startsWith("-D"))
+				option = arg.substring(2);
+			else
+				continue;
+			int index = option.indexOf('=');
+			if (index > 0)
+				map.put(option.substring(0, index).trim(), option.substring(index + 1).trim());
+		}
+		return new MapPropertySource(name, map);
+	}
+}
@@ -0,0 +1,41 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core.source;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A layer which accepts several spellings of each of its keys. Only the
+ * canonical spelling is part of {@link #getProperties()}, while
+ * {@link #getProperty(String)} accepts any of them. A stack of layers falls
+ * back to {@link #getCanonicalKey(String)} for keys it does not hold.
+ *
+ * @since 1.4
+ */
+public interface RelaxedPropertySource extends PropertySource {
+
+	/**
+	 * Returns the canonical spelling of the specified key.
+	 *
+	 * @param key
+	 *            in any spelling accepted by this layer
+	 * @return the canonical key, or {@code null} if the layer does not
+	 *         recognize the <b>key</b>
+	 */
+	@Nullable String getCanonicalKey(@NotNull String key);
+}
@@ -0,0 +1,106 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConfigurableTest {
+
+	@Test
+	public void testSubset() {
+		Configurable config = of(Map.of("db.url", "jdbc", "db.pool.max", "10", "dbx", "x"));
+		assertEquals(Map.of("db.url", "jdbc", "db.pool.max", "10"), config.subset("db."));
+		List<String> keys = new ArrayList<>();
+		config.forEach("db.", (key, value) -> keys.add(key));
+		assertEquals(List.of("db.pool.max", "db.url"), keys);
+		assertTrue(config.subset("missing").isEmpty());
+	}
+
+	@Test
+	public void testLookup() {
+		Configurable config = of(Map.of("int", "42", "long", "8589934592", "double", "1.5", "text", "abc"));
+		assertEquals(Optional.of("abc"), config.tryGetString("text"));
+		assertEquals(Optional.empty(), config.tryGetString("missing"));
+		assertEquals(OptionalInt.of(42), config.tryGetInt("int"));
+		assertEquals(OptionalInt.empty(), config.tryGetInt("long"));
+		assertEquals(OptionalLong.of(8589934592L), config.tryGetLong("long"));
+		assertEquals(OptionalDouble.of(1.5), config.tryGetDouble("double"));
+		assertEquals(OptionalDouble.empty(), config.tryGetDouble("text"));
+		assertTrue(config.lookupInt("missing").isMissing());
+		assertTrue(config.lookupLong("text").isMalformed());
+		assertEquals(Double.valueOf(1.5), config.lookupDouble("double").get());
+	}
+
+	@Test
+	public void testQuantities() {
+		Configurable config = of(Map.of("timeout", "250ms", "sizes", "1KiB, 2MB", "bad", "10 parsecs"));
+		assertEquals(Duration.ofMillis(250), config.getDuration("timeout"));
+		assertEquals(Duration.ofSeconds(1), config.getDuration("missing", Duration.ofSeconds(1)));
+		assertEquals(List.of(Duration.ofMillis(250)), config.getDurationList("timeout"));
+		assertEquals(List.of(1024L, 2_000_000L), config.getDataSizeList("sizes"));
+		assertEquals(64, config.getDataSize("missing", 64));
+		assertThrows(NumberFormatException.class, () -> config.getDuration("bad"));
+		assertThrows(ConfigurationException.class, () -> config.getDataSize("missing"));
+	}
+
+	@Test
+	public void testReload() {
+		assertThrows(ConfigurationException.class, of(Map.of())::reload);
+	}
+
+	@Test
+	public void testSnapshot() {
+		assertThrows(ConfigurationException.class, of(Map.of())::snapshot);
+	}
+
+	/**
+	 * Returns a configuration which only implements the methods without a
+	 * default, over the given map.
+	 */
+	private static Configurable of(Map<String, String> properties) {
+		return (Configurable) Proxy.newProxyInstance(Configurable.class.getClassLoader(), new Class<?>[] { Configurable.class }, (proxy, method, args) -> {
+			if (method.isDefault())
+				return InvocationHandler.invokeDefault(proxy, method, args);
+			switch (method.getName()) {
+			case "keySet":
+				return properties.keySet();
+			case "getStringValue":
+				String value = properties.get((String) args[0]);
+				if (value == null && args.length == 1)
+					throw new ConfigurationException(String.format("Unable to find configuration value for key [%s]", args[0]));
+				return value == null ? args[1] : value;
+			default:
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+}
@@ -16,13 +16,18 @@
 
 package org.trendafilov.confucius;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -40,6 +45,11 @@ public class ConfigurationTest {
 		assertFalse(Configuration.getInstance().keySet().isEmpty());
 	}
 
+	@Test
+	public void testGetInstanceAsync() {
+		assertSame(Configuration.getInstance(), Configuration.getInstanceAsync(ForkJoinPool.commonPool()).join());
+	}
+
 	@Test
 	public void testBooleanDefaultReturn() {
 		assertFalse(config.getBooleanValue(TEST_KEY, false));
@@ -383,6 +393,107 @@ public class ConfigurationTest {
 		assertThrows(NumberFormatException.class, () -> config.getByteList(TEST_KEY));
 	}
 
+	@Test
+	public void testTryGetMissing() {
+		config.clearProperty(TEST_KEY);
+		assertTrue(config.tryGetString(TEST_KEY).isEmpty());
+		assertTrue(config.tryGetInt(TEST_KEY).isEmpty());
+		assertTrue(config.tryGetLong(TEST_KEY).isEmpty());
+		assertTrue(config.tryGetDouble(TEST_KEY).isEmpty());
+		LookupResult<Integer> result = config.lookupInt(TEST_KEY);
+		assertTrue(result.isMissing());
+		assertNull(result.getRawValue());
+		assertEquals(Integer.valueOf(7), result.orElse(7));
+		assertThrows(ConfigurationException.class, result::get);
+	}
+
+	@Test
+	public void testTryGetSetAndGet() {
+		config.setProperty(TEST_KEY, "923954957346");
+		assertEquals("923954957346", config.tryGetString(TEST_KEY).orElseThrow());
+		assertTrue(config.tryGetInt(TEST_KEY).isEmpty());
+		assertEquals(923954957346L, config.tryGetLong(TEST_KEY).orElseThrow());
+		assertEquals(923954957346D, config.tryGetDouble(TEST_KEY).orElseThrow());
+		assertEquals(Long.valueOf(923954957346L), config.lookupLong(TEST_KEY).get());
+		config.setProperty(TEST_KEY, -42);
+		assertEquals(-42, config.tryGetInt(TEST_KEY).orElseThrow());
+		assertEquals(LookupResult.Status.PRESENT, config.lookupInt(TEST_KEY).getStatus());
+		assertEquals(Integer.valueOf(-42), config.lookupInt(TEST_KEY).get());
+		config.setProperty(TEST_KEY, "1.5e3");
+		assertEquals(Double.valueOf(1500), config.lookupDouble(TEST_KEY).get());
+	}
+
+	@Test
+	public void testTryGetNotParsable() {
+		config.setProperty(TEST_KEY, "empty");
+		assertTrue(config.tryGetInt(TEST_KEY).isEmpty());
+		assertTrue(config.tryGetLong(TEST_KEY).isEmpty());
+		assertTrue(config.tryGetDouble(TEST_KEY).isEmpty());
+		LookupResult<Long> result = config.lookupLong(TEST_KEY);
+		assertTrue(result.isMalformed());
+		assertEquals("empty", result.getRawValue());
+		assertEquals(Long.valueOf(5), result.orElse(5L));
+		assertThrows(NumberFormatException.class, result::get);
+		assertTrue(config.lookupDouble(TEST_KEY).isMalformed());
+	}
+
+	@Test
+	public void testDurationSetAndGet() {
+		config.setProperty(TEST_KEY, "250ms");
+		assertEquals(Duration.ofMillis(250), config.getDuration(TEST_KEY));
+		assertEquals(Duration.ofMillis(250), config.getDuration(TEST_KEY, Duration.ZERO));
+		config.setProperty(TEST_KEY, "30s");
+		assertEquals(Duration.ofSeconds(30), config.getDuration(TEST_KEY));
+		config.clearProperty(TEST_KEY);
+		assertEquals(Duration.ZERO, config.getDuration(TEST_KEY, Duration.ZERO));
+		assertThrows(ConfigurationException.class, () -> config.getDuration(TEST_KEY));
+	}
+
+	@Test
+	public void testDataSizeSetAndGet() {
+		config.setProperty(TEST_KEY, "64MiB");
+		assertEquals(64L << 20, config.getDataSize(TEST_KEY));
+		assertEquals(64L << 20, config.getDataSize(TEST_KEY, 1));
+		config.setProperty(TEST_KEY, "1KB");
+		assertEquals(1000, config.getDataSize(TEST_KEY));
+		config.clearProperty(TEST_KEY);
+		assertEquals(1, config.getDataSize(TEST_KEY, 1));
+		assertThrows(ConfigurationException.class, () -> config.getDataSize(TEST_KEY));
+	}
+
+	@Test
+	public void testDurationList() {
+		config.setProperty(TEST_KEY, "1s, 2m,3h");
+		assertEquals(List.of(Duration.ofSeconds(1), Duration.ofMinutes(2), Duration.ofHours(3)), config.getDurationList(TEST_KEY));
+		assertSame(config.getDurationList(TEST_KEY), config.getDurationList(TEST_KEY));
+		assertEquals(List.of(Duration.ofSeconds(1), Duration.ofMinutes(2), Duration.ofHours(3)), config.getDurationList(TEST_KEY, ",\\s*"));
+		assertThrows(UnsupportedOperationException.class, () -> config.getDurationList(TEST_KEY).clear());
+	}
+
+	@Test
+	public void testDataSizeList() {
+		config.setProperty(TEST_KEY, "1K, 2M");
+		assertEquals(List.of(1024L, 2L << 20), config.getDataSizeList(TEST_KEY));
+		config.setProperty(TEST_KEY, "1K; 2M");
+		assertEquals(List.of(1024L, 2L << 20), config.getDataSizeList(TEST_KEY, ";"));
+	}
+
+	@Test
+	public void testNotParsableDuration() {
+		config.setProperty(TEST_KEY, "empty");
+		assertThrows(NumberFormatException.class, () -> config.getDuration(TEST_KEY));
+		assertThrows(NumberFormatException.class, () -> config.getDuration(TEST_KEY, Duration.ZERO));
+		assertThrows(NumberFormatException.class, () -> config.getDurationList(TEST_KEY));
+	}
+
+	@Test
+	public void testNotParsableDataSize() {
+		config.setProperty(TEST_KEY, "empty");
+		assertThrows(NumberFormatException.class, () -> config.getDataSize(TEST_KEY));
+		assertThrows(NumberFormatException.class, () -> config.getDataSize(TEST_KEY, 1));
+		assertThrows(NumberFormatException.class, () -> config.getDataSizeList(TEST_KEY));
+	}
+
 	@AfterEach
 	public void tearDown() {
 		config.reset();
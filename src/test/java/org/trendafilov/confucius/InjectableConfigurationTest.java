@@ -22,13 +22,40 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
+import org.trendafilov.confucius.core.AbstractConfiguration;
+import org.trendafilov.confucius.core.ConfigurationDiff;
+import org.trendafilov.confucius.core.MemoryReport;
+import org.trendafilov.confucius.core.Storage;
+import org.trendafilov.confucius.core.source.PropertySource;
+import org.trendafilov.confucius.core.source.RelaxedPropertySource;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class InjectableConfigurationTest {
 	private final static String TEST_CONTEXT = "Test2";
@@ -90,12 +117,554 @@ public class InjectableConfigurationTest {
 		assertThrows(ConfigurationException.class, () -> new InjectableConfiguration((String) null, null));
 	}
 	
+	@Test
+	public void testLoadAsync() throws IOException {
+		File temp = writeFile(true);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			CompletableFuture<Configurable> first = InjectableConfiguration.loadAsync(temp.toPath(), TEST_CONTEXT, executor);
+			CompletableFuture<Configurable> second = InjectableConfiguration.loadAsync(temp.getAbsolutePath(), null, executor);
+			assertEquals("value456", first.join().getStringValue("key456"));
+			assertEquals("value123", second.join().getStringValue("key123"));
+			CompletableFuture<Configurable> failed = InjectableConfiguration.loadAsync(temp.getAbsolutePath() + ".missing", null, executor);
+			CompletionException e = assertThrows(CompletionException.class, failed::join);
+			assertTrue(e.getCause() instanceof ConfigurationException);
+		} finally {
+			executor.shutdown();
+			temp.delete();
+		}
+	}
+
+	@Test
+	public void testLazyLoad() throws IOException {
+		System.setProperty("conf.lazy", "true");
+		File temp = writeFile(true);
+		InjectableConfiguration missing = new InjectableConfiguration(temp.getAbsolutePath() + ".missing", null);
+		assertThrows(ConfigurationException.class, () -> missing.getStringValue("key123"));
+		InjectableConfiguration config = new InjectableConfiguration(temp.getAbsolutePath(), TEST_CONTEXT);
+		assertEquals("value456", config.getStringValue("key456"));
+		assertEquals(System.getProperty("java.vm.version"), config.getStringValue("java.vm.version"));
+		assertEquals(AbstractConfiguration.FILE_SOURCE, config.getSourceName("key456"));
+		assertEquals(AbstractConfiguration.SYSTEM_SOURCE, config.getSourceName("java.vm.version"));
+		assertTrue(config.keySet().contains("key456"));
+		assertTrue(config.keySet().contains("java.vm.version"));
+		config.setProperty("key456", "runtime");
+		config.reset();
+		assertEquals("value456", config.getStringValue("key456"));
+		temp.delete();
+	}
+
+	@Test
+	public void testLazyLoadRetry() throws IOException {
+		System.setProperty("conf.lazy", "true");
+		File temp = writeFile(true);
+		File later = new File(temp.getAbsolutePath() + ".later");
+		try {
+			InjectableConfiguration config = new InjectableConfiguration(later.getAbsolutePath(), TEST_CONTEXT);
+			assertThrows(ConfigurationException.class, () -> config.getStringValue("key456"));
+			Files.copy(temp.toPath(), later.toPath());
+			assertEquals("value456", config.getStringValue("key456"));
+			assertEquals(AbstractConfiguration.FILE_SOURCE, config.getSourceName("key456"));
+		} finally {
+			later.delete();
+			temp.delete();
+		}
+	}
+
+	@Test
+	public void testEnvironmentIsNotExported() throws IOException {
+		File temp = writeFile(true);
+		String javaHome = System.getProperty("java.home");
+		String userHome = System.getProperty("user.home");
+		try {
+			InjectableConfiguration config = new InjectableConfiguration(temp.getAbsolutePath(), TEST_CONTEXT);
+			assertThrows(ConfigurationException.class, () -> PropertySource.environment(""));
+			config.addFirst(PropertySource.environment("CONFUCIUS_TEST_"));
+			config.addFirst(new RelaxedPropertySource() {
+				public @NotNull String getName() {
+					return "relaxed";
+				}
+
+				public @Nullable String getProperty(@NotNull String key) {
+					String canonical = getCanonicalKey(key);
+					return canonical == null ? null : getProperties().get(canonical);
+				}
+
+				public @NotNull Map<String, String> getProperties() {
+					return Map.of("java.home", "/elsewhere", "user.home", "/nowhere", "key123", "relaxed");
+				}
+
+				public @Nullable String getCanonicalKey(@NotNull String key) {
+					return getProperties().containsKey(key) ? key : null;
+				}
+			});
+			assertEquals("/elsewhere", config.getStringValue("java.home"));
+			assertEquals("relaxed", config.getStringValue("key123"));
+			assertEquals(javaHome, System.getProperty("java.home"));
+			assertEquals(userHome, System.getProperty("user.home"));
+			assertEquals("value123", System.getProperty("key123"));
+			config.removeSource("relaxed");
+			assertEquals(javaHome, config.getStringValue("java.home"));
+			assertEquals(javaHome, System.getProperty("java.home"));
+		} finally {
+			temp.delete();
+		}
+	}
+
+	@Test
+	public void testLayeredSources() throws IOException {
+		File temp = writeFile(true);
+		InjectableConfiguration config = new InjectableConfiguration(temp.getAbsolutePath(), TEST_CONTEXT);
+		assertEquals(AbstractConfiguration.FILE_SOURCE, config.getSourceName("key123"));
+		assertEquals(AbstractConfiguration.SYSTEM_SOURCE, config.getSourceName("java.vm.version"));
+		config.addFirst(PropertySource.of("overrides", Map.of("key123", "override")));
+		assertEquals("override", config.getStringValue("key123"));
+		assertEquals("overrides", config.getSourceName("key123"));
+		config.setProperty("key123", "runtime");
+		assertEquals(AbstractConfiguration.RUNTIME_SOURCE, config.getSourceName("key123"));
+		config.removeSource("overrides");
+		assertEquals("runtime", config.getStringValue("key123"));
+		config.clearProperty("key123");
+		assertNull(config.getSourceName("key123"));
+		config.reset();
+		assertEquals("value123", config.getStringValue("key123"));
+		assertNull(config.getSources().stream().filter(s -> s.getName().equals("overrides")).findFirst().orElse(null));
+		temp.delete();
+	}
+
+	@Test
+	public void testResetRestoresInitialState() throws IOException {
+		File temp = writeFile(true);
+		System.setProperty("confucius.foreign", "foreign");
+		InjectableConfiguration config = new InjectableConfiguration(temp.getAbsolutePath(), TEST_CONTEXT);
+		config.setProperty("key123", "changed");
+		config.setProperty("confucius.added", "added");
+		config.addFirst(PropertySource.of("overrides", Map.of("key456", "override")));
+		assertEquals("override", System.getProperty("key456"));
+		System.setProperty("confucius.foreign", "changed");
+		config.reset();
+		assertEquals("value123", config.getStringValue("key123"));
+		assertEquals("value123", System.getProperty("key123"));
+		assertEquals("value456", System.getProperty("key456"));
+		assertNull(System.getProperty("confucius.added"));
+		assertEquals("changed", System.getProperty("confucius.foreign"));
+		System.clearProperty("confucius.foreign");
+		temp.delete();
+	}
+
+	@Test
+	public void testReload() throws IOException {
+		File temp = writeFile(true);
+		InjectableConfiguration config = new InjectableConfiguration(temp.getAbsolutePath(), TEST_CONTEXT);
+		config.setProperty("confucius.runtime", "runtime");
+		try (BufferedWriter bw = new BufferedWriter(new FileWriter(temp))) {
+			bw.write("key123=reloaded");
+		}
+		config.reset();
+		assertEquals("value123", config.getStringValue("key123"));
+		config.setProperty("confucius.runtime", "runtime");
+		config.reload();
+		assertEquals("reloaded", config.getStringValue("key123"));
+		assertEquals("reloaded", System.getProperty("key123"));
+		assertEquals("runtime", config.getStringValue("confucius.runtime"));
+		config.reset();
+		assertEquals("reloaded", config.getStringValue("key123"));
+		assertNull(config.getStringValue("confucius.runtime", null));
+		temp.delete();
+	}
+
+	@Test
+	public void testIsolated() {
+		InjectableConfiguration first = InjectableConfiguration.isolated(stream("isolated.key=first\nisolated.first=1"), null);
+		InjectableConfiguration second = InjectableConfiguration.isolated(stream("isolated.key=second"), null);
+		assertEquals("first", first.getStringValue("isolated.key"));
+		assertEquals("second", second.getStringValue("isolated.key"));
+		assertNull(second.getStringValue("isolated.first", null));
+		assertNull(first.getStringValue("java.vm.version", null));
+		assertNull(System.getProperty("isolated.key"));
+		first.setProperty("isolated.key", "changed");
+		assertEquals("changed", first.getStringValue("isolated.key"));
+		assertEquals("changed", first.getProperties().getProperty("isolated.key"));
+		assertEquals("second", second.getStringValue("isolated.key"));
+		assertNull(System.getProperty("isolated.key"));
+		first.reset();
+		assertEquals("first", first.getStringValue("isolated.key"));
+		assertEquals(2, first.keySet().size());
+		Set<String> keys = first.keySet();
+		keys.remove("isolated.key");
+		first.setProperty("isolated.other", "other");
+		assertEquals(Set.of("isolated.first"), keys);
+		assertEquals(3, first.keySet().size());
+	}
+
+	@Test
+	public void testSnapshot() throws Exception {
+		InjectableConfiguration config = InjectableConfiguration.isolated(stream("first=1\nsecond=2"), null);
+		Configurable snapshot = config.snapshot();
+		config.setProperties(Map.of("first", "changed", "second", "changed"));
+		assertEquals("changed", config.getStringValue("first"));
+		assertEquals("1", snapshot.getStringValue("first"));
+		assertEquals("2", snapshot.getStringValue("second"));
+		assertEquals("1", snapshot.getProperties().getProperty("first"));
+		assertSame(snapshot, snapshot.snapshot());
+		assertThrows(ConfigurationException.class, () -> snapshot.setProperty("first", "other"));
+		assertThrows(ConfigurationException.class, snapshot::reset);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			config.reset();
+			Configurable current = config.snapshot();
+			config.setProperty("second", "later");
+			assertEquals("1,2", executor.submit(() -> current.getStringValue("first") + "," + current.getStringValue("second")).get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testFreeze() {
+		InjectableConfiguration config = InjectableConfiguration.isolated(stream("first=1\nsecond=2"), null);
+		config.setProperty("third", "3");
+		assertFalse(config.isFrozen());
+		config.freeze();
+		assertTrue(config.isFrozen());
+		assertEquals("1", config.getStringValue("first"));
+		assertEquals(3, config.getIntValue("third"));
+		assertEquals("default", config.getStringValue("missing", "default"));
+		assertEquals(Map.of("second", "2"), config.subset("s"));
+		assertSame(config, config.snapshot());
+		assertThrows(ConfigurationException.class, () -> config.setProperty("first", "other"));
+		assertThrows(ConfigurationException.class, () -> config.clearProperty("first"));
+		assertThrows(ConfigurationException.class, config::reset);
+		assertThrows(ConfigurationException.class, config::reload);
+		assertThrows(ConfigurationException.class, config::freeze);
+		assertEquals("1", config.getStringValue("first"));
+	}
+
+	@Test
+	public void testSubset() {
+		InjectableConfiguration config = InjectableConfiguration.isolated(stream("db.pool.max=10\ndb.pool.min=1\ndb.url=jdbc"), null);
+		Configurable snapshot = config.snapshot();
+		config.setProperty("db.pool.idle", "5");
+		assertEquals(Map.of("db.pool.idle", "5", "db.pool.max", "10", "db.pool.min", "1"), config.subset("db.pool."));
+		assertEquals(Map.of("db.pool.max", "10", "db.pool.min", "1"), snapshot.subset("db.pool."));
+		StringBuilder keys = new StringBuilder();
+		config.forEach("db.", (key, value) -> keys.append(key).append(';'));
+		assertEquals("db.pool.idle;db.pool.max;db.pool.min;db.url;", keys.toString());
+	}
+
+	@Test
+	public void testMemoryReport() {
+		StringBuilder conf = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+			conf.append("flag").append(i).append("=true\n");
+		InjectableConfiguration config = InjectableConfiguration.isolated(stream(conf.toString()), null);
+		MemoryReport report = config.getMemoryReport();
+		assertEquals(100, report.getKeyCount());
+		assertEquals(1, report.getValueCount());
+		assertTrue(report.getKeyBytes() > report.getValueBytes());
+		assertTrue(report.getIndexBytes() > 0);
+		assertEquals(report.getKeyBytes() + report.getValueBytes() + report.getIndexBytes(), report.getTotalBytes());
+	}
+
+	@Test
+	public void testOffHeapStorage() {
+		InjectableConfiguration config = InjectableConfiguration.isolated(stream("db.url=jdbc\ndb.user=sa\nflag=true"), null, Storage.OFF_HEAP);
+		assertEquals("jdbc", config.getStringValue("db.url"));
+		assertTrue(config.getBooleanValue("flag"));
+		assertNull(config.getStringValue("missing", null));
+		config.setProperty("flag", false);
+		assertFalse(config.getBooleanValue("flag"));
+		assertEquals(Map.of("db.url", "jdbc", "db.user", "sa"), config.subset("db."));
+		assertTrue(config.getMemoryReport().getOffHeapBytes() > 0);
+		config.reset();
+		assertTrue(config.getBooleanValue("flag"));
+	}
+
+	@Test
+	public void testSharedFile() throws IOException {
+		Path directory = Files.createTempDirectory("confuciusTest");
+		Path file = directory.resolve("shared.bin");
+		try {
+			InjectableConfiguration writer = InjectableConfiguration.isolated(stream("db.url=jdbc\nflag=true"), null);
+			writer.setProperty("runtime.key", "runtime");
+			assertEquals(1, writer.publish(file));
+			InjectableConfiguration reader = InjectableConfiguration.shared(file);
+			assertEquals("jdbc", reader.getStringValue("db.url"));
+			assertEquals("runtime", reader.getStringValue("runtime.key"));
+			assertTrue(reader.getBooleanValue("flag"));
+			assertFalse(reader.refresh());
+			Configurable before = reader.snapshot();
+
+			reader.setProperty("local", "1");
+			writer.setProperty("db.url", "changed");
+			assertEquals(2, writer.publish(file));
+			assertTrue(reader.refresh());
+			assertEquals("changed", reader.getStringValue("db.url"));
+			assertEquals("1", reader.getStringValue("local"));
+			assertEquals("jdbc", before.getStringValue("db.url"));
+			assertFalse(reader.refresh());
+			assertThrows(ConfigurationException.class, writer::refresh);
+		} finally {
+			try (Stream<Path> files = Files.list(directory)) {
+				for (Path path : (Iterable<Path>) files::iterator)
+					Files.delete(path);
+			}
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void testChangeJournal() throws IOException {
+		Path directory = Files.createTempDirectory("confuciusTest");
+		Path file = directory.resolve("changes.journal");
+		try {
+			InjectableConfiguration writer = InjectableConfiguration.isolated(stream("first=1\nsecond=2"), null);
+			InjectableConfiguration reader = InjectableConfiguration.isolated(stream("first=1\nsecond=2"), null);
+			writer.setProperty("first", "before");
+			writer.recordChanges(file);
+			writer.setProperty("third", "3");
+			reader.followChanges(file);
+			assertEquals("3", reader.getStringValue("third"));
+			assertEquals("1", reader.getStringValue("first"));
+			assertFalse(reader.refresh());
+
+			writer.setProperties(Map.of("first", "changed", "fourth", "4"));
+			writer.clearProperty("second");
+			assertTrue(reader.refresh());
+			assertEquals("changed", reader.getStringValue("first"));
+			assertEquals("4", reader.getStringValue("fourth"));
+			assertNull(reader.getStringValue("second", null));
+
+			writer.reset();
+			assertTrue(reader.refresh());
+			assertEquals("1", reader.getStringValue("first"));
+			assertEquals("2", reader.getStringValue("second"));
+			assertNull(reader.getStringValue("third", null));
+		} finally {
+			try (Stream<Path> files = Files.list(directory)) {
+				for (Path path : (Iterable<Path>) files::iterator)
+					Files.delete(path);
+			}
+			Files.delete(directory);
+		}
+	}
+
+	@Test
+	public void testPersistChanges() throws Exception {
+		Path file = Files.createTempFile("confuciusTest", ".cfg");
+		try {
+			Files.writeString(file, "[Default]\nname = default\n\n[test]\nport = 80\n");
+			InjectableConfiguration config = InjectableConfiguration.isolated(file, "test");
+			config.persistChanges(Duration.ofMillis(20));
+			config.setProperty("port", 8080);
+			config.setProperties(Map.of("host", "localhost"));
+			config.clearProperty("missing");
+			long deadline = System.nanoTime() + 5_000_000_000L;
+			while (!Files.readString(file).contains("host") && System.nanoTime() < deadline)
+				Thread.sleep(10);
+			InjectableConfiguration restarted = InjectableConfiguration.isolated(file, "test");
+			assertEquals(8080, restarted.getIntValue("port"));
+			assertEquals("localhost", restarted.getStringValue("host"));
+			assertEquals("default", restarted.getStringValue("name"));
+
+			config.persistChanges(Duration.ofHours(1));
+			config.setProperty("port", 9090);
+			assertEquals(8080, InjectableConfiguration.isolated(file, "test").getIntValue("port"));
+			config.flushChanges();
+			assertEquals(9090, InjectableConfiguration.isolated(file, "test").getIntValue("port"));
+			assertThrows(ConfigurationException.class, () -> InjectableConfiguration.isolated(stream("a=1"), null).persistChanges(Duration.ZERO));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testPollForChanges() throws Exception {
+		Path file = Files.createTempFile("confuciusTest", ".cfg");
+		try {
+			Files.writeString(file, "[Default]\nname = default\n\n[test]\nport = 80\n");
+			InjectableConfiguration config = InjectableConfiguration.isolated(file, "test");
+			assertThrows(ConfigurationException.class, config::reloadIfChanged);
+			config.pollForChanges(Duration.ofHours(1));
+			assertFalse(config.reloadIfChanged());
+			config.setProperty("port", 8080);
+			Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+			assertFalse(config.reloadIfChanged());
+			assertEquals(8080, config.getIntValue("port"));
+
+			Files.writeString(file, "[Default]\nname = changed\n\n[test]\nport = 80\n");
+			assertTrue(config.reloadIfChanged());
+			assertEquals("changed", config.getStringValue("name"));
+			assertEquals(8080, config.getIntValue("port"));
+
+			config.setReloadQuietPeriod(Duration.ofMillis(50));
+			config.pollForChanges(Duration.ofMillis(10));
+			for (int i = 0; i < 5; i++)
+				Files.writeString(file, "[Default]\nname = partial" + i + "\n");
+			Files.writeString(file, "[Default]\nname = polled\n");
+			long deadline = System.nanoTime() + 5_000_000_000L;
+			while (!"polled".equals(config.getStringValue("name", null)) && System.nanoTime() < deadline)
+				Thread.sleep(10);
+			assertEquals("polled", config.getStringValue("name"));
+			config.stopPolling();
+			assertThrows(ConfigurationException.class, config::reloadIfChanged);
+			assertThrows(ConfigurationException.class, () -> config.pollForChanges(Duration.ZERO));
+			assertThrows(ConfigurationException.class, () -> InjectableConfiguration.isolated(stream("a=1"), null).pollForChanges(Duration.ofSeconds(1)));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testRequestReload() throws Exception {
+		Path file = Files.createTempFile("confuciusTest", ".cfg");
+		try {
+			Files.writeString(file, "[Default]\nname = default\n");
+			InjectableConfiguration config = InjectableConfiguration.isolated(file, null);
+			config.setReloadQuietPeriod(Duration.ofMillis(100));
+			for (int i = 0; i < 5; i++) {
+				Files.writeString(file, "[Default]\nname = partial" + i + "\n");
+				config.requestReload();
+			}
+			assertEquals("default", config.getStringValue("name"));
+			Files.writeString(file, "[Default]\nname = final\n");
+			config.requestReload();
+			long deadline = System.nanoTime() + 5_000_000_000L;
+			while (!"final".equals(config.getStringValue("name")) && System.nanoTime() < deadline)
+				Thread.sleep(10);
+			assertEquals("final", config.getStringValue("name"));
+			Files.writeString(file, "[Default]\nname = cancelled\n");
+			config.requestReload();
+			config.stopPolling();
+			Thread.sleep(300);
+			assertEquals("final", config.getStringValue("name"));
+			assertThrows(ConfigurationException.class, () -> config.setReloadQuietPeriod(Duration.ofMillis(-1)));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testChangeListener() throws IOException {
+		Path file = Files.createTempFile("confuciusTest", ".cfg");
+		try {
+			Files.writeString(file, "[Default]\nkept = 1\nmodified = 1\nremoved = 1\n");
+			InjectableConfiguration config = InjectableConfiguration.isolated(file, null);
+			List<ConfigurationDiff> diffs = new ArrayList<>();
+			Consumer<ConfigurationDiff> listener = diffs::add;
+			config.addChangeListener(listener);
+			config.addChangeListener(diff -> {
+				throw new IllegalStateException("listener failed");
+			});
+
+			Files.writeString(file, "[Default]\nkept = 1\nmodified = 2\nadded = 2\n");
+			config.reload();
+			assertEquals(1, diffs.size());
+			assertEquals(Set.of("added"), diffs.get(0).getAdded());
+			assertEquals(Set.of("removed"), diffs.get(0).getRemoved());
+			assertEquals(Set.of("modified"), diffs.get(0).getModified());
+
+			config.reload();
+			config.setProperty("kept", 1);
+			assertEquals(1, diffs.size());
+
+			config.setProperty("kept", 2);
+			config.clearProperty("kept");
+			config.setProperties(Map.of("added", "3", "modified", "2"));
+			assertEquals(4, diffs.size());
+			assertEquals("2", diffs.get(1).getValue("kept"));
+			assertEquals(Set.of("kept"), diffs.get(2).getRemoved());
+			assertEquals(Set.of("added"), diffs.get(3).getKeys());
+
+			config.reset();
+			assertEquals(5, diffs.size());
+			assertEquals("2", diffs.get(4).getValue("added"));
+
+			config.removeChangeListener(listener);
+			diffs.clear();
+			config.setProperty("kept", 3);
+			assertTrue(diffs.isEmpty());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testParsedValueCache() throws IOException {
+		Path file = Files.createTempFile("confuciusTest", ".cfg");
+		try {
+			Files.writeString(file, "[Default]\ntimeout = 250ms\nsizes = 1K, 2K\n");
+			InjectableConfiguration config = InjectableConfiguration.isolated(file, null);
+			Duration timeout = config.getDuration("timeout");
+			assertEquals(Duration.ofMillis(250), timeout);
+			assertSame(timeout, config.getDuration("timeout"));
+			List<Long> sizes = config.getDataSizeList("sizes");
+			assertSame(sizes, config.getDataSizeList("sizes"));
+
+			config.setProperty("timeout", "1s");
+			assertEquals(Duration.ofSeconds(1), config.getDuration("timeout"));
+			assertSame(sizes, config.getDataSizeList("sizes"));
+
+			Files.writeString(file, "[Default]\ntimeout = 250ms\nsizes = 3K\n");
+			config.reload();
+			assertEquals(Duration.ofSeconds(1), config.getDuration("timeout"));
+			assertEquals(List.of(3072L), config.getDataSizeList("sizes"));
+
+			config.reset();
+			assertEquals(Duration.ofMillis(250), config.getDuration("timeout"));
+			config.clearProperty("timeout");
+			assertNull(config.getDuration("timeout", null));
+
+			Configurable snapshot = config.snapshot();
+			config.setProperty("sizes", "4K");
+			assertEquals(List.of(3072L), snapshot.getDataSizeList("sizes"));
+			assertEquals(List.of(4096L), config.getDataSizeList("sizes"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testPersistChangesToPropertiesFile() throws IOException {
+		Path file = Files.createTempFile("confuciusTest", ".properties");
+		try {
+			Files.writeString(file, "db.url=jdbc\nname=app\n");
+			InjectableConfiguration config = InjectableConfiguration.isolated(file, null);
+			assertThrows(ConfigurationException.class, () -> config.persistChanges(Duration.ZERO));
+			assertEquals("db.url=jdbc\nname=app\n", Files.readString(file));
+			assertEquals("jdbc", InjectableConfiguration.isolated(file, null).getStringValue("db.url"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testCompressedFile() throws IOException {
+		Path file = Files.createTempFile("confuciusTest", ".cfg.gz");
+		try {
+			try (OutputStream output = new GZIPOutputStream(Files.newOutputStream(file))) {
+				output.write("[Default]\nname = default\n[test]\nport = 80\n".getBytes(StandardCharsets.UTF_8));
+			}
+			InjectableConfiguration config = InjectableConfiguration.isolated(file, "test");
+			assertEquals("default", config.getStringValue("name"));
+			assertEquals(80, config.getIntValue("port"));
+			assertEquals(80, InjectableConfiguration.isolated(Files.newInputStream(file), "test").getIntValue("port"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
 	@AfterEach
 	public void tearDown() {
 		System.clearProperty("conf.properties");
 		System.clearProperty("conf.context");
+		System.clearProperty("conf.lazy");
 	}
 	
+	private InputStream stream(String conf) {
+		return new ByteArrayInputStream(conf.getBytes(StandardCharsets.UTF_8));
+	}
+
 	private File writeFile(boolean hasContext) throws IOException {
 		File temp = File.createTempFile("confuciusTest", ".tmp");
 		BufferedWriter bw = new BufferedWriter(new FileWriter(temp));
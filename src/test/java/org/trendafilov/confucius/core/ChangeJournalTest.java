@@ -0,0 +1,167 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.trendafilov.confucius.ConfigurationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChangeJournalTest {
+	private Path directory;
+	private Path file;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("confuciusTest");
+		file = directory.resolve("changes.journal");
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			for (Path path : (Iterable<Path>) files::iterator)
+				Files.delete(path);
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testTailing() throws IOException {
+		try (ChangeJournal.Tailer tailer = new ChangeJournal.Tailer(file)) {
+			assertEquals(List.of(), tailer.poll());
+			try (ChangeJournal.Writer writer = new ChangeJournal.Writer(file)) {
+				writer.append(Map.of("a", "1"));
+				List<ChangeJournal.Change> changes = tailer.poll();
+				assertEquals(1, changes.size());
+				assertEquals("a", changes.get(0).getKey());
+				assertEquals("1", changes.get(0).getValue());
+				assertEquals(1, changes.get(0).getVersion());
+				assertTrue(changes.get(0).getTimestamp() > 0);
+				assertEquals(List.of(), tailer.poll());
+
+				writer.append(Collections.singletonMap("a", null));
+				writer.appendReset();
+				changes = tailer.poll();
+				assertEquals(2, changes.size());
+				assertNull(changes.get(0).getValue());
+				assertTrue(changes.get(1).isReset());
+				assertEquals(3, tailer.getVersion());
+			}
+		}
+	}
+
+	@Test
+	public void testIncompleteBatch() throws IOException {
+		try (ChangeJournal.Writer writer = new ChangeJournal.Writer(file)) {
+			writer.append(Map.of("a", "1"));
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			channel.write(ByteBuffer.allocate(12).putInt(64).putInt(1).putInt(0).flip());
+		}
+		try (ChangeJournal.Tailer tailer = new ChangeJournal.Tailer(file)) {
+			assertEquals(1, tailer.poll().size());
+		}
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			long size = channel.size();
+			channel.truncate(size - 12);
+			channel.write(ByteBuffer.allocate(16).putInt(8, 1).putInt(12, 1), size - 12);
+		}
+		try (ChangeJournal.Tailer tailer = new ChangeJournal.Tailer(file)) {
+			assertEquals(1, tailer.poll().size());
+		}
+		try (ChangeJournal.Writer writer = new ChangeJournal.Writer(file)) {
+			assertEquals(1, writer.getVersion());
+			writer.append(Map.of("b", "2"));
+		}
+		try (ChangeJournal.Tailer tailer = new ChangeJournal.Tailer(file)) {
+			assertEquals(2, tailer.poll().size());
+		}
+	}
+
+	@Test
+	public void testCompaction() throws IOException {
+		try (ChangeJournal.Writer writer = new ChangeJournal.Writer(file);
+				ChangeJournal.Tailer tailer = new ChangeJournal.Tailer(file);
+				ChangeJournal.Tailer late = new ChangeJournal.Tailer(file)) {
+			writer.append(Map.of("a", "1", "b", "2"));
+			assertEquals(2, tailer.poll().size());
+			writer.append(Collections.singletonMap("b", null));
+			writer.append(Map.of("a", "3"));
+			long size = Files.size(file);
+			writer.compact();
+			assertTrue(Files.size(file) < size);
+
+			List<ChangeJournal.Change> changes = tailer.poll();
+			assertEquals(2, changes.size());
+			assertEquals(4, tailer.getVersion());
+			writer.append(Map.of("c", "4"));
+			changes = tailer.poll();
+			assertEquals(1, changes.size());
+			assertEquals("c", changes.get(0).getKey());
+
+			changes = late.poll();
+			assertEquals(3, changes.size());
+			assertEquals("b", changes.get(0).getKey());
+			assertNull(changes.get(0).getValue());
+			assertEquals("a", changes.get(1).getKey());
+			assertEquals("3", changes.get(1).getValue());
+			assertEquals(5, late.getVersion());
+		}
+	}
+
+	@Test
+	public void testAutomaticCompaction() throws IOException, InterruptedException {
+		try (ChangeJournal.Writer writer = new ChangeJournal.Writer(file)) {
+			for (int i = 0; i < 10_000; i++)
+				writer.append(Map.of("key", String.valueOf(i)));
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (Files.size(file) >= 64 * 1024 && System.nanoTime() < deadline)
+				Thread.sleep(10);
+			assertTrue(Files.size(file) < 64 * 1024);
+		}
+		try (ChangeJournal.Tailer tailer = new ChangeJournal.Tailer(file)) {
+			List<ChangeJournal.Change> changes = tailer.poll();
+			assertEquals("9999", changes.get(changes.size() - 1).getValue());
+			assertEquals(10_000, tailer.getVersion());
+		}
+	}
+
+	@Test
+	public void testInvalidFile() throws IOException {
+		Files.writeString(file, "key=value\nother=value");
+		assertThrows(ConfigurationException.class, () -> new ChangeJournal.Writer(file));
+		assertThrows(ConfigurationException.class, () -> new ChangeJournal.Tailer(file).poll());
+	}
+}
@@ -0,0 +1,85 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.trendafilov.confucius.core.source.PropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConfigurationDiffTest {
+
+	@Test
+	public void testBetween() {
+		PropertySources previous = new PropertySources("runtime")
+				.addLast(PropertySource.of("file", Map.of("kept", "1", "modified", "1", "removed", "1")));
+		PropertySources current = previous.replace(PropertySource.of("file", Map.of("kept", "1", "modified", "2", "added", "2")));
+		ConfigurationDiff diff = ConfigurationDiff.between(previous, current);
+		assertEquals(3, diff.size());
+		assertEquals(Set.of("added"), diff.getAdded());
+		assertEquals(Set.of("removed"), diff.getRemoved());
+		assertEquals(Set.of("modified"), diff.getModified());
+		assertEquals(List.of("added", "modified", "removed"), List.copyOf(diff.getKeys()));
+		assertTrue(diff.contains("modified"));
+		assertFalse(diff.contains("kept"));
+		assertEquals("1", diff.getPreviousValue("modified"));
+		assertEquals("2", diff.getValue("modified"));
+		assertNull(diff.getValue("removed"));
+		assertNull(diff.getPreviousValue("added"));
+		assertNull(diff.getValue("kept"));
+
+		Map<String, String> visited = new LinkedHashMap<>();
+		diff.forEach(visited::put);
+		assertEquals(List.of("added", "modified", "removed"), List.copyOf(visited.keySet()));
+		assertNull(visited.get("removed"));
+		assertEquals("ConfigurationDiff[added: null -> 2, modified: 1 -> 2, removed: 1 -> null]", diff.toString());
+	}
+
+	@Test
+	public void testValuesAreNotCopied() {
+		String value = new String("value");
+		PropertySources previous = new PropertySources("runtime").addLast(PropertySource.of("file", Map.of("key", "old")));
+		ConfigurationDiff diff = ConfigurationDiff.between(previous, previous.withOverride("key", value));
+		assertSame(value, diff.getValue("key"));
+	}
+
+	@Test
+	public void testUnchanged() {
+		PropertySources sources = new PropertySources("runtime").addLast(PropertySource.of("file", Map.of("key", "value")));
+		assertTrue(ConfigurationDiff.between(sources, sources).isEmpty());
+		assertTrue(ConfigurationDiff.between(sources, sources.replace(PropertySource.of("file", Map.of("key", "value")))).isEmpty());
+		assertTrue(ConfigurationDiff.between(sources, sources.withOverride("key", "value")).isEmpty());
+	}
+
+	@Test
+	public void testBetweenKeys() {
+		PropertySources previous = new PropertySources("runtime").addLast(PropertySource.of("file", Map.of("key", "file", "other", "file")));
+		PropertySources current = previous.withOverride("key", "runtime").withOverride("other", "runtime");
+		ConfigurationDiff diff = ConfigurationDiff.between(previous, current, List.of("key", "key", "missing"));
+		assertEquals(1, diff.size());
+		assertEquals("runtime", diff.getValue("key"));
+		assertTrue(ConfigurationDiff.between(current, current.withoutOverride("missing"), List.of("missing")).isEmpty());
+	}
+}
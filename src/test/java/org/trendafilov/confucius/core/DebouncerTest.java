@@ -0,0 +1,132 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.trendafilov.confucius.ConfigurationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DebouncerTest {
+	private ScheduledExecutorService scheduler;
+	private ExecutorService executor;
+
+	@BeforeEach
+	public void setUp() {
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		executor = Executors.newCachedThreadPool();
+	}
+
+	@AfterEach
+	public void tearDown() {
+		scheduler.shutdownNow();
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testBurst() throws InterruptedException {
+		AtomicInteger runs = new AtomicInteger();
+		Debouncer debouncer = new Debouncer(runs::incrementAndGet, Duration.ofMillis(100), scheduler, executor);
+		for (int i = 0; i < 10; i++) {
+			debouncer.trigger();
+			Thread.sleep(10);
+		}
+		assertEquals(0, runs.get());
+		awaitRuns(runs, 1);
+		Thread.sleep(200);
+		assertEquals(1, runs.get());
+
+		debouncer.trigger();
+		awaitRuns(runs, 2);
+	}
+
+	@Test
+	public void testCoalesceWhileRunning() throws InterruptedException {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger runs = new AtomicInteger();
+		AtomicInteger concurrent = new AtomicInteger();
+		AtomicInteger overlaps = new AtomicInteger();
+		Debouncer debouncer = new Debouncer(() -> {
+			if (concurrent.incrementAndGet() > 1)
+				overlaps.incrementAndGet();
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			runs.incrementAndGet();
+			concurrent.decrementAndGet();
+		}, Duration.ZERO, scheduler, executor);
+		debouncer.trigger();
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 5; i++) {
+			debouncer.trigger();
+			Thread.sleep(20);
+		}
+		release.countDown();
+		awaitRuns(runs, 2);
+		Thread.sleep(100);
+		assertEquals(2, runs.get());
+		assertEquals(0, overlaps.get());
+	}
+
+	@Test
+	public void testCancel() throws InterruptedException {
+		AtomicInteger runs = new AtomicInteger();
+		Debouncer debouncer = new Debouncer(runs::incrementAndGet, Duration.ofMillis(50), scheduler, executor);
+		debouncer.trigger();
+		debouncer.cancel();
+		Thread.sleep(150);
+		assertEquals(0, runs.get());
+		assertThrows(ConfigurationException.class, () -> debouncer.setQuietPeriod(Duration.ofMillis(-1)));
+	}
+
+	@Test
+	public void testFailure() throws InterruptedException {
+		AtomicInteger runs = new AtomicInteger();
+		Debouncer debouncer = new Debouncer(() -> {
+			runs.incrementAndGet();
+			throw new IllegalStateException("failed");
+		}, Duration.ZERO, scheduler, executor);
+		debouncer.trigger();
+		awaitRuns(runs, 1);
+		debouncer.trigger();
+		awaitRuns(runs, 2);
+		assertFalse(runs.get() > 2);
+	}
+
+	private static void awaitRuns(AtomicInteger runs, int expected) throws InterruptedException {
+		long deadline = System.nanoTime() + 5_000_000_000L;
+		while (runs.get() < expected && System.nanoTime() < deadline)
+			Thread.sleep(5);
+		assertEquals(expected, runs.get());
+	}
+}
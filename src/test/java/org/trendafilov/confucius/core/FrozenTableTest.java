@@ -0,0 +1,85 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.trendafilov.confucius.ConfigurationException;
+import org.trendafilov.confucius.core.source.PropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FrozenTableTest {
+
+	@Test
+	public void testLookup() {
+		Map<String, String> values = new HashMap<>();
+		for (int i = 0; i < 50_000; i++)
+			values.put("key" + i, "value" + i);
+		values.put("", "empty");
+		values.put("Aa", "colliding");
+		values.put("BB", "hash code");
+		FrozenTable table = FrozenTable.of(HeapTable.of(List.of(PropertySource.of("file", values))));
+		assertEquals(values, table.asMap());
+		for (Map.Entry<String, String> entry : values.entrySet())
+			assertEquals(entry.getValue(), table.get(entry.getKey()));
+		assertNull(table.get("key50000"));
+		assertNull(table.get("missing"));
+		assertEquals("file", table.getOrigin("Aa"));
+		assertNull(table.getOrigin("missing"));
+	}
+
+	@Test
+	public void testOrigins() {
+		Table table = HeapTable.of(List.of(PropertySource.of("env", Map.of("b", "3")), PropertySource.of("defaults", Map.of("a", "1", "b", "2"))))
+				.with("c", "4", "runtime");
+		FrozenTable frozen = FrozenTable.of(table);
+		assertEquals("defaults", frozen.getOrigin("a"));
+		assertEquals("env", frozen.getOrigin("b"));
+		assertEquals("runtime", frozen.getOrigin("c"));
+		assertEquals("3", frozen.get("b"));
+	}
+
+	@Test
+	public void testPrefixQueries() {
+		FrozenTable table = FrozenTable.of(HeapTable.of(List.of(PropertySource.of("file", Map.of("db.url", "jdbc", "db.pool.max", "10", "db.pool.min", "1", "web.port", "80")))));
+		assertEquals(List.of("db.pool.max", "db.pool.min"), List.copyOf(table.subset("db.pool.").keySet()));
+		StringBuilder keys = new StringBuilder();
+		table.forEach("db.", (key, value) -> keys.append(key).append(';'));
+		assertEquals("db.pool.max;db.pool.min;db.url;", keys.toString());
+		assertEquals(Map.of(), table.subset("missing."));
+	}
+
+	@Test
+	public void testEmpty() {
+		FrozenTable table = FrozenTable.of(HeapTable.empty());
+		assertNull(table.get("key"));
+		assertEquals(Map.of(), table.asMap());
+	}
+
+	@Test
+	public void testImmutable() {
+		FrozenTable table = FrozenTable.of(HeapTable.of(List.of(PropertySource.of("file", Map.of("a", "1")))));
+		assertThrows(ConfigurationException.class, () -> table.with("a", "2", "runtime"));
+		assertThrows(ConfigurationException.class, () -> table.without("a"));
+	}
+}
@@ -0,0 +1,118 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.jupiter.api.Test;
+import org.trendafilov.confucius.ConfigurationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OffHeapMapTest {
+
+	@Test
+	public void testLookup() {
+		Map<String, String> values = new HashMap<>();
+		for (int i = 0; i < 10_000; i++)
+			values.put("key" + i, "value" + i);
+		values.put("ключ", "значение");
+		values.put("", "empty");
+		OffHeapMap map = OffHeapMap.encode(values, "file");
+		assertEquals(values.size(), map.size());
+		assertEquals(values, map);
+		assertEquals("value42", map.get("key42"));
+		assertEquals("значение", map.get("ключ"));
+		assertEquals("empty", map.get(""));
+		assertNull(map.get("key10000"));
+		assertFalse(map.containsKey("missing"));
+		assertEquals("file", map.getOrigin("key42"));
+		assertNull(map.getOrigin("missing"));
+	}
+
+	@Test
+	public void testOrigins() {
+		OffHeapMap map = OffHeapMap.encode(Map.of("a", "1", "b", "2", "c", "3"), Map.of("a", "env", "b", "file"), "defaults", ByteBuffer::allocate);
+		assertEquals("env", map.getOrigin("a"));
+		assertEquals("file", map.getOrigin("b"));
+		assertEquals("defaults", map.getOrigin("c"));
+	}
+
+	@Test
+	public void testPrefixIteration() {
+		OffHeapMap map = OffHeapMap.encode(Map.of("db.pool.max", "10", "db.pool.min", "1", "db.url", "jdbc", "dbx", "x", "a", "a"), "file");
+		List<String> keys = new ArrayList<>();
+		map.forEach("db.", (key, value) -> keys.add(key + "=" + value));
+		assertEquals(List.of("db.pool.max=10", "db.pool.min=1", "db.url=jdbc"), keys);
+		keys.clear();
+		map.forEach("missing", (key, value) -> keys.add(key));
+		assertTrue(keys.isEmpty());
+		map.forEach("", (key, value) -> keys.add(key));
+		assertEquals(List.of("a", "db.pool.max", "db.pool.min", "db.url", "dbx"), keys);
+	}
+
+	@Test
+	public void testStringOrder() {
+		Map<String, String> values = new TreeMap<>();
+		for (String key : List.of("k\uD83D\uDE00", "k\uFF01", "k\uE000", "k\uD7FF", "k\u00E9", "kz"))
+			values.put(key, key);
+		OffHeapMap map = OffHeapMap.encode(values, "file");
+		List<String> keys = new ArrayList<>();
+		map.forEach("k", (key, value) -> keys.add(key));
+		assertEquals(new ArrayList<>(values.keySet()), keys);
+		assertEquals("k\uD83D\uDE00", map.get("k\uD83D\uDE00"));
+		assertEquals("k\uFF01", map.get("k\uFF01"));
+	}
+
+	@Test
+	public void testMerge() {
+		OffHeapMap first = OffHeapMap.encode(Map.of("a", "1", "c", "3", "k\uD83D\uDE00", "x"), "env");
+		OffHeapMap second = OffHeapMap.encode(Map.of("a", "0", "b", "2", "d", "4", "k\uFF01", "y"), Map.of("d", "defaults"), "file", ByteBuffer::allocate);
+		OffHeapMap merged = OffHeapMap.merge(List.of(first, second));
+		assertEquals(Map.of("a", "1", "b", "2", "c", "3", "d", "4", "k\uD83D\uDE00", "x", "k\uFF01", "y"), merged);
+		assertEquals("env", merged.getOrigin("a"));
+		assertEquals("file", merged.getOrigin("b"));
+		assertEquals("defaults", merged.getOrigin("d"));
+		List<String> keys = new ArrayList<>();
+		merged.forEach("", (key, value) -> keys.add(key));
+		assertEquals(List.of("a", "b", "c", "d", "k\uD83D\uDE00", "k\uFF01"), keys);
+		assertTrue(OffHeapMap.merge(List.of()).isEmpty());
+	}
+
+	@Test
+	public void testEmpty() {
+		OffHeapMap map = OffHeapMap.encode(Map.of(), "file");
+		assertTrue(map.isEmpty());
+		assertNull(map.get("key"));
+	}
+
+	@Test
+	public void testReadEncodedBuffer() {
+		OffHeapMap map = OffHeapMap.encode(Map.of("key", "value"), "file");
+		assertEquals("value", new OffHeapMap(map.getBuffer()).get("key"));
+		assertThrows(ConfigurationException.class, () -> new OffHeapMap(ByteBuffer.allocate(64)));
+	}
+}
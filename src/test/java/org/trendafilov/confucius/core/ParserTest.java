@@ -35,6 +35,7 @@ import org.trendafilov.confucius.ConfigurationException;
 import org.trendafilov.confucius.core.provider.ConfigurationDataProvider;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -72,6 +73,16 @@ public class ParserTest {
 		assertTrue(new Parser(provider, null).getConfiguration().isEmpty());
 	}
 
+	@Test
+	public void testDeduplication() {
+		String conf = "[Default]\nfirst=true\nsecond=true\n[Test]\nfirst=true\nthird=true";
+		ConfigurationDataProvider provider = ConfigurationDataProvider.of(new ByteArrayInputStream(conf.getBytes(StandardCharsets.UTF_8)));
+		Map<String, String> configuration = new Parser(provider, TEST_CONTEXT).getConfiguration();
+		assertEquals(3, configuration.size());
+		assertSame(configuration.get("first"), configuration.get("second"));
+		assertSame(configuration.get("first"), configuration.get("third"));
+	}
+
 	@Test
 	public void testMissingConfigFile() {
 		ConfigurationDataProvider provider = ConfigurationDataProvider.of(FILENAME.resolveSibling("none-existent.cfg"));
@@ -235,6 +246,77 @@ public class ParserTest {
 		assertEquals("value1", configuration.get("key1"));
 	}
 
+	@Test
+	public void testDirectory() throws Exception {
+		Path directory = Files.createDirectories(FILENAME.resolveSibling("conf.d"));
+		Files.writeString(directory.resolve("10-base.cfg"), "[Default]\nkey1 = base\nkey2 = base\n[" + TEST_CONTEXT + "]\nkey3 = base\n");
+		Files.writeString(directory.resolve("20-site.cfg"), "[" + TEST_CONTEXT + "]\nkey3 = site\n[Default]\nkey2 = site\nkey4 = ${key1}\n");
+		Files.writeString(directory.resolve("30-legacy.properties"), "key5=legacy\n");
+		Map<String, String> configuration = new Parser(ConfigurationDataProvider.of(directory), TEST_CONTEXT).getConfiguration();
+		assertEquals(5, configuration.size());
+		assertEquals("base", configuration.get("key1"));
+		assertEquals("site", configuration.get("key2"));
+		assertEquals("site", configuration.get("key3"));
+		assertEquals("base", configuration.get("key4"));
+		assertEquals("legacy", configuration.get("key5"));
+		for (String name : new String[] { "10-base.cfg", "20-site.cfg", "30-legacy.properties" })
+			Files.delete(directory.resolve(name));
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testInclude() throws Exception {
+		Path base = FILENAME.resolveSibling("base.cfg");
+		Files.writeString(base, "[Default]\nkey1 = base\nkey2 = base\n[" + TEST_CONTEXT + "]\nkey3 = base\n");
+		Files.writeString(FILENAME, "@include base.cfg\n[Default]\nkey2 = tenant\n[" + TEST_CONTEXT + "]\nkey4 = ${key3}\n");
+		Map<String, String> configuration = new Parser(ConfigurationDataProvider.of(FILENAME), TEST_CONTEXT).getConfiguration();
+		assertEquals(4, configuration.size());
+		assertEquals("base", configuration.get("key1"));
+		assertEquals("tenant", configuration.get("key2"));
+		assertEquals("base", configuration.get("key3"));
+		assertEquals("base", configuration.get("key4"));
+		Files.delete(base);
+	}
+
+	@Test
+	public void testIncludeWithinSection() throws Exception {
+		Path shared = FILENAME.resolveSibling("shared.properties");
+		Files.writeString(shared, "key1=shared\nkey2=shared\n");
+		Files.writeString(FILENAME, "[Default]\nkey1 = default\n[" + TEST_CONTEXT + "]\n@include <shared.properties>\nkey2 = context\n");
+		assertEquals("default", new Parser(ConfigurationDataProvider.of(FILENAME), null).getConfiguration().get("key1"));
+		Map<String, String> configuration = new Parser(ConfigurationDataProvider.of(FILENAME), TEST_CONTEXT).getConfiguration();
+		assertEquals(2, configuration.size());
+		assertEquals("shared", configuration.get("key1"));
+		assertEquals("context", configuration.get("key2"));
+		Files.delete(shared);
+	}
+
+	@Test
+	public void testIncludeWithinInactiveSection() throws Exception {
+		Path included = FILENAME.resolveSibling("inc.cfg");
+		Files.writeString(included, "[Default]\nleaked = yes\n");
+		Files.writeString(FILENAME, "[Default]\na = 1\n[" + TEST_CONTEXT + "]\n@include inc.cfg\n@include none-existent.cfg\n");
+		Map<String, String> configuration = new Parser(ConfigurationDataProvider.of(FILENAME), null).getConfiguration();
+		assertEquals(Map.of("a", "1"), configuration);
+		assertThrows(ConfigurationException.class, () -> new Parser(ConfigurationDataProvider.of(FILENAME), TEST_CONTEXT));
+		Files.delete(included);
+	}
+
+	@Test
+	public void testCircularInclude() throws Exception {
+		Path other = FILENAME.resolveSibling("other.cfg");
+		Files.writeString(other, "[Default]\n@include ljctest.cfg\n");
+		Files.writeString(FILENAME, "[Default]\n@include other.cfg\n");
+		assertThrows(ConfigurationException.class, () -> new Parser(ConfigurationDataProvider.of(FILENAME), null));
+		Files.delete(other);
+	}
+
+	@Test
+	public void testMissingInclude() throws Exception {
+		Files.writeString(FILENAME, "[Default]\n@include none-existent.cfg\n");
+		assertThrows(ConfigurationException.class, () -> new Parser(ConfigurationDataProvider.of(FILENAME), null));
+	}
+
 	@Test
 	public void testLegacyFormat() {
 		String configurationString = new StringBuilder()
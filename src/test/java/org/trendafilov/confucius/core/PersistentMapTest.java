@@ -0,0 +1,124 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PersistentMapTest {
+
+	@Test
+	public void testWithAndWithout() {
+		PersistentMap<String, String> empty = PersistentMap.empty();
+		PersistentMap<String, String> one = empty.with("key", "value");
+		PersistentMap<String, String> two = one.with("other", "value");
+		assertEquals(0, empty.size());
+		assertEquals(1, one.size());
+		assertEquals(2, two.size());
+		assertEquals("value", two.get("key"));
+		assertNull(one.get("other"));
+		PersistentMap<String, String> removed = two.without("key");
+		assertEquals(1, removed.size());
+		assertNull(removed.get("key"));
+		assertEquals("value", two.get("key"));
+		assertSame(removed, removed.without("key"));
+		assertSame(two, two.with("key", "value"));
+	}
+
+	@Test
+	public void testNullValues() {
+		PersistentMap<String, String> map = PersistentMap.<String, String>empty().with("key", null);
+		assertTrue(map.containsKey("key"));
+		assertNull(map.get("key"));
+		assertFalse(map.containsKey("other"));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void testCollisions() {
+		assertEquals("Aa".hashCode(), "BB".hashCode());
+		PersistentMap<String, String> map = PersistentMap.<String, String>empty()
+				.with("Aa", "1")
+				.with("BB", "2")
+				.with("AaAa", "3")
+				.with("BBBB", "4")
+				.with("AaBB", "5");
+		assertEquals(5, map.size());
+		assertEquals("1", map.get("Aa"));
+		assertEquals("2", map.get("BB"));
+		assertEquals("5", map.get("AaBB"));
+		map = map.without("Aa").with("BB", "changed");
+		assertNull(map.get("Aa"));
+		assertEquals("changed", map.get("BB"));
+		assertEquals(4, map.size());
+		assertEquals(map.size(), map.entrySet().stream().count());
+	}
+
+	@Test
+	public void testAgainstHashMap() {
+		Random random = new Random(42);
+		Map<String, String> expected = new HashMap<>();
+		PersistentMap<String, String> map = PersistentMap.empty();
+		PersistentMap.Builder<String, String> builder = PersistentMap.<String, String>empty().toBuilder();
+		for (int i = 0; i < 20_000; i++) {
+			String key = "key" + random.nextInt(5_000);
+			if (random.nextInt(4) == 0) {
+				expected.remove(key);
+				map = map.without(key);
+				builder.remove(key);
+			} else {
+				String value = Integer.toString(i);
+				expected.put(key, value);
+				map = map.with(key, value);
+				builder.put(key, value);
+			}
+		}
+		assertEquals(expected, map);
+		assertEquals(expected, builder.build());
+		assertEquals(expected.size(), map.size());
+	}
+
+	@Test
+	public void testBuilderDoesNotChangeBuiltMaps() {
+		PersistentMap.Builder<String, String> builder = PersistentMap.<String, String>empty().toBuilder();
+		for (int i = 0; i < 1_000; i++)
+			builder.put("key" + i, "value");
+		PersistentMap<String, String> built = builder.build();
+		for (int i = 0; i < 1_000; i++)
+			builder.put("key" + i, "changed").remove("key" + (i / 2));
+		assertEquals(1_000, built.size());
+		for (int i = 0; i < 1_000; i++)
+			assertEquals("value", built.get("key" + i));
+	}
+
+	@Test
+	public void testVersionsAreIndependent() {
+		PersistentMap<String, String> base = PersistentMap.copyOf(Map.of("a", "1", "b", "2", "c", "3"));
+		PersistentMap<String, String> changed = base.with("a", "changed").without("b");
+		assertEquals(Map.of("a", "1", "b", "2", "c", "3"), base);
+		assertEquals(Map.of("a", "changed", "c", "3"), changed);
+	}
+}
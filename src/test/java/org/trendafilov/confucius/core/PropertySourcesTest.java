@@ -0,0 +1,220 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+import org.trendafilov.confucius.ConfigurationException;
+import org.trendafilov.confucius.core.source.PropertySource;
+import org.trendafilov.confucius.core.source.RelaxedPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PropertySourcesTest {
+
+	@Test
+	public void testPrecedence() {
+		PropertySources sources = new PropertySources("runtime")
+				.addLast(PropertySource.of("file", Map.of("key", "file", "other", "file")))
+				.addLast(PropertySource.of("system", Map.of("key", "system", "low", "system")))
+				.addFirst(PropertySource.of("env", Map.of("key", "env")));
+		assertEquals("env", sources.get("key"));
+		assertEquals("file", sources.get("other"));
+		assertEquals("system", sources.get("low"));
+		assertEquals("env", sources.getOrigin("key"));
+		assertEquals("file", sources.getOrigin("other"));
+		assertEquals("system", sources.getOrigin("low"));
+	}
+
+	@Test
+	public void testAddBeforeAndAfter() {
+		PropertySources sources = new PropertySources("runtime")
+				.addLast(PropertySource.of("file", Map.of("key", "file")))
+				.addAfter("file", PropertySource.of("defaults", Map.of("key", "defaults", "default", "yes")));
+		assertEquals("file", sources.get("key"));
+		sources = sources.addBefore("file", PropertySource.of("cli", Map.of("key", "cli")));
+		assertEquals("cli", sources.get("key"));
+		assertEquals("yes", sources.get("default"));
+		assertEquals(3, sources.getSources().size());
+		assertEquals("cli", sources.getSources().get(0).getName());
+		assertEquals("defaults", sources.getSources().get(2).getName());
+	}
+
+	@Test
+	public void testReplaceAndRemove() {
+		PropertySources sources = new PropertySources("runtime")
+				.addLast(PropertySource.of("file", Map.of("key", "file")))
+				.addLast(PropertySource.of("system", Map.of("key", "system")))
+				.replace(PropertySource.of("file", Map.of("other", "file")));
+		assertEquals("system", sources.get("key"));
+		assertEquals("file", sources.get("other"));
+		sources = sources.remove("system");
+		assertNull(sources.get("key"));
+		assertNull(sources.getSource("system"));
+		assertSame(sources, sources.remove("system"));
+	}
+
+	@Test
+	public void testOverrides() {
+		PropertySources sources = new PropertySources("runtime")
+				.addLast(PropertySource.of("file", Map.of("key", "file", "other", "file")))
+				.withOverride("key", "override")
+				.withoutOverride("other");
+		assertEquals("override", sources.get("key"));
+		assertEquals("runtime", sources.getOrigin("key"));
+		assertNull(sources.get("other"));
+		sources = sources.addFirst(PropertySource.of("env", Map.of("key", "env", "other", "env")));
+		assertEquals("override", sources.get("key"));
+		assertNull(sources.get("other"));
+		sources = sources.withoutOverrides();
+		assertEquals("env", sources.get("key"));
+		assertEquals("env", sources.get("other"));
+	}
+
+	@Test
+	public void testImmutable() {
+		PropertySources initial = new PropertySources("runtime")
+				.addLast(PropertySource.of("file", Map.of("key", "file")));
+		PropertySources changed = initial
+				.replace(PropertySource.of("file", Map.of("key", "changed")))
+				.withOverride("other", "override")
+				.addFirst(PropertySource.of("env", Map.of()));
+		assertEquals("file", initial.get("key"));
+		assertNull(initial.get("other"));
+		assertEquals(1, initial.getSources().size());
+		assertEquals("changed", changed.get("key"));
+		assertEquals("override", changed.get("other"));
+		assertEquals(2, changed.getSources().size());
+	}
+
+	@Test
+	public void testPrefixQueries() {
+		PropertySources sources = new PropertySources("runtime")
+				.addLast(PropertySource.of("file", Map.of("db.pool.max", "10", "db.pool.min", "1", "db.url", "jdbc", "dbx", "x")));
+		List<String> keys = new ArrayList<>();
+		sources.forEach("db.pool.", (key, value) -> keys.add(key + "=" + value));
+		assertEquals(List.of("db.pool.max=10", "db.pool.min=1"), keys);
+		Map<String, String> subset = sources.subset("db.");
+		assertEquals(Map.of("db.pool.max", "10", "db.pool.min", "1", "db.url", "jdbc"), subset);
+		assertEquals(List.of("db.pool.max", "db.pool.min", "db.url"), new ArrayList<>(subset.keySet()));
+		assertNull(subset.get("dbx"));
+		assertFalse(subset.containsKey("dbx"));
+		assertTrue(sources.subset("missing.").isEmpty());
+		PropertySources changed = sources.withOverride("db.pool.max", "20").withOverride("db.pool.idle", "5");
+		assertEquals(Map.of("db.pool.idle", "5", "db.pool.max", "20", "db.pool.min", "1"), changed.subset("db.pool."));
+		assertEquals(Map.of("db.pool.min", "1"), changed.withoutOverride("db.pool.max").withoutOverride("db.pool.idle").subset("db.pool."));
+		assertEquals("10", subset.get("db.pool.max"));
+	}
+
+	@Test
+	public void testOffHeapStorage() {
+		PropertySources sources = new PropertySources("runtime", Storage.OFF_HEAP);
+		sources = sources.addLast(sources.createSource("file", Map.of("key", "file", "other", "file", "db.url", "jdbc")));
+		assertEquals("file", sources.get("key"));
+		assertEquals("file", sources.getOrigin("key"));
+		sources = sources.withOverride("key", "override").withOverride("db.user", "sa").withoutOverride("other");
+		assertEquals("override", sources.get("key"));
+		assertEquals("runtime", sources.getOrigin("key"));
+		assertNull(sources.get("other"));
+		assertNull(sources.getOrigin("other"));
+		assertEquals(Map.of("key", "override", "db.url", "jdbc", "db.user", "sa"), sources.getValues());
+		assertEquals(Map.of("db.url", "jdbc", "db.user", "sa"), sources.subset("db."));
+		sources = sources.addFirst(PropertySource.of("env", Map.of("other", "env", "db.url", "env")));
+		assertNull(sources.get("other"));
+		assertEquals("env", sources.get("db.url"));
+		assertEquals("env", sources.getOrigin("db.url"));
+		assertEquals("override", sources.get("key"));
+		assertTrue(sources.getMemoryReport().getOffHeapBytes() > 0);
+	}
+
+	@Test
+	public void testFreezeOffHeap() {
+		PropertySources sources = new PropertySources("runtime", Storage.OFF_HEAP);
+		sources = sources.addLast(sources.createSource("file", Map.of("key", "file", "other", "file", "db.url", "jdbc")))
+				.withOverride("key", "override").withoutOverride("other");
+		MemoryReport report = sources.getMemoryReport();
+		PropertySources frozen = sources.freeze();
+		assertEquals(Map.of("key", "override", "db.url", "jdbc"), frozen.getValues());
+		assertEquals("runtime", frozen.getOrigin("key"));
+		assertEquals("file", frozen.getOrigin("db.url"));
+		assertNull(frozen.get("other"));
+		assertTrue(frozen.getMemoryReport().getOffHeapBytes() > report.getOffHeapBytes());
+		assertEquals(report.getKeyCount(), frozen.getMemoryReport().getKeyCount());
+	}
+
+	@Test
+	public void testInvalidNames() {
+		PropertySources sources = new PropertySources("runtime")
+				.addLast(PropertySource.of("file", Map.of()));
+		assertThrows(ConfigurationException.class, () -> sources.addLast(PropertySource.of("file", Map.of())));
+		assertThrows(ConfigurationException.class, () -> sources.addFirst(PropertySource.of("runtime", Map.of())));
+		assertThrows(ConfigurationException.class, () -> sources.addBefore("missing", PropertySource.of("env", Map.of())));
+		assertThrows(ConfigurationException.class, () -> sources.replace(PropertySource.of("missing", Map.of())));
+	}
+
+	@Test
+	public void testRelaxedSource() {
+		PropertySources sources = new PropertySources("runtime")
+				.addLast(PropertySource.of("file", Map.of("db.url", "file")))
+				.addLast(new RelaxedPropertySource() {
+					public @NotNull String getName() {
+						return "env";
+					}
+
+					public @Nullable String getProperty(@NotNull String key) {
+						String canonical = getCanonicalKey(key);
+						return canonical == null ? null : getProperties().get(canonical);
+					}
+
+					public @NotNull Map<String, String> getProperties() {
+						return Map.of("db.url", "env", "db.max.pool", "10");
+					}
+
+					public @Nullable String getCanonicalKey(@NotNull String key) {
+						return key.equals("DB_URL") || key.equals("db.url") ? "db.url"
+								: key.equals("DB_MAX_POOL") || key.equals("db.max.pool") ? "db.max.pool" : null;
+					}
+				});
+		assertEquals(Set.of("db.url", "db.max.pool"), sources.getValues().keySet());
+		assertEquals("10", sources.get("DB_MAX_POOL"));
+		assertEquals("env", sources.getOrigin("DB_MAX_POOL"));
+		assertEquals("file", sources.get("DB_URL"));
+		assertEquals("file", sources.getOrigin("DB_URL"));
+		assertNull(sources.get("DB_USER"));
+		sources = sources.withOverride("db.max.pool", "20");
+		assertEquals("20", sources.get("DB_MAX_POOL"));
+		assertNull(sources.remove("env").get("DB_MAX_POOL"));
+	}
+
+	@Test
+	public void testArgumentsSource() {
+		PropertySource source = PropertySource.ofArguments("cli", "--key=value", "-Dother=1", "positional", "--flag");
+		assertEquals(2, source.getProperties().size());
+		assertEquals("value", source.getProperty("key"));
+		assertEquals("1", source.getProperty("other"));
+	}
+}
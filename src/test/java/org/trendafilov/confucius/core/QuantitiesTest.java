@@ -0,0 +1,70 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class QuantitiesTest {
+
+	@Test
+	public void testParseDuration() {
+		assertEquals(Duration.ofMillis(250), Quantities.parseDuration("250ms"));
+		assertEquals(Duration.ofMillis(250), Quantities.parseDuration("250"));
+		assertEquals(Duration.ofSeconds(30), Quantities.parseDuration(" 30 s "));
+		assertEquals(Duration.ofNanos(5), Quantities.parseDuration("5ns"));
+		assertEquals(Duration.ofNanos(5000), Quantities.parseDuration("5us"));
+		assertEquals(Duration.ofNanos(5000), Quantities.parseDuration("5µs"));
+		assertEquals(Duration.ofMinutes(2), Quantities.parseDuration("2m"));
+		assertEquals(Duration.ofMinutes(2), Quantities.parseDuration("2MIN"));
+		assertEquals(Duration.ofMinutes(90), Quantities.parseDuration("1.5h"));
+		assertEquals(Duration.ofDays(7), Quantities.parseDuration("7d"));
+		assertEquals(Duration.ofMillis(-100), Quantities.parseDuration("-100ms"));
+		assertEquals(Duration.ofMillis(500), Quantities.parseDuration(".5s"));
+		assertEquals(Duration.ofSeconds(30), Quantities.parseDuration("PT30S"));
+		assertEquals(Duration.ofDays(1), Quantities.parseDuration("P1D"));
+		assertNull(Quantities.parseDuration(""));
+		assertNull(Quantities.parseDuration("s"));
+		assertNull(Quantities.parseDuration("10 parsecs"));
+		assertNull(Quantities.parseDuration("1.2.3s"));
+		assertNull(Quantities.parseDuration("PTxS"));
+		assertNull(Quantities.parseDuration("999999999999999999999d"));
+	}
+
+	@Test
+	public void testParseDataSize() {
+		assertEquals(512, Quantities.parseDataSize("512"));
+		assertEquals(512, Quantities.parseDataSize("512B"));
+		assertEquals(64L << 20, Quantities.parseDataSize("64MiB"));
+		assertEquals(64L << 20, Quantities.parseDataSize("64 mib"));
+		assertEquals(64L << 20, Quantities.parseDataSize("64M"));
+		assertEquals(64_000_000, Quantities.parseDataSize("64MB"));
+		assertEquals(2000, Quantities.parseDataSize("2kb"));
+		assertEquals(1536, Quantities.parseDataSize("1.5KiB"));
+		assertEquals(1L << 30, Quantities.parseDataSize("1g"));
+		assertEquals(3L << 40, Quantities.parseDataSize("3TiB"));
+		assertEquals(1L << 50, Quantities.parseDataSize("1PiB"));
+		assertEquals(1, Quantities.parseDataSize("1.9"));
+		assertEquals(-1, Quantities.parseDataSize("-1MiB"));
+		assertEquals(-1, Quantities.parseDataSize("MiB"));
+		assertEquals(-1, Quantities.parseDataSize("64 Mebibytes"));
+		assertEquals(-1, Quantities.parseDataSize("9999999PiB"));
+	}
+}
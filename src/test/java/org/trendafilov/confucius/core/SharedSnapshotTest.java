@@ -0,0 +1,66 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.trendafilov.confucius.ConfigurationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class SharedSnapshotTest {
+
+	@Test
+	public void testVersions() throws IOException {
+		Path file = Files.createTempFile("confuciusTest", ".bin");
+		Files.delete(file);
+		try {
+			assertEquals(0, SharedSnapshot.readSequence(file));
+			assertEquals(1, SharedSnapshot.write(file, Map.of("a", "1", "b", "2"), Map.of("b", "runtime")));
+			SharedSnapshot first = SharedSnapshot.map(file);
+			assertEquals(1, first.getSequence());
+			assertEquals(Map.of("a", "1", "b", "2"), first.getMap());
+			assertEquals("file", first.getMap().getOrigin("a"));
+			assertEquals("runtime", first.getMap().getOrigin("b"));
+
+			assertEquals(2, SharedSnapshot.write(file, Map.of("a", "3"), Map.of()));
+			assertEquals(2, SharedSnapshot.readSequence(file));
+			assertEquals(Map.of("a", "3"), SharedSnapshot.map(file).getMap());
+			assertEquals(Map.of("a", "1", "b", "2"), first.getMap());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	@Test
+	public void testInvalidFile() throws IOException {
+		Path file = Files.createTempFile("confuciusTest", ".bin");
+		try {
+			Files.writeString(file, "key=value");
+			assertThrows(ConfigurationException.class, () -> SharedSnapshot.map(file));
+			assertThrows(ConfigurationException.class, () -> SharedSnapshot.readSequence(file));
+			assertThrows(ConfigurationException.class, () -> SharedSnapshot.write(file, Map.of(), Map.of()));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
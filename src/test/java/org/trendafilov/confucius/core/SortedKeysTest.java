@@ -0,0 +1,98 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Random;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SortedKeysTest {
+
+	@Test
+	public void testOf() {
+		for (int size : new int[] { 0, 1, 47, 48, 49, 3000, 100_000 }) {
+			TreeSet<String> expected = new TreeSet<>();
+			for (int i = 0; i < size; i++)
+				expected.add(String.format("key.%07d", i));
+			SortedKeys keys = SortedKeys.of(expected.toArray(new String[0]));
+			assertEquals(size, keys.size());
+			assertEquals(new ArrayList<>(expected), collect(keys, ""));
+		}
+	}
+
+	@Test
+	public void testRandomChanges() {
+		Random random = new Random(7);
+		NavigableSet<String> expected = new TreeSet<>();
+		for (int i = 0; i < 2000; i++)
+			expected.add("k" + random.nextInt(5000));
+		SortedKeys keys = SortedKeys.of(expected.toArray(new String[0]));
+		for (int round = 0; round < 50_000; round++) {
+			String key = "k" + random.nextInt(5000);
+			if (random.nextInt(3) == 0) {
+				expected.add(key);
+				keys = keys.with(key);
+			} else {
+				expected.remove(key);
+				keys = keys.without(key);
+			}
+			assertEquals(expected.size(), keys.size());
+		}
+		assertEquals(new ArrayList<>(expected), collect(keys, ""));
+		for (String prefix : new String[] { "k1", "k42", "k4999", "k", "x", "" }) {
+			List<String> matching = new ArrayList<>();
+			for (String key : expected.tailSet(prefix, true))
+				if (key.startsWith(prefix))
+					matching.add(key);
+				else
+					break;
+			assertEquals(matching, collect(keys, prefix));
+		}
+		while (!expected.isEmpty())
+			keys = keys.without(expected.pollFirst());
+		assertEquals(0, keys.size());
+		assertFalse(keys.iterator("").hasNext());
+		assertEquals(List.of("k1"), collect(SortedKeys.empty().with("k1"), ""));
+	}
+
+	@Test
+	public void testPersistence() {
+		SortedKeys before = SortedKeys.of(new String[] { "a", "c", "e" });
+		SortedKeys after = before.with("b").without("e");
+		assertEquals(List.of("a", "c", "e"), collect(before, ""));
+		assertEquals(List.of("a", "b", "c"), collect(after, ""));
+		assertSame(after, after.with("a"));
+		assertSame(after, after.without("z"));
+		Iterator<String> iterator = after.iterator("bb");
+		assertEquals("c", iterator.next());
+		assertFalse(iterator.hasNext());
+	}
+
+	private static List<String> collect(SortedKeys keys, String prefix) {
+		List<String> result = new ArrayList<>();
+		keys.forEach(prefix, result::add);
+		return result;
+	}
+}
@@ -50,4 +50,29 @@ public class UtilsTest {
 	public void tearDown() {
 		Configuration.getInstance().reset();
 	}
+
+	@Test
+	public void testIsParsableLong() {
+		for (String value : new String[] { "0", "-1", "+7", "2147483647", "-2147483648", "9223372036854775807", "-9223372036854775808",
+				"2147483648", "9223372036854775808", "", "-", "+", "1.0", " 1", "1_000", "0x10", "empty" }) {
+			assertEquals(parses(() -> Long.parseLong(value)), Utils.isParsableLong(value, Long.MIN_VALUE, Long.MAX_VALUE), value);
+			assertEquals(parses(() -> Integer.parseInt(value)), Utils.isParsableLong(value, Integer.MIN_VALUE, Integer.MAX_VALUE), value);
+		}
+	}
+
+	@Test
+	public void testIsParsableDouble() {
+		for (String value : new String[] { "0", "-1.5", ".5", "5.", " 1e3 ", "1E-3", "1e", "1e+", "2d", "2f", "2x", "NaN", "-Infinity",
+				"Infinity1", "0x1p3", "0x1.8P-1d", "0x1", "0x.p1", ".", "", "e5", "empty" })
+			assertEquals(parses(() -> Double.parseDouble(value)), Utils.isParsableDouble(value), value);
+	}
+
+	private static boolean parses(Runnable parser) {
+		try {
+			parser.run();
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
 }
@@ -0,0 +1,146 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.Test;
+import org.trendafilov.confucius.ConfigurationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WriteBehindPersisterTest {
+
+	@Test
+	public void testRewriteSection() {
+		List<String> lines = List.of("[Default]", "name = default", "", "[test]", "name = old # the name", "port = 80", "stale = yes", "", "[other]",
+				"name = other");
+		Map<String, String> changes = new LinkedHashMap<>();
+		changes.put("name", "new");
+		changes.put("stale", null);
+		changes.put("added", "1");
+		assertEquals(List.of("[Default]", "name = default", "", "[test]", "name = new # the name", "port = 80", "added = 1", "", "[other]",
+				"name = other"), WriteBehindPersister.rewrite(lines, "test", changes));
+	}
+
+	@Test
+	public void testRewriteNewSection() {
+		assertEquals(List.of("[Default]", "a = 1", "", "[test]", "b = 2"), WriteBehindPersister.rewrite(List.of("[Default]", "a = 1"), "test", Map.of("b", "2")));
+		assertEquals(List.of("[test]", "b = 2"), WriteBehindPersister.rewrite(List.of(), "test", Map.of("b", "2")));
+		assertEquals(List.of("[Default]", "a = 1"), WriteBehindPersister.rewrite(List.of("[Default]", "a = 1"), "test", Collections.singletonMap("a", null)));
+	}
+
+	@Test
+	public void testCoalescing() throws IOException {
+		Path file = Files.createTempFile("confuciusTest", ".cfg");
+		try {
+			Files.writeString(file, "[Default]\nkey = value\n");
+			WriteBehindPersister persister = new WriteBehindPersister(file, "Default", Duration.ofHours(1));
+			try {
+				persister.submit(Map.of("key", "first"));
+				persister.submit(Map.of("key", "second", "other", "1"));
+				persister.submit(Map.of("invalid", "has # comment"));
+				assertEquals("[Default]\nkey = value\n", Files.readString(file));
+				persister.flush();
+				List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+				assertEquals("key = second", lines.get(1));
+				assertTrue(lines.contains("other = 1"));
+				assertFalse(String.join("\n", lines).contains("invalid"));
+				assertTrue(Thread.getAllStackTraces().keySet().stream().noneMatch(thread -> thread.getName().equals("confucius-persister")));
+			} finally {
+				persister.close();
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testRefuseStandardFormat() throws IOException {
+		Path file = Files.createTempFile("confuciusTest", ".properties");
+		try {
+			Files.writeString(file, "db.url=jdbc\nname=app\n");
+			assertThrows(ConfigurationException.class, () -> new WriteBehindPersister(file, "Default", Duration.ofHours(1)));
+
+			Files.writeString(file, "[Default]\nname = app\n");
+			WriteBehindPersister persister = new WriteBehindPersister(file, "Default", Duration.ofHours(1));
+			Files.writeString(file, "db.url=jdbc\nname=app\n");
+			persister.submit(Map.of("extra", "1"));
+			assertThrows(ConfigurationException.class, persister::flush);
+			assertEquals("db.url=jdbc\nname=app\n", Files.readString(file));
+			Files.writeString(file, "[Default]\nname = app\n");
+			persister.close();
+			assertTrue(Files.readString(file).contains("extra = 1"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testRefuseCompressed() throws IOException {
+		Path file = Files.createTempFile("confuciusTest", ".cfg.gz");
+		try {
+			ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+			try (OutputStream output = new GZIPOutputStream(gzip)) {
+				output.write("[Default]\nname = app\n".getBytes(StandardCharsets.UTF_8));
+			}
+			Files.write(file, gzip.toByteArray());
+			assertThrows(ConfigurationException.class, () -> new WriteBehindPersister(file, "Default", Duration.ofHours(1)));
+			Files.write(file, "[Default]\nname = caf\u00e9\n".getBytes(StandardCharsets.ISO_8859_1));
+			assertThrows(ConfigurationException.class, () -> new WriteBehindPersister(file, "Default", Duration.ofHours(1)));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testNoRetryOfUnwritableFile() throws Exception {
+		Path file = Files.createTempFile("confuciusTest", ".cfg");
+		try {
+			Files.writeString(file, "[Default]\nname = app\n");
+			WriteBehindPersister persister = new WriteBehindPersister(file, "Default", Duration.ofMillis(10));
+			try {
+				Files.writeString(file, "name=app\n");
+				persister.submit(Map.of("extra", "1"));
+				Thread.sleep(200);
+				Files.writeString(file, "[Default]\nname = app\n");
+				Thread.sleep(1500);
+				assertEquals("[Default]\nname = app\n", Files.readString(file));
+				persister.flush();
+				assertTrue(Files.readString(file).contains("extra = 1"));
+			} finally {
+				persister.close();
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
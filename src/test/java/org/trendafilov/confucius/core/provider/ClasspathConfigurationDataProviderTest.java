@@ -0,0 +1,117 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.trendafilov.confucius.core.provider;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClasspathConfigurationDataProviderTest {
+	private Path directory;
+	private Path classes;
+	private Path jar;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("classpath");
+		classes = Files.createDirectories(directory.resolve("classes/conf"));
+		Files.writeString(classes.resolve("app.cfg"), "[Default]\nkey = classes\n");
+		jar = directory.resolve("defaults.jar");
+		writeJar("[Default]\nkey = jar\nother = jar\n");
+		ClasspathConfigurationDataProvider.clearCache();
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+				Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testOfClasspath() {
+		assertTrue(ConfigurationDataProvider.of("classpath:conf/app.cfg") instanceof ClasspathConfigurationDataProvider);
+	}
+
+	@Test
+	public void testOverlayOrder() throws IOException {
+		try (URLClassLoader loader = newClassLoader()) {
+			List<Fragment> fragments = ConfigurationDataProvider.ofClasspath("/conf/app.cfg", loader).getFragments();
+			assertEquals(2, fragments.size());
+			assertEquals("jar", fragments.get(0).getSections().get(0).getEntries().get(0).getValue());
+			assertEquals("classes", fragments.get(1).getSections().get(0).getEntries().get(0).getValue());
+			List<String> lines = ConfigurationDataProvider.ofClasspath("conf/app.cfg", loader).getAllLines();
+			assertEquals("key = classes", lines.get(lines.size() - 1));
+		}
+	}
+
+	@Test
+	public void testCache() throws IOException {
+		try (URLClassLoader loader = newClassLoader()) {
+			List<Fragment> first = ConfigurationDataProvider.ofClasspath("conf/app.cfg", loader).getFragments();
+			List<Fragment> second = ConfigurationDataProvider.ofClasspath("conf/app.cfg", loader).getFragments();
+			assertSame(first.get(0), second.get(0));
+			assertSame(first.get(1), second.get(1));
+
+			writeJar("[Default]\nkey = changed\n");
+			Files.setLastModifiedTime(jar, FileTime.fromMillis(Files.getLastModifiedTime(jar).toMillis() + 2000));
+			List<Fragment> third = ConfigurationDataProvider.ofClasspath("conf/app.cfg", loader).getFragments();
+			assertNotSame(first.get(0), third.get(0));
+			assertEquals("changed", third.get(0).getSections().get(0).getEntries().get(0).getValue());
+			assertSame(first.get(1), third.get(1));
+		}
+	}
+
+	@Test
+	public void testMissingResource() throws IOException {
+		try (URLClassLoader loader = newClassLoader()) {
+			assertThrows(FileNotFoundException.class, () -> ConfigurationDataProvider.ofClasspath("conf/missing.cfg", loader).getFragments());
+		}
+	}
+
+	private URLClassLoader newClassLoader() throws IOException {
+		return new URLClassLoader(new URL[] { directory.resolve("classes").toUri().toURL(), jar.toUri().toURL() }, null);
+	}
+
+	private void writeJar(String content) throws IOException {
+		try (JarOutputStream output = new JarOutputStream(Files.newOutputStream(jar))) {
+			output.putNextEntry(new JarEntry("conf/app.cfg"));
+			output.write(content.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
@@ -0,0 +1,103 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core.provider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DirectoryConfigurationDataProviderTest {
+	private Path directory;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("conf.d");
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		try (Stream<Path> files = Files.walk(directory)) {
+			for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+				Files.delete(file);
+		}
+	}
+
+	@Test
+	public void testOfDirectory() {
+		assertTrue(ConfigurationDataProvider.of(directory) instanceof DirectoryConfigurationDataProvider);
+		assertTrue(ConfigurationDataProvider.of(directory.toString()) instanceof DirectoryConfigurationDataProvider);
+	}
+
+	@Test
+	public void testLexicalOrder() throws IOException {
+		Files.writeString(directory.resolve("20-second.cfg"), "[Default]\nkey = 2\n");
+		Files.writeString(directory.resolve("10-first.cfg"), "[Default]\nkey = 1\n");
+		Files.writeString(directory.resolve(".hidden.cfg"), "[Default]\nkey = 3\n");
+		List<Fragment> fragments = new DirectoryConfigurationDataProvider(directory).getFragments();
+		assertEquals(2, fragments.size());
+		assertEquals("1", fragments.get(0).getSections().get(0).getEntries().get(0).getValue());
+		assertEquals("2", fragments.get(1).getSections().get(0).getEntries().get(0).getValue());
+	}
+
+	@Test
+	public void testReturnLines() throws IOException {
+		Files.writeString(directory.resolve("b.cfg"), "c\n");
+		Files.writeString(directory.resolve("a.cfg"), "a\nb\n");
+		List<String> lines = new DirectoryConfigurationDataProvider(directory).getAllLines();
+		assertEquals(List.of("a", "b", "c"), lines);
+	}
+
+	@Test
+	public void testUnchangedFragmentsAreReused() throws IOException {
+		Path first = Files.writeString(directory.resolve("a.cfg"), "[Default]\nkey = 1\n");
+		Path second = Files.writeString(directory.resolve("b.cfg"), "[Default]\nother = 1\n");
+		DirectoryConfigurationDataProvider provider = new DirectoryConfigurationDataProvider(directory);
+		List<Fragment> before = provider.getFragments();
+
+		Files.writeString(first, "[Default]\nkey = 1\n");
+		Files.setLastModifiedTime(first, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+		Files.writeString(second, "[Default]\nother = 2\n");
+		Files.setLastModifiedTime(second, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+		List<Fragment> after = provider.getFragments();
+
+		assertSame(before.get(0), after.get(0));
+		assertNotSame(before.get(1), after.get(1));
+		assertEquals("2", after.get(1).getSections().get(0).getEntries().get(0).getValue());
+	}
+
+	@Test
+	public void testRemovedFragment() throws IOException {
+		Files.writeString(directory.resolve("a.cfg"), "[Default]\nkey = 1\n");
+		Path second = Files.writeString(directory.resolve("b.cfg"), "[Default]\nother = 1\n");
+		DirectoryConfigurationDataProvider provider = new DirectoryConfigurationDataProvider(directory);
+		assertEquals(2, provider.getFragments().size());
+		Files.delete(second);
+		assertEquals(1, provider.getFragments().size());
+	}
+}
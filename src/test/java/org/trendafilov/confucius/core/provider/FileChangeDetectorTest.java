@@ -0,0 +1,76 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core.provider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileChangeDetectorTest {
+	private Path file;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		file = Files.createTempFile("confuciusTest", ".cfg");
+		Files.writeString(file, "[Default]\nkey = value\n");
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(file);
+	}
+
+	@Test
+	public void testUnchanged() throws IOException {
+		FileChangeDetector detector = new FileChangeDetector(file);
+		assertFalse(detector.hasChanged());
+		touch();
+		Files.writeString(file, "[Default]\nkey = value\n");
+		assertFalse(detector.hasChanged());
+		assertFalse(detector.hasChanged());
+	}
+
+	@Test
+	public void testChanged() throws IOException {
+		FileChangeDetector detector = new FileChangeDetector(file);
+		Files.writeString(file, "[Default]\nkey = other\n");
+		touch();
+		assertTrue(detector.hasChanged());
+		assertFalse(detector.hasChanged());
+	}
+
+	@Test
+	public void testDeletedAndCreated() throws IOException {
+		FileChangeDetector detector = new FileChangeDetector(file);
+		Files.delete(file);
+		assertTrue(detector.hasChanged());
+		assertFalse(detector.hasChanged());
+		Files.writeString(file, "[Default]\nkey = value\n");
+		assertTrue(detector.hasChanged());
+	}
+
+	private void touch() throws IOException {
+		Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+	}
+}
@@ -42,7 +42,7 @@ public class FileConfigurationDataProviderTest {
 	public void testReturnInputStream() throws IOException {
 		createFile();
 		FileConfigurationDataProvider provider = new FileConfigurationDataProvider(FILENAME);
-		assertEquals("a\nb\r\nc\n", Utils.streamToString(provider.getInputStream()));
+		assertEquals("a\nb\r\nc\n", new String(provider.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
 	}
 
 	@Test
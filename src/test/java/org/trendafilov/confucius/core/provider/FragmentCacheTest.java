@@ -0,0 +1,89 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core.provider;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FragmentCacheTest {
+	private Path first;
+	private Path second;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		first = Files.createTempFile("fragment", ".cfg");
+		second = Files.createTempFile("fragment", ".cfg");
+	}
+
+	@AfterEach
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(first);
+		Files.deleteIfExists(second);
+	}
+
+	@Test
+	public void testSharedByContent() throws IOException {
+		FragmentCache cache = new FragmentCache();
+		Files.writeString(first, "[Default]\nkey = value\n");
+		Files.writeString(second, "[Default]\nkey = value\n");
+		Fragment fragment = cache.get(first);
+		assertSame(fragment, cache.get(first));
+		assertSame(fragment, cache.get(second));
+		assertEquals(1, cache.size());
+		assertNull(fragment.getLocation());
+	}
+
+	@Test
+	public void testChangedContent() throws IOException {
+		FragmentCache cache = new FragmentCache();
+		Files.writeString(first, "[Default]\nkey = value\n");
+		Fragment before = cache.get(first);
+		Files.writeString(first, "[Default]\nkey = other\n");
+		Files.setLastModifiedTime(first, FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+		Fragment after = cache.get(first);
+		assertNotSame(before, after);
+		assertEquals("other", after.getSections().get(0).getEntries().get(0).getValue());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testIncludeTokens() throws IOException {
+		Files.writeString(first, "@include base.cfg\n[Default]\n@include \"other.cfg\"\n@include = value\n");
+		Fragment fragment = new FragmentCache().get(first);
+		assertEquals(2, fragment.getSections().size());
+		assertNull(fragment.getSections().get(0).getName());
+		assertEquals("base.cfg", fragment.getSections().get(0).getEntries().get(0).getValue());
+		Fragment.Entry include = fragment.getSections().get(1).getEntries().get(0);
+		Fragment.Entry pair = fragment.getSections().get(1).getEntries().get(1);
+		assertEquals("other.cfg", include.getValue());
+		assertTrue(include.isInclude());
+		assertEquals("@include", pair.getKey());
+		assertFalse(pair.isInclude());
+	}
+}
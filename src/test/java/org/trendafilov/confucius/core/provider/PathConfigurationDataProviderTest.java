@@ -50,7 +50,7 @@ public class PathConfigurationDataProviderTest {
 	@Test
 	public void testReturnInputStream() throws IOException {
 		PathConfigurationDataProvider provider = new PathConfigurationDataProvider(FILENAME);
-		assertEquals("a\nb\r\nc\n", Utils.streamToString(provider.getInputStream()));
+		assertEquals("a\nb\r\nc\n", new String(provider.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
 	}
 
 	@Test
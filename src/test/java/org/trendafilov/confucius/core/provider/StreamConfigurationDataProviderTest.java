@@ -17,7 +17,9 @@
 package org.trendafilov.confucius.core.provider;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
@@ -33,7 +35,7 @@ public class StreamConfigurationDataProviderTest {
 	public void testReturnInputStream() throws IOException {
 		InputStream inputStream = new ByteArrayInputStream("contents".getBytes(StandardCharsets.UTF_8));
 		StreamConfigurationDataProvider provider = new StreamConfigurationDataProvider(inputStream);
-		assertEquals("contents", Utils.streamToString(provider.getInputStream()));
+		assertEquals("contents", new String(provider.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
 	}
 
 	@Test
@@ -55,11 +57,53 @@ public class StreamConfigurationDataProviderTest {
 		assertEquals("c", lines.get(2));
 	}
 
+	@Test
+	public void testTokenizeInSinglePass() throws IOException {
+		Fragment fragment = Fragment.read(new StreamConfigurationDataProvider(new SinglePassStream("ignored = 1\n[Default]\na = 1\n[test]\nb = 2\n")));
+		assertFalse(fragment.isStandard());
+		assertEquals(2, fragment.getSections().size());
+		assertEquals("a", fragment.getSections().get(0).getEntries().get(0).getKey());
+		assertEquals("2", fragment.getSections().get(1).getEntries().get(0).getValue());
+
+		fragment = Fragment.read(new StreamConfigurationDataProvider(new SinglePassStream("a = 1\nb = first \\\n  second\nc:3\n")));
+		assertTrue(fragment.isStandard());
+		assertEquals("1", fragment.getProperties().get("a"));
+		assertEquals("first second", fragment.getProperties().get("b"));
+		assertEquals("3", fragment.getProperties().get("c"));
+	}
+
+	@Test
+	public void testEncoding() throws IOException {
+		Fragment fragment = Fragment.read(new StreamConfigurationDataProvider(new ByteArrayInputStream("name=café\n".getBytes(StandardCharsets.ISO_8859_1))));
+		assertEquals("café", fragment.getProperties().get("name"));
+		fragment = Fragment.read(new StreamConfigurationDataProvider(new ByteArrayInputStream("name=\\u00e9\n".getBytes(StandardCharsets.ISO_8859_1))));
+		assertEquals("é", fragment.getProperties().get("name"));
+		fragment = Fragment.read(new StreamConfigurationDataProvider(new ByteArrayInputStream("[Default]\nname = café ☕\n".getBytes(StandardCharsets.UTF_8))));
+		assertEquals("café ☕", fragment.getSections().get(0).getEntries().get(0).getValue());
+	}
+
 	@Test
 	public void testResettingStreamAfterGetAllLines() throws IOException {
 		InputStream inputStream = new ByteArrayInputStream("contents".getBytes(StandardCharsets.UTF_8));
 		StreamConfigurationDataProvider provider = new StreamConfigurationDataProvider(inputStream);
 		provider.getAllLines();
-		assertEquals("contents", Utils.streamToString(provider.getInputStream()));
+		assertEquals("contents", new String(provider.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+	}
+
+	private static class SinglePassStream extends ByteArrayInputStream {
+		private boolean drained;
+
+		private SinglePassStream(String content) {
+			super(content.getBytes(StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public synchronized int read(byte[] buffer, int offset, int length) {
+			if (drained)
+				throw new IllegalStateException("Stream read twice");
+			int count = super.read(buffer, offset, length);
+			drained = count < 0;
+			return count;
+		}
 	}
 }
@@ -17,19 +17,84 @@
 package org.trendafilov.confucius.core.provider;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class UtilsTest {
 
 	@Test
-	public void testStreamToString() throws IOException {
-		InputStream inputStream = new ByteArrayInputStream("contents".getBytes(StandardCharsets.UTF_8));
-		assertEquals("contents", Utils.streamToString(inputStream));
+	public void testDecompress() throws IOException {
+		String content = "[Default]\nkey = value\n";
+		byte[] plain = content.getBytes(StandardCharsets.UTF_8);
+
+		ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+		try (GZIPOutputStream output = new GZIPOutputStream(gzip)) {
+			output.write(plain);
+		}
+		assertEquals(content, read(Utils.decompress(new ByteArrayInputStream(gzip.toByteArray()))));
+
+		ByteArrayOutputStream zlib = new ByteArrayOutputStream();
+		try (DeflaterOutputStream output = new DeflaterOutputStream(zlib)) {
+			output.write(plain);
+		}
+		assertEquals(content, read(Utils.decompress(new ByteArrayInputStream(zlib.toByteArray()))));
+
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		try (ZipOutputStream output = new ZipOutputStream(zip)) {
+			output.putNextEntry(new ZipEntry("conf/"));
+			output.putNextEntry(new ZipEntry("conf/app.cfg"));
+			output.write(plain);
+		}
+		assertEquals(content, read(Utils.decompress(new ByteArrayInputStream(zip.toByteArray()))));
+
+		assertEquals(content, read(Utils.decompress(new ByteArrayInputStream(plain))));
+		assertEquals("x", read(Utils.decompress(new ByteArrayInputStream("x".getBytes(StandardCharsets.UTF_8)))));
+		assertEquals(List.of("[Default]", "key = value"), Utils.readLines(new ByteArrayInputStream(gzip.toByteArray())));
+		assertNull(Utils.decompress(null));
 	}
 
+	@Test
+	public void testDecompressClosesInput() throws IOException {
+		ClosingStream truncated = new ClosingStream(new byte[] { 0x1F, (byte) 0x8B, 8 });
+		assertThrows(IOException.class, () -> Utils.decompress(truncated));
+		assertTrue(truncated.closed);
+
+		ByteArrayOutputStream zip = new ByteArrayOutputStream();
+		try (ZipOutputStream output = new ZipOutputStream(zip)) {
+			output.putNextEntry(new ZipEntry("conf/"));
+		}
+		ClosingStream empty = new ClosingStream(zip.toByteArray());
+		assertEquals("", read(Utils.decompress(empty)));
+		assertTrue(empty.closed);
+	}
+
+	private static String read(InputStream input) throws IOException {
+		return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+	}
+
+	private static final class ClosingStream extends ByteArrayInputStream {
+		private boolean closed;
+
+		ClosingStream(byte[] content) {
+			super(content);
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
 }
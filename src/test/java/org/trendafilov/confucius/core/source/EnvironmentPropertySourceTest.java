@@ -0,0 +1,82 @@
+/* 
+ * Copyright 2013-2014 Ivan Trendafilov and contributors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.trendafilov.confucius.core.source;
+
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.trendafilov.confucius.ConfigurationException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class EnvironmentPropertySourceTest {
+
+	@Test
+	public void testRelaxedNames() {
+		EnvironmentPropertySource source = new EnvironmentPropertySource("env", Map.of("APP_DB_MAX_POOL", "10"), "APP_");
+		assertEquals("10", source.getProperty("APP_DB_MAX_POOL"));
+		assertEquals("10", source.getProperty("db.max.pool"));
+		assertEquals("10", source.getProperty("db.max-pool"));
+		assertEquals("10", source.getProperty("db.maxPool"));
+		assertEquals("10", source.getProperty("db-max-pool"));
+		assertEquals("10", source.getProperty("dbMaxPool"));
+		assertNull(source.getProperty("db_max.pool"));
+		assertEquals("db.max.pool", source.getCanonicalKey("db.maxPool"));
+	}
+
+	@Test
+	public void testPropertiesExposeCanonicalNames() {
+		EnvironmentPropertySource source = new EnvironmentPropertySource("env", Map.of("APP_DB_MAX_POOL", "10", "APP_HOME", "/root"), "APP_");
+		assertEquals(Map.of("db.max.pool", "10", "home", "/root"), source.getProperties());
+		assertEquals("/root", source.getProperty("APP_HOME"));
+		assertEquals("home", source.getCanonicalKey("APP_HOME"));
+		assertEquals("home", source.getCanonicalKey("home"));
+		assertNull(source.getCanonicalKey("path"));
+	}
+
+	@Test
+	public void testPrefix() {
+		EnvironmentPropertySource source = new EnvironmentPropertySource("env", Map.of("APP_DB_URL", "jdbc", "PATH", "/bin"), "APP_");
+		assertEquals("jdbc", source.getProperty("db.url"));
+		assertEquals("jdbc", source.getProperty("APP_DB_URL"));
+		assertNull(source.getProperty("path"));
+		assertFalse(source.getProperties().containsKey("PATH"));
+	}
+
+	@Test
+	public void testCollidingVariables() {
+		EnvironmentPropertySource source = new EnvironmentPropertySource("env", Map.of("APP_DB_URL", "first", "APP_DB__URL", "second"), "APP_");
+		assertEquals("first", source.getProperty("db.url"));
+		assertEquals("first", source.getProperty("APP_DB_URL"));
+		assertNull(source.getProperty("APP_DB__URL"));
+	}
+
+	@Test
+	public void testEmptyPrefix() {
+		assertThrows(ConfigurationException.class, () -> new EnvironmentPropertySource("env", Map.of("JAVA_HOME", "/jdk"), ""));
+		assertThrows(ConfigurationException.class, () -> PropertySource.environment(""));
+	}
+
+	@Test
+	public void testEnvironment() {
+		PropertySource source = PropertySource.environment("CONFUCIUS_");
+		assertEquals("environment", source.getName());
+		assertFalse(source.getProperties().containsKey("java.home"));
+	}
+}